@@ -0,0 +1,35 @@
+package org.hill30.activemq.kahadb.benchmark;
+
+import org.hill30.activemq.kahadb.statistic.statistics.JournalStatistic;
+
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JournalStatisticBenchmark {
+    @Benchmark
+    public void addSequence(JournalsState journals, Blackhole blackhole) throws IOException {
+        //one statistic per journal file, like the statistics tool
+        JournalStatistic journalStatistic = null;
+        int dataFileId = -1;
+        for(int i = 0; i < journals.getRecordCount(); ++i) {
+            Location location = journals.getLocation(i);
+            if(location.getDataFileId() != dataFileId) {
+                blackhole.consume(journalStatistic);
+                dataFileId = location.getDataFileId();
+                journalStatistic = new JournalStatistic(new File(journals.getDirectory(), "db-" + dataFileId + ".log"));
+            }
+            journalStatistic.addSequence(journals.getSequence(i), location.getSize());
+        }
+        blackhole.consume(journalStatistic);
+    }
+}
@@ -0,0 +1,52 @@
+package org.hill30.activemq.kahadb.benchmark;
+
+import org.hill30.activemq.kahadb.reader.KahaDBJournalsReader;
+import org.hill30.activemq.kahadb.utils.export.ExportFormat;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JournalsReaderBenchmark {
+    //region private
+    private PrintStream console;
+    //endregion
+    //text is the console output, the other formats are the export records
+    @Param({ "text", "ndjson", "csv", "columnar" })
+    public String format;
+
+    //-------------------------------------------------------------------------
+    @Setup(Level.Trial)
+    public void setUp() {
+        //the reader writes to the console, the formatted text is thrown away
+        console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+    }
+    //-------------------------------------------------------------------------
+    @Benchmark
+    public void showData(JournalsState journals) throws IOException {
+        KahaDBJournalsReader reader = new KahaDBJournalsReader(false);
+        reader.setExportFormat("text".equals(format) ? null : ExportFormat.parse(format));
+        reader.showData(journals.getDirectory().getPath(), false);
+    }
+}
@@ -0,0 +1,102 @@
+package org.hill30.activemq.kahadb.benchmark;
+
+import org.hill30.activemq.kahadb.generator.JournalsGeneratorProfile;
+import org.hill30.activemq.kahadb.generator.PayloadDistribution;
+import org.hill30.activemq.kahadb.generator.SyntheticJournalsWriter;
+import org.hill30.activemq.kahadb.utils.KahaDBJournalScanner;
+
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.apache.activemq.util.ByteSequence;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hill30.activemq.Utils.*;
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+
+//the journals are written once per trial, the benchmarks read the records from memory or the journal files
+@State(Scope.Benchmark)
+public class JournalsState {
+    //region private
+    private File directory;
+    private final List<ByteSequence> sequences = new ArrayList<>();
+    private final List<Location> locations = new ArrayList<>();
+    //endregion
+    //the shape of the synthetic journals, the other values of the generator profile are its defaults
+    @Param("100000")
+    public int messages;
+    @Param("10")
+    public int topics;
+    @Param("5")
+    public int queues;
+    @Param("3")
+    public int subscribers;
+    @Param("100")
+    public int ackLag;
+    @Param("10")
+    public int pendingRatio;
+    @Param("10")
+    public int transactionRatio;
+    @Param("1024")
+    public int payloadSize;
+    @Param("fixed")
+    public String payloadDistribution;
+    @Param("33554432")
+    public int journalSize;
+
+    //-------------------------------------------------------------------------
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("kahadb-benchmark").toFile();
+        JournalsGeneratorProfile profile = new JournalsGeneratorProfile();
+        profile.setMessages(messages);
+        profile.setTopics(topics);
+        profile.setQueues(queues);
+        profile.setSubscribers(subscribers);
+        profile.setAckLag(ackLag);
+        profile.setPendingRatio(pendingRatio);
+        profile.setTransactionRatio(transactionRatio);
+        profile.setPayloadSize(payloadSize);
+        profile.setPayloadDistribution(PayloadDistribution.parse(payloadDistribution));
+        new SyntheticJournalsWriter(profile).write(directory, journalSize);
+
+        //every sequence of the scanner has its own array, they stay valid after it
+        Journal journal = createJournal(directory, journalSize);
+        try {
+            journal.start();
+            KahaDBJournalScanner scanner = new KahaDBJournalScanner(journal);
+            while (scanner.next()) {
+                sequences.add(scanner.getSequence());
+                locations.add(scanner.getLocation());
+            }
+        }
+        finally {
+            journal.close();
+        }
+    }
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sequences.clear();
+        locations.clear();
+        deleteDir(directory);
+    }
+    //-------------------------------------------------------------------------
+    public File getDirectory() {
+        return directory;
+    }
+    public int getRecordCount() {
+        return sequences.size();
+    }
+    public ByteSequence getSequence(int index) {
+        return sequences.get(index);
+    }
+    public Location getLocation(int index) {
+        return locations.get(index);
+    }
+    //-------------------------------------------------------------------------
+}
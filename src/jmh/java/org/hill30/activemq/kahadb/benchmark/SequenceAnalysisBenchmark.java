@@ -0,0 +1,25 @@
+package org.hill30.activemq.kahadb.benchmark;
+
+import org.hill30.activemq.kahadb.optimizer.destinations.PoolDestinationData;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SequenceAnalysisBenchmark {
+    @Benchmark
+    public PoolDestinationData sequenceAnalysis(JournalsState journals) throws IOException {
+        //the analysis of the optimizer, every record of the journals in order
+        PoolDestinationData poolDestinationData = new PoolDestinationData();
+        for(int i = 0; i < journals.getRecordCount(); ++i) {
+            poolDestinationData.sequenceAnalysis(journals.getSequence(i), journals.getLocation(i));
+        }
+        return poolDestinationData;
+    }
+}
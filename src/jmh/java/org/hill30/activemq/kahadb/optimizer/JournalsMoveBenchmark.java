@@ -0,0 +1,70 @@
+package org.hill30.activemq.kahadb.optimizer;
+
+import org.hill30.activemq.kahadb.benchmark.JournalsState;
+import org.hill30.activemq.kahadb.optimizer.destinations.PoolDestinationData;
+import org.hill30.activemq.kahadb.optimizer.locations.LocationStore;
+
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.hill30.activemq.Utils.*;
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+
+//in the optimizer package, the move is not public
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JournalsMoveBenchmark {
+    //region private
+    //the prefetch of the optimizer
+    private static final int MOVE_PREFETCH = 1024;
+    //-------------------------------------------------------------------------
+    private LocationStore subscriptionLocations;
+    private LocationStore messageLocations;
+    private File targetDir;
+    //endregion
+    @Setup(Level.Trial)
+    public void setUp(JournalsState journals) throws IOException {
+        //the live records are found once, every invocation moves them into new journals
+        PoolDestinationData poolDestinationData = new PoolDestinationData();
+        for(int i = 0; i < journals.getRecordCount(); ++i) {
+            poolDestinationData.sequenceAnalysis(journals.getSequence(i), journals.getLocation(i));
+        }
+        subscriptionLocations = poolDestinationData.getSubscriptionLocations();
+        messageLocations = poolDestinationData.getMessageLocations();
+    }
+    @Setup(Level.Invocation)
+    public void createTargetDir() throws IOException {
+        targetDir = Files.createTempDirectory("kahadb-benchmark-move").toFile();
+    }
+    @TearDown(Level.Invocation)
+    public void deleteTargetDir() {
+        deleteDir(targetDir);
+    }
+    //-------------------------------------------------------------------------
+    @Benchmark
+    public void move(JournalsState journals) throws IOException, InterruptedException {
+        Journal sourceJournal = createJournal(journals.getDirectory(), journals.journalSize);
+        Journal targetJournal = createJournal(targetDir, journals.journalSize);
+        try {
+            sourceJournal.start();
+            targetJournal.start();
+
+            PipelinedJournalsMove journalsMove = new PipelinedJournalsMove(sourceJournal, targetJournal, MOVE_PREFETCH);
+            journalsMove.move(subscriptionLocations);
+            journalsMove.move(messageLocations);
+        }
+        finally {
+            targetJournal.close();
+            sourceJournal.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.hill30.activemq.kahadb.optimizer.destinations;
+
+import org.hill30.activemq.kahadb.generator.JournalsGeneratorProfile;
+import org.hill30.activemq.kahadb.generator.SyntheticJournalsWriter;
+import org.hill30.activemq.kahadb.utils.KahaDBJournalScanner;
+
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.apache.activemq.util.ByteSequence;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.hill30.activemq.Utils.*;
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+
+//the analysis of the optimizer over journals with many destinations, the list of the first optimizer against the hashed index
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DestinationLookupBenchmark {
+    //region private
+    private File directory;
+    private final List<ByteSequence> sequences = new ArrayList<>();
+    private final List<Location> locations = new ArrayList<>();
+    //-------------------------------------------------------------------------
+    private PoolDestinationData sequenceAnalysis(PoolDestinationData poolDestinationData) throws IOException {
+        for(int i = 0; i < sequences.size(); ++i) {
+            poolDestinationData.sequenceAnalysis(sequences.get(i), locations.get(i));
+        }
+        return poolDestinationData;
+    }
+    //-------------------------------------------------------------------------
+    //the destinations of the first optimizer, a linked list searched from its head on every record
+    private static final class ListDestinationData extends AbstractMap<Integer, DestinationData> {
+        private final LinkedList<Map.Entry<Integer, DestinationData>> entries = new LinkedList<>();
+
+        private Map.Entry<Integer, DestinationData> getEntry(Object key) {
+            for (Map.Entry<Integer, DestinationData> entry : entries) {
+                if(entry.getKey().equals(key)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public DestinationData get(Object key) {
+            Map.Entry<Integer, DestinationData> entry = getEntry(key);
+            return entry == null ? null : entry.getValue();
+        }
+        @Override
+        public DestinationData put(Integer key, DestinationData value) {
+            Map.Entry<Integer, DestinationData> entry = getEntry(key);
+            if(entry != null) {
+                return entry.setValue(value);
+            }
+            entries.add(new AbstractMap.SimpleEntry<>(key, value));
+            return null;
+        }
+        @Override
+        public DestinationData remove(Object key) {
+            Map.Entry<Integer, DestinationData> entry = getEntry(key);
+            if(entry == null) {
+                return null;
+            }
+            entries.remove(entry);
+            return entry.getValue();
+        }
+        @Override
+        public Set<Map.Entry<Integer, DestinationData>> entrySet() {
+            return new AbstractSet<Map.Entry<Integer, DestinationData>>() {
+                @Override
+                public Iterator<Map.Entry<Integer, DestinationData>> iterator() {
+                    return entries.iterator();
+                }
+                @Override
+                public int size() {
+                    return entries.size();
+                }
+            };
+        }
+    }
+    //endregion
+    //the shape of the synthetic journals, the other values of the generator profile are its defaults
+    @Param("20000")
+    public int messages;
+    @Param("10000")
+    public int topics;
+    @Param("5")
+    public int queues;
+    @Param("3")
+    public int subscribers;
+    @Param("33554432")
+    public int journalSize;
+
+    //-------------------------------------------------------------------------
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("kahadb-benchmark").toFile();
+        JournalsGeneratorProfile profile = new JournalsGeneratorProfile();
+        profile.setMessages(messages);
+        profile.setTopics(topics);
+        profile.setQueues(queues);
+        profile.setSubscribers(subscribers);
+        new SyntheticJournalsWriter(profile).write(directory, journalSize);
+
+        Journal journal = createJournal(directory, journalSize);
+        try {
+            journal.start();
+            KahaDBJournalScanner scanner = new KahaDBJournalScanner(journal);
+            while (scanner.next()) {
+                sequences.add(scanner.getSequence());
+                locations.add(scanner.getLocation());
+            }
+        }
+        finally {
+            journal.close();
+        }
+    }
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sequences.clear();
+        locations.clear();
+        deleteDir(directory);
+    }
+    //-------------------------------------------------------------------------
+    @Benchmark
+    public PoolDestinationData linkedListAnalysis() throws IOException {
+        return sequenceAnalysis(new PoolDestinationData(ListDestinationData::new));
+    }
+    @Benchmark
+    public PoolDestinationData hashedAnalysis() throws IOException {
+        return sequenceAnalysis(new PoolDestinationData());
+    }
+    //-------------------------------------------------------------------------
+}
@@ -70,6 +70,33 @@ public final class Utils {
         brokerThread.start();
     }
     //-------------------------------------------------------------------------
+    public static boolean hasArgument(String[] args, String name) {
+        return getArgumentValue(args, name, null) != null;
+    }
+    public static String getArgumentValue(String[] args, String name, String defaultValue) {
+        if(args == null) {
+            throw new NullPointerException("args");
+        }
+        if(isNullOrEmpty(name)) {
+            throw new NullPointerException("name");
+        }
+
+        String option = "--" + name;
+        for(String arg : args) {
+            if(arg.equals(option)) {
+                return "";
+            }
+            if(arg.startsWith(option + "=")) {
+                return arg.substring(option.length() + 1);
+            }
+        }
+        return defaultValue;
+    }
+    public static int getArgumentValue(String[] args, String name, int defaultValue) {
+        String value = getArgumentValue(args, name, null);
+        return isNullOrEmpty(value) ? defaultValue : Integer.parseInt(value);
+    }
+    //-------------------------------------------------------------------------
     public static int randInt(Random random, int min, int max) {
         if(random == null) {
             throw new NullPointerException("random");
@@ -0,0 +1,192 @@
+package org.hill30.activemq.kahadb.generator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+public final class JournalsGeneratorProfile {
+    //region private
+    private int messages = 1000000;
+    private int topics = 10;
+    private int queues = 5;
+    private int subscribers = 3;
+    private int ackLag = 100;
+    private int pendingRatio = 5;
+    private int transactionRatio = 10;
+    private int xaRatio = 25;
+    private int rollbackRatio = 5;
+    private int transactionSize = 1;
+    private int payloadSize = 1024;
+    private PayloadDistribution payloadDistribution = PayloadDistribution.FIXED;
+    private long seed = 42;
+    //-------------------------------------------------------------------------
+    private static int getInt(Properties properties, String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+    //endregion
+    //-------------------------------------------------------------------------
+    public int getMessages() {
+        return messages;
+    }
+    public void setMessages(int messages) {
+        if(messages < 0) {
+            throw new IndexOutOfBoundsException("messages");
+        }
+
+        this.messages = messages;
+    }
+    public int getTopics() {
+        return topics;
+    }
+    public void setTopics(int topics) {
+        if(topics < 0) {
+            throw new IndexOutOfBoundsException("topics");
+        }
+
+        this.topics = topics;
+    }
+    public int getQueues() {
+        return queues;
+    }
+    public void setQueues(int queues) {
+        if(queues < 0) {
+            throw new IndexOutOfBoundsException("queues");
+        }
+
+        this.queues = queues;
+    }
+    public int getSubscribers() {
+        return subscribers;
+    }
+    public void setSubscribers(int subscribers) {
+        if(subscribers < 0) {
+            throw new IndexOutOfBoundsException("subscribers");
+        }
+
+        this.subscribers = subscribers;
+    }
+    public int getAckLag() {
+        return ackLag;
+    }
+    public void setAckLag(int ackLag) {
+        if(ackLag < 0) {
+            throw new IndexOutOfBoundsException("ackLag");
+        }
+
+        this.ackLag = ackLag;
+    }
+    public int getPendingRatio() {
+        return pendingRatio;
+    }
+    public void setPendingRatio(int pendingRatio) {
+        if(pendingRatio < 0 || pendingRatio > 100) {
+            throw new IndexOutOfBoundsException("pendingRatio");
+        }
+
+        this.pendingRatio = pendingRatio;
+    }
+    public int getTransactionRatio() {
+        return transactionRatio;
+    }
+    public void setTransactionRatio(int transactionRatio) {
+        if(transactionRatio < 0 || transactionRatio > 100) {
+            throw new IndexOutOfBoundsException("transactionRatio");
+        }
+
+        this.transactionRatio = transactionRatio;
+    }
+    public int getXaRatio() {
+        return xaRatio;
+    }
+    public void setXaRatio(int xaRatio) {
+        if(xaRatio < 0 || xaRatio > 100) {
+            throw new IndexOutOfBoundsException("xaRatio");
+        }
+
+        this.xaRatio = xaRatio;
+    }
+    public int getRollbackRatio() {
+        return rollbackRatio;
+    }
+    public void setRollbackRatio(int rollbackRatio) {
+        if(rollbackRatio < 0 || rollbackRatio > 100) {
+            throw new IndexOutOfBoundsException("rollbackRatio");
+        }
+
+        this.rollbackRatio = rollbackRatio;
+    }
+    public int getTransactionSize() {
+        return transactionSize;
+    }
+    public void setTransactionSize(int transactionSize) {
+        if(transactionSize < 1) {
+            throw new IndexOutOfBoundsException("transactionSize");
+        }
+
+        this.transactionSize = transactionSize;
+    }
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+    public void setPayloadSize(int payloadSize) {
+        if(payloadSize < 0) {
+            throw new IndexOutOfBoundsException("payloadSize");
+        }
+
+        this.payloadSize = payloadSize;
+    }
+    public PayloadDistribution getPayloadDistribution() {
+        return payloadDistribution;
+    }
+    public void setPayloadDistribution(PayloadDistribution payloadDistribution) {
+        if(payloadDistribution == null) {
+            throw new NullPointerException("payloadDistribution");
+        }
+
+        this.payloadDistribution = payloadDistribution;
+    }
+    public long getSeed() {
+        return seed;
+    }
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+    //-------------------------------------------------------------------------
+    public static JournalsGeneratorProfile read(File file) throws IOException {
+        if(file == null) {
+            throw new NullPointerException("file");
+        }
+
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(file)) {
+            properties.load(input);
+        }
+
+        //the property names are the names of the generator options, absent ones keep their defaults
+        JournalsGeneratorProfile profile = new JournalsGeneratorProfile();
+        profile.setMessages(getInt(properties, "messages", profile.messages));
+        profile.setTopics(getInt(properties, "topics", profile.topics));
+        profile.setQueues(getInt(properties, "queues", profile.queues));
+        profile.setSubscribers(getInt(properties, "subscribers", profile.subscribers));
+        profile.setAckLag(getInt(properties, "ack-lag", profile.ackLag));
+        profile.setPendingRatio(getInt(properties, "pending", profile.pendingRatio));
+        profile.setTransactionRatio(getInt(properties, "transactions", profile.transactionRatio));
+        profile.setXaRatio(getInt(properties, "xa", profile.xaRatio));
+        profile.setRollbackRatio(getInt(properties, "rollbacks", profile.rollbackRatio));
+        profile.setTransactionSize(getInt(properties, "transaction-size", profile.transactionSize));
+        profile.setPayloadSize(getInt(properties, "payload", profile.payloadSize));
+        String payloadDistribution = properties.getProperty("payload-distribution");
+        if(payloadDistribution != null && !payloadDistribution.trim().isEmpty()) {
+            profile.setPayloadDistribution(PayloadDistribution.parse(payloadDistribution.trim()));
+        }
+        String seed = properties.getProperty("seed");
+        if(seed != null && !seed.trim().isEmpty()) {
+            profile.setSeed(Long.parseLong(seed.trim()));
+        }
+        return profile;
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,93 @@
+package org.hill30.activemq.kahadb.generator;
+
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+
+import java.io.File;
+
+import static org.hill30.activemq.Utils.*;
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+
+public final class KahaDBJournalsGenerator {
+    //region private
+    private static final int DEFAULT_JOURNAL_SIZE = 32 * 1024 * 1024;
+    //-------------------------------------------------------------------------
+    private JournalsGeneratorProfile profile = new JournalsGeneratorProfile();
+    private int journalSize = DEFAULT_JOURNAL_SIZE;
+    //-------------------------------------------------------------------------
+    private void generate(File targetDir) throws Exception {
+        showSeparator(2);
+        System.out.printf("Journals generating:\r\n");
+        System.out.printf("- Directory: '%s'.\r\n", targetDir.getPath());
+        System.out.printf("- Messages: %s (Payload: %s bytes, %s).\r\n", profile.getMessages(), profile.getPayloadSize(), profile.getPayloadDistribution().name().toLowerCase());
+        System.out.printf("- Destinations: %s topics (Durable subscriptions: %s per topic), %s queues.\r\n", profile.getTopics(), profile.getSubscribers(), profile.getQueues());
+        System.out.printf("- Acks: after %s messages (Never acked: %s%%).\r\n", profile.getAckLag(), profile.getPendingRatio());
+        System.out.printf("- Transactions: %s%% of the messages (XA: %s%%, Rolled back: %s%%, Messages: %s per transaction).\r\n",
+                profile.getTransactionRatio(), profile.getXaRatio(), profile.getRollbackRatio(), profile.getTransactionSize());
+        System.out.println();
+
+        long start = System.currentTimeMillis();
+
+        SyntheticJournalsWriter writer = new SyntheticJournalsWriter(profile);
+        writer.write(targetDir, journalSize);
+
+        long end = System.currentTimeMillis();
+        long time = Math.max(end - start, 1);
+        System.out.printf("- Records: %s (Total size: %s).\r\n", writer.getRecordCount(), bytesToString(writer.getSize()));
+        System.out.printf("- Transactions: %s committed, %s rolled back.\r\n", writer.getCommittedCount(), writer.getRolledBackCount());
+        System.out.printf("- Pending messages: %s.\r\n", writer.getPendingCount());
+        System.out.printf("- Journals: %s (Journal size: %s).\r\n", getJournalFiles(targetDir).length, bytesToString(journalSize));
+        System.out.printf("- Write throughput: %s/s.\r\n", bytesToString(writer.getSize() * 1000 / time));
+        System.out.printf("- It took time: %s seconds.\r\n", ((end - start) / 1000.0f));
+    }
+    private static File[] getJournalFiles(File dir) {
+        File[] files = dir.listFiles((file, name) -> name.startsWith(Journal.DEFAULT_FILE_PREFIX) && name.endsWith(Journal.DEFAULT_FILE_SUFFIX));
+        return files == null ? new File[0] : files;
+    }
+    //endregion
+    //-------------------------------------------------------------------------
+    public JournalsGeneratorProfile getProfile() {
+        return profile;
+    }
+    public void setProfile(JournalsGeneratorProfile profile) {
+        if(profile == null) {
+            throw new NullPointerException("profile");
+        }
+
+        this.profile = profile;
+    }
+    public int getJournalSize() {
+        return journalSize;
+    }
+    public void setJournalSize(int journalSize) {
+        if(journalSize <= 0) {
+            throw new IndexOutOfBoundsException("journalSize");
+        }
+
+        this.journalSize = journalSize;
+    }
+    //-------------------------------------------------------------------------
+    public void generate(String targetDirPath) {
+        if(isNullOrEmpty(targetDirPath)) {
+            throw new NullPointerException("targetDirPath");
+        }
+
+        //the journals are never appended to existing ones
+        File targetDir = new File(targetDirPath);
+        if(targetDir.exists() && (!targetDir.isDirectory() || getJournalFiles(targetDir).length != 0)) {
+            throw new IllegalArgumentException("targetDirPath");
+        }
+
+        try {
+            if(!targetDir.isDirectory() && !targetDir.mkdirs()) {
+                throw new IllegalArgumentException("targetDirPath");
+            }
+
+            generate(targetDir);
+            showSeparator(2);
+        }
+        catch (Throwable throwable) {
+            showException(throwable);
+        }
+    }
+    //-------------------------------------------------------------------------
+}
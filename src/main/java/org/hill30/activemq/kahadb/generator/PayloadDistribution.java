@@ -0,0 +1,24 @@
+package org.hill30.activemq.kahadb.generator;
+
+public enum PayloadDistribution {
+    //every message body has the payload size
+    FIXED,
+    //message bodies from 0 to twice the payload size
+    UNIFORM,
+    //many small message bodies and a few large ones, the payload size on average
+    EXPONENTIAL;
+    //-------------------------------------------------------------------------
+    public static PayloadDistribution parse(String name) {
+        if(name == null || name.isEmpty()) {
+            throw new NullPointerException("name");
+        }
+
+        for (PayloadDistribution distribution : values()) {
+            if(distribution.name().equalsIgnoreCase(name)) {
+                return distribution;
+            }
+        }
+        throw new IllegalArgumentException("name");
+    }
+    //-------------------------------------------------------------------------
+}
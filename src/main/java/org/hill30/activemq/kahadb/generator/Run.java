@@ -0,0 +1,45 @@
+package org.hill30.activemq.kahadb.generator;
+
+import java.io.File;
+
+import static org.hill30.activemq.Utils.*;
+
+public final class Run {
+    public static void main(String[] args) throws Exception {
+        if (args.length <= 0) {
+            System.out.println("usage KahaDBJournalsGenerator <journals directory> [--profile=<properties file>] [--messages=<count>] [--topics=<count>] [--queues=<count>] [--subscribers=<per topic>] [--ack-lag=<messages>] [--pending=<%>] [--transactions=<%>] [--xa=<%>] [--rollbacks=<%>] [--transaction-size=<messages>] [--payload=<bytes>] [--payload-distribution=<fixed|uniform|exponential>] [--seed=<number>] [--journal-size=<MB>]");
+            System.exit(1);
+        }
+        //---------------------------------------------------------------------
+        String targetDirPath = args[0];
+        String profileFilePath = getArgumentValue(args, "profile", null);
+        //the options override the values of the profile file
+        JournalsGeneratorProfile profile = isNullOrEmpty(profileFilePath) ? new JournalsGeneratorProfile() : JournalsGeneratorProfile.read(new File(profileFilePath));
+        profile.setMessages(getArgumentValue(args, "messages", profile.getMessages()));
+        profile.setTopics(getArgumentValue(args, "topics", profile.getTopics()));
+        profile.setQueues(getArgumentValue(args, "queues", profile.getQueues()));
+        profile.setSubscribers(getArgumentValue(args, "subscribers", profile.getSubscribers()));
+        profile.setAckLag(getArgumentValue(args, "ack-lag", profile.getAckLag()));
+        profile.setPendingRatio(getArgumentValue(args, "pending", profile.getPendingRatio()));
+        profile.setTransactionRatio(getArgumentValue(args, "transactions", profile.getTransactionRatio()));
+        profile.setXaRatio(getArgumentValue(args, "xa", profile.getXaRatio()));
+        profile.setRollbackRatio(getArgumentValue(args, "rollbacks", profile.getRollbackRatio()));
+        profile.setTransactionSize(getArgumentValue(args, "transaction-size", profile.getTransactionSize()));
+        profile.setPayloadSize(getArgumentValue(args, "payload", profile.getPayloadSize()));
+        String payloadDistribution = getArgumentValue(args, "payload-distribution", null);
+        if(!isNullOrEmpty(payloadDistribution)) {
+            profile.setPayloadDistribution(PayloadDistribution.parse(payloadDistribution));
+        }
+        String seed = getArgumentValue(args, "seed", null);
+        if(!isNullOrEmpty(seed)) {
+            profile.setSeed(Long.parseLong(seed));
+        }
+        int journalSize = getArgumentValue(args, "journal-size", 32);
+        //---------------------------------------------------------------------
+        KahaDBJournalsGenerator generator = new KahaDBJournalsGenerator();
+        generator.setProfile(profile);
+        generator.setJournalSize(journalSize * 1024 * 1024);
+        generator.generate(targetDirPath);
+        //---------------------------------------------------------------------
+    }
+}
@@ -0,0 +1,312 @@
+package org.hill30.activemq.kahadb.generator;
+
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.SubscriptionInfo;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.apache.activemq.protobuf.Buffer;
+import org.apache.activemq.protobuf.CodedOutputStream;
+import org.apache.activemq.store.kahadb.JournalCommand;
+import org.apache.activemq.store.kahadb.data.*;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.util.ByteSequence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+
+public final class SyntheticJournalsWriter {
+    //region private
+    private static final String CONNECTION_ID = "ID:generator-1";
+    private static final String MESSAGE_ID_PREFIX = "ID:generator-1:1:1:1:";
+    private static final int XA_FORMAT_ID = 1;
+    //the exponential payloads are cut at this many times the payload size
+    private static final int MAX_PAYLOAD_FACTOR = 16;
+    //-------------------------------------------------------------------------
+    private final int messages;
+    private final int topics;
+    private final int subscribers;
+    private final int ackLag;
+    private final int pendingRatio;
+    private final int transactionRatio;
+    private final int xaRatio;
+    private final int rollbackRatio;
+    private final int transactionSize;
+    private final int payloadSize;
+    private final PayloadDistribution payloadDistribution;
+    private final long seed;
+    //-------------------------------------------------------------------------
+    private final KahaDestination[] destinations;
+    private final String[][] subscriptionKeys;
+    private final byte[] payload;
+    //-------------------------------------------------------------------------
+    private Journal journal;
+    private Random random;
+    private long recordCount;
+    private long size;
+    private long committedCount;
+    private long rolledBackCount;
+    private long pendingCount;
+    //-------------------------------------------------------------------------
+    //the open transaction and the acks of the sent messages, every ack is due ack lag messages after its send
+    private KahaTransactionInfo transactionInfo;
+    private boolean transactionXa;
+    private boolean transactionRollback;
+    private long transactionId;
+    private final List<int[]> transactionMessages = new ArrayList<>();
+    private final ArrayDeque<int[]> acks = new ArrayDeque<>();
+    //-------------------------------------------------------------------------
+    private void write(JournalCommand<?> command) throws IOException {
+        //the journal keeps the sequence until its batch is written, every record needs its own array
+        int commandSize = command.serializedSizeFramed();
+        byte[] data = new byte[commandSize + 1];
+        data[0] = (byte)command.type().getNumber();
+        command.writeFramed(new CodedOutputStream(new Buffer(data, 1, commandSize)));
+        journal.write(new ByteSequence(data), false);
+
+        ++recordCount;
+        size += data.length + Journal.RECORD_HEAD_SPACE;
+    }
+    private void writeSubscriptions() throws IOException {
+        OpenWireFormat wireFormat = new OpenWireFormat();
+        for(int topic = 0; topic < topics; ++topic) {
+            for(int subscriber = 0; subscriber < subscribers; ++subscriber) {
+                SubscriptionInfo subscriptionInfo = new SubscriptionInfo(getClientId(subscriber), getSubscriptionName(topic));
+                subscriptionInfo.setDestination(new ActiveMQTopic(destinations[topic].getName()));
+                ByteSequence info = wireFormat.marshal(subscriptionInfo);
+
+                write(new KahaSubscriptionCommand()
+                        .setDestination(destinations[topic])
+                        .setSubscriptionKey(subscriptionKeys[topic][subscriber])
+                        .setRetroactive(false)
+                        .setSubscriptionInfo(new Buffer(info.getData(), info.getOffset(), info.getLength())));
+            }
+        }
+    }
+    private void writeMessage(int message) throws IOException {
+        if(transactionInfo == null && random.nextInt(100) < transactionRatio) {
+            beginTransaction();
+        }
+
+        int destination = random.nextInt(destinations.length);
+        KahaAddMessageCommand command = new KahaAddMessageCommand()
+                .setDestination(destinations[destination])
+                .setMessageId(MESSAGE_ID_PREFIX + message)
+                .setMessage(new Buffer(payload, 0, nextPayloadSize()));
+        if(transactionInfo == null) {
+            write(command);
+            addAck(destination, message, message);
+            return;
+        }
+
+        write(command.setTransactionInfo(transactionInfo));
+        transactionMessages.add(new int[] { destination, message });
+        if(transactionMessages.size() >= transactionSize) {
+            endTransaction(message);
+        }
+    }
+    private void writeAcks(int message) throws IOException {
+        while (!acks.isEmpty() && acks.peek()[2] <= message) {
+            int[] ack = acks.poll();
+            int destination = ack[0];
+            String messageId = MESSAGE_ID_PREFIX + ack[1];
+            if(destination >= topics) {
+                write(new KahaRemoveMessageCommand().setDestination(destinations[destination]).setMessageId(messageId));
+                continue;
+            }
+
+            for(int subscriber = 0; subscriber < subscribers; ++subscriber) {
+                write(new KahaRemoveMessageCommand()
+                        .setDestination(destinations[destination])
+                        .setMessageId(messageId)
+                        .setSubscriptionKey(subscriptionKeys[destination][subscriber]));
+            }
+        }
+    }
+    private void addAck(int destination, int message, int sent) {
+        //a pending message is never acked
+        if(random.nextInt(100) < pendingRatio) {
+            ++pendingCount;
+            return;
+        }
+        acks.add(new int[] { destination, message, sent + ackLag });
+    }
+    //-------------------------------------------------------------------------
+    private void beginTransaction() {
+        ++transactionId;
+        transactionXa = random.nextInt(100) < xaRatio;
+        transactionRollback = random.nextInt(100) < rollbackRatio;
+
+        transactionInfo = new KahaTransactionInfo();
+        if(transactionXa) {
+            transactionInfo.setXaTransactionId(new KahaXATransactionId()
+                    .setFormatId(XA_FORMAT_ID)
+                    .setGlobalTransactionId(new Buffer(("gtid-" + transactionId).getBytes(StandardCharsets.US_ASCII)))
+                    .setBranchQualifier(new Buffer(("bq-" + transactionId).getBytes(StandardCharsets.US_ASCII))));
+        }
+        else {
+            transactionInfo.setLocalTransactionId(new KahaLocalTransactionId().setConnectionId(CONNECTION_ID).setTransactionId(transactionId));
+        }
+    }
+    private void endTransaction(int message) throws IOException {
+        //XA transactions are prepared before their outcome, like the broker writes them
+        if(transactionXa) {
+            write(new KahaPrepareCommand().setTransactionInfo(transactionInfo));
+        }
+        if(transactionRollback) {
+            write(new KahaRollbackCommand().setTransactionInfo(transactionInfo));
+            ++rolledBackCount;
+        }
+        else {
+            write(new KahaCommitCommand().setTransactionInfo(transactionInfo));
+            ++committedCount;
+            //the messages of a transaction are sent on its commit
+            for (int[] transactionMessage : transactionMessages) {
+                addAck(transactionMessage[0], transactionMessage[1], message);
+            }
+        }
+        transactionMessages.clear();
+        transactionInfo = null;
+    }
+    //-------------------------------------------------------------------------
+    private int nextPayloadSize() {
+        switch (payloadDistribution) {
+            case UNIFORM: {
+                return random.nextInt(2 * payloadSize + 1);
+            }
+            case EXPONENTIAL: {
+                double exponential = -Math.log(1.0 - random.nextDouble()) * payloadSize;
+                return (int)Math.min(exponential, (double)payload.length);
+            }
+            default: {
+                return payloadSize;
+            }
+        }
+    }
+    private static int getMaxPayloadSize(PayloadDistribution payloadDistribution, int payloadSize) {
+        switch (payloadDistribution) {
+            case UNIFORM: {
+                return 2 * payloadSize;
+            }
+            case EXPONENTIAL: {
+                return MAX_PAYLOAD_FACTOR * payloadSize;
+            }
+            default: {
+                return payloadSize;
+            }
+        }
+    }
+    //-------------------------------------------------------------------------
+    private static String getClientId(int subscriber) {
+        return "client-" + subscriber;
+    }
+    private static String getSubscriptionName(int topic) {
+        return "sub-" + topic;
+    }
+    //endregion
+    public SyntheticJournalsWriter(JournalsGeneratorProfile profile) {
+        if(profile == null) {
+            throw new NullPointerException("profile");
+        }
+        if(profile.getTopics() + profile.getQueues() == 0) {
+            throw new IndexOutOfBoundsException("queues");
+        }
+        //the broker does not keep topic messages without durable subscriptions
+        if(profile.getTopics() > 0 && profile.getSubscribers() == 0) {
+            throw new IndexOutOfBoundsException("subscribers");
+        }
+
+        messages = profile.getMessages();
+        topics = profile.getTopics();
+        subscribers = profile.getSubscribers();
+        ackLag = profile.getAckLag();
+        pendingRatio = profile.getPendingRatio();
+        transactionRatio = profile.getTransactionRatio();
+        xaRatio = profile.getXaRatio();
+        rollbackRatio = profile.getRollbackRatio();
+        transactionSize = profile.getTransactionSize();
+        payloadSize = profile.getPayloadSize();
+        payloadDistribution = profile.getPayloadDistribution();
+        seed = profile.getSeed();
+
+        destinations = new KahaDestination[topics + profile.getQueues()];
+        subscriptionKeys = new String[topics][subscribers];
+        for(int i = 0; i < destinations.length; ++i) {
+            boolean topic = i < topics;
+            destinations[i] = new KahaDestination()
+                    .setType(topic ? KahaDestination.DestinationType.TOPIC : KahaDestination.DestinationType.QUEUE)
+                    .setName(topic ? "generator.topic." + i : "generator.queue." + (i - topics));
+            for(int subscriber = 0; topic && subscriber < subscribers; ++subscriber) {
+                subscriptionKeys[i][subscriber] = getClientId(subscriber) + ":" + getSubscriptionName(i);
+            }
+        }
+
+        //the message bodies are slices of one random array
+        payload = new byte[getMaxPayloadSize(payloadDistribution, payloadSize)];
+        new Random(seed).nextBytes(payload);
+    }
+
+    //-------------------------------------------------------------------------
+    public long getRecordCount() {
+        return recordCount;
+    }
+    public long getSize() {
+        return size;
+    }
+    public long getCommittedCount() {
+        return committedCount;
+    }
+    public long getRolledBackCount() {
+        return rolledBackCount;
+    }
+    public long getPendingCount() {
+        return pendingCount;
+    }
+    //-------------------------------------------------------------------------
+    public void write(File directory, int journalSize) throws IOException {
+        if(directory == null) {
+            throw new NullPointerException("directory");
+        }
+        if(journalSize <= 0) {
+            throw new IndexOutOfBoundsException("journalSize");
+        }
+
+        random = new Random(seed);
+        recordCount = 0;
+        size = 0;
+        committedCount = 0;
+        rolledBackCount = 0;
+        pendingCount = 0;
+        transactionInfo = null;
+        transactionId = 0;
+        transactionMessages.clear();
+        acks.clear();
+
+        journal = createJournal(directory, journalSize);
+        try {
+            journal.start();
+            writeSubscriptions();
+
+            for(int message = 0; message < messages; ++message) {
+                writeMessage(message);
+                writeAcks(message);
+            }
+            if(transactionInfo != null) {
+                endTransaction(messages);
+            }
+            //the acks of the last ack lag messages are not written yet, like on a running broker
+            pendingCount += acks.size();
+        }
+        finally {
+            journal.close();
+            journal = null;
+            acks.clear();
+        }
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,129 @@
+package org.hill30.activemq.kahadb.index;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Set;
+
+final class JournalsIndexCursor implements Closeable, Comparable<JournalsIndexCursor> {
+    //region private
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+    //-------------------------------------------------------------------------
+    private final DataInputStream entriesStream;
+    private final DataInputStream keysStream;
+    private final Set<Integer> dataFileIds;
+    private long remaining;
+    private long keysPosition;
+    //-------------------------------------------------------------------------
+    private byte[] key = new byte[256];
+    private int keyLength;
+    private long keyOffset = -1;
+    private int dataFileId;
+    private int offset;
+    private int size;
+    //-------------------------------------------------------------------------
+    private void readKey(long nextKeyOffset, int nextKeyLength) throws IOException {
+        //the keys are written in the order of the entries, so they are read one after another
+        if(nextKeyOffset != keysPosition || nextKeyLength <= 0 || nextKeyLength > JournalsIndexFile.MAX_KEY_LENGTH) {
+            throw new IOException("Corrupted index file.");
+        }
+
+        if(nextKeyLength > key.length) {
+            key = Arrays.copyOf(key, Math.max(nextKeyLength, key.length << 1));
+        }
+        keysStream.readFully(key, 0, nextKeyLength);
+        keysPosition += nextKeyLength;
+        keyOffset = nextKeyOffset;
+        keyLength = nextKeyLength;
+    }
+    private static void skipFully(InputStream inputStream, long count) throws IOException {
+        while (count > 0) {
+            long skipped = inputStream.skip(count);
+            if(skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+    //endregion
+    JournalsIndexCursor(File file, Set<Integer> dataFileIds) throws IOException {
+        if(file == null) {
+            throw new NullPointerException("file");
+        }
+
+        //only the entries of the given data files are read, all of them without the ids
+        this.dataFileIds = dataFileIds;
+        this.entriesStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), READ_BUFFER_SIZE));
+        try {
+            if(entriesStream.readInt() != JournalsIndexFile.MAGIC || entriesStream.readInt() != JournalsIndexFile.VERSION) {
+                throw new IOException("Invalid index file: '" + file + "'.");
+            }
+            int dataFileCount = entriesStream.readInt();
+            remaining = entriesStream.readLong();
+            skipFully(entriesStream, (long)dataFileCount * JournalsIndexFile.DATA_FILE_SIZE);
+
+            long entriesLength = JournalsIndexFile.HEADER_SIZE + (long)dataFileCount * JournalsIndexFile.DATA_FILE_SIZE + remaining * JournalsIndexFile.ENTRY_SIZE;
+            this.keysStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), READ_BUFFER_SIZE));
+            skipFully(keysStream, entriesLength);
+        }
+        catch (IOException e) {
+            entriesStream.close();
+            throw e;
+        }
+    }
+
+    //-------------------------------------------------------------------------
+    boolean next() throws IOException {
+        while (remaining > 0) {
+            --remaining;
+            long nextKeyOffset = entriesStream.readLong();
+            int nextKeyLength = entriesStream.readInt();
+            dataFileId = entriesStream.readInt();
+            offset = entriesStream.readInt();
+            size = entriesStream.readInt();
+            //a key is read even if its entries are skipped, the next key follows it
+            if(nextKeyOffset != keyOffset) {
+                readKey(nextKeyOffset, nextKeyLength);
+            }
+
+            if(dataFileIds == null || dataFileIds.contains(dataFileId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    //-------------------------------------------------------------------------
+    byte[] getKey() {
+        return key;
+    }
+    int getKeyLength() {
+        return keyLength;
+    }
+    int getDataFileId() {
+        return dataFileId;
+    }
+    int getOffset() {
+        return offset;
+    }
+    int getSize() {
+        return size;
+    }
+    //-------------------------------------------------------------------------
+    @Override
+    public int compareTo(JournalsIndexCursor other) {
+        int result = JournalsIndexFile.compareKeys(key, keyLength, other.key, other.keyLength);
+        if(result == 0) {
+            result = Integer.compare(dataFileId, other.dataFileId);
+        }
+        return result == 0 ? Integer.compare(offset, other.offset) : result;
+    }
+    @Override
+    public void close() throws IOException {
+        try {
+            entriesStream.close();
+        }
+        finally {
+            keysStream.close();
+        }
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,255 @@
+package org.hill30.activemq.kahadb.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+final class JournalsIndexFile {
+    //region private
+    //the file is mapped in regions, every region overlaps the next one by the largest entry or key
+    private static final long REGION_SIZE = 1L << 30;
+    private static final int REGION_OVERLAP = 64 * 1024;
+    //-------------------------------------------------------------------------
+    private final File file;
+    private final List<IndexedDataFile> dataFiles;
+    private final long entryCount;
+    private final long entriesPosition;
+    private final long keysPosition;
+    private final MappedByteBuffer[] regions;
+    //-------------------------------------------------------------------------
+    private JournalsIndexFile(File file, List<IndexedDataFile> dataFiles, long entryCount, MappedByteBuffer[] regions) {
+        this.file = file;
+        this.dataFiles = dataFiles;
+        this.entryCount = entryCount;
+        this.entriesPosition = getEntriesPosition(dataFiles.size());
+        this.keysPosition = entriesPosition + entryCount * ENTRY_SIZE;
+        this.regions = regions;
+    }
+    //-------------------------------------------------------------------------
+    private MappedByteBuffer getRegion(long position) {
+        return regions[(int)(position / REGION_SIZE)];
+    }
+    private int getRegionOffset(long position) {
+        return (int)(position % REGION_SIZE);
+    }
+    private long getEntryPosition(long entry) {
+        return entriesPosition + entry * ENTRY_SIZE;
+    }
+    private int compareKey(long entry, byte[] key, boolean prefix) {
+        long position = getEntryPosition(entry);
+        MappedByteBuffer region = getRegion(position);
+        int regionOffset = getRegionOffset(position);
+        long keyPosition = keysPosition + region.getLong(regionOffset);
+        int keyLength = region.getInt(regionOffset + 8);
+
+        //keys are compared as unsigned bytes, the order they are sorted in
+        MappedByteBuffer keyRegion = getRegion(keyPosition);
+        int keyOffset = getRegionOffset(keyPosition);
+        int length = prefix ? Math.min(keyLength, key.length) : keyLength;
+        for(int i = 0; i < length && i < key.length; ++i) {
+            int result = Integer.compare(keyRegion.get(keyOffset + i) & 0xFF, key[i] & 0xFF);
+            if(result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+    //-------------------------------------------------------------------------
+    private static long getEntriesPosition(int dataFileCount) {
+        return HEADER_SIZE + (long)dataFileCount * DATA_FILE_SIZE;
+    }
+    private static List<IndexedDataFile> readDataFiles(RandomAccessFile input, int dataFileCount) throws IOException {
+        List<IndexedDataFile> dataFiles = new ArrayList<>(dataFileCount);
+        for(int i = 0; i < dataFileCount; ++i) {
+            dataFiles.add(new IndexedDataFile(input.readInt(), input.readInt(), input.readInt(), input.readLong()));
+        }
+        return Collections.unmodifiableList(dataFiles);
+    }
+    //endregion
+    //-------------------------------------------------------------------------
+    static final int MAGIC = 0x4B444249;
+    static final int VERSION = 1;
+    //magic, version, data files, entries
+    static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+    static final int ENTRY_COUNT_POSITION = 4 + 4 + 4;
+    //data file id, length, indexed length, hash
+    static final int DATA_FILE_SIZE = 4 + 4 + 4 + 8;
+    //key offset, key length, data file id, offset, size
+    static final int ENTRY_SIZE = 8 + 4 + 4 + 4 + 4;
+    static final int MAX_KEY_LENGTH = REGION_OVERLAP - ENTRY_SIZE;
+    //-------------------------------------------------------------------------
+    static byte[] encodeKey(JournalsIndexKeyType keyType, String key) {
+        if(keyType == null) {
+            throw new NullPointerException("keyType");
+        }
+        if(key == null) {
+            throw new NullPointerException("key");
+        }
+
+        //the key type is the first byte, so the keys of a type are next to each other
+        byte[] value = key.getBytes(StandardCharsets.UTF_8);
+        byte[] encodedKey = new byte[value.length + 1];
+        encodedKey[0] = keyType.getCode();
+        System.arraycopy(value, 0, encodedKey, 1, value.length);
+        return encodedKey;
+    }
+    static int compareKeys(byte[] key, int keyLength, byte[] otherKey, int otherKeyLength) {
+        int length = Math.min(keyLength, otherKeyLength);
+        for(int i = 0; i < length; ++i) {
+            int result = Integer.compare(key[i] & 0xFF, otherKey[i] & 0xFF);
+            if(result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(keyLength, otherKeyLength);
+    }
+    //-------------------------------------------------------------------------
+    static List<IndexedDataFile> readDataFiles(File file) throws IOException {
+        if(file == null) {
+            throw new NullPointerException("file");
+        }
+        if(!file.isFile()) {
+            return null;
+        }
+
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            //an index which was not written completely is built again
+            if(input.length() < HEADER_SIZE || input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return null;
+            }
+            int dataFileCount = input.readInt();
+            long entryCount = input.readLong();
+            if(dataFileCount < 0 || entryCount < 0 || getEntriesPosition(dataFileCount) + entryCount * ENTRY_SIZE > input.length()) {
+                return null;
+            }
+            return readDataFiles(input, dataFileCount);
+        }
+    }
+    static JournalsIndexFile open(File file) throws IOException {
+        if(file == null) {
+            throw new NullPointerException("file");
+        }
+
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            if(input.length() < HEADER_SIZE || input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Invalid index file: '" + file + "'.");
+            }
+            int dataFileCount = input.readInt();
+            long entryCount = input.readLong();
+            List<IndexedDataFile> dataFiles = readDataFiles(input, dataFileCount);
+
+            //the mapping stays valid after the file is closed
+            FileChannel channel = input.getChannel();
+            long length = channel.size();
+            MappedByteBuffer[] regions = new MappedByteBuffer[(int)((length + REGION_SIZE - 1) / REGION_SIZE)];
+            for(int i = 0; i < regions.length; ++i) {
+                long position = i * REGION_SIZE;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(length - position, REGION_SIZE + REGION_OVERLAP));
+            }
+            return new JournalsIndexFile(file, dataFiles, entryCount, regions);
+        }
+    }
+    //-------------------------------------------------------------------------
+    File getFile() {
+        return file;
+    }
+    List<IndexedDataFile> getDataFiles() {
+        return dataFiles;
+    }
+    long getEntryCount() {
+        return entryCount;
+    }
+    //-------------------------------------------------------------------------
+    long findFirst(byte[] key) {
+        //the first entry which is not less than the key, the entry count if there is none
+        long low = 0;
+        long high = entryCount;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if(compareKey(middle, key, false) < 0) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    boolean matches(long entry, byte[] key, boolean prefix) {
+        if(entry < 0 || entry >= entryCount) {
+            throw new IndexOutOfBoundsException("entry");
+        }
+
+        return compareKey(entry, key, prefix) == 0;
+    }
+    //-------------------------------------------------------------------------
+    JournalsIndexKeyType getKeyType(long entry) {
+        long position = getEntryPosition(entry);
+        long keyPosition = keysPosition + getRegion(position).getLong(getRegionOffset(position));
+        return JournalsIndexKeyType.valueOf(getRegion(keyPosition).get(getRegionOffset(keyPosition)));
+    }
+    String getKey(long entry) {
+        long position = getEntryPosition(entry);
+        MappedByteBuffer region = getRegion(position);
+        long keyPosition = keysPosition + region.getLong(getRegionOffset(position));
+        int keyLength = region.getInt(getRegionOffset(position) + 8);
+
+        //the key type byte is left out
+        byte[] key = new byte[keyLength - 1];
+        MappedByteBuffer keyRegion = getRegion(keyPosition);
+        int keyOffset = getRegionOffset(keyPosition) + 1;
+        for(int i = 0; i < key.length; ++i) {
+            key[i] = keyRegion.get(keyOffset + i);
+        }
+        return new String(key, StandardCharsets.UTF_8);
+    }
+    int getDataFileId(long entry) {
+        long position = getEntryPosition(entry);
+        return getRegion(position).getInt(getRegionOffset(position) + 12);
+    }
+    int getOffset(long entry) {
+        long position = getEntryPosition(entry);
+        return getRegion(position).getInt(getRegionOffset(position) + 16);
+    }
+    int getSize(long entry) {
+        long position = getEntryPosition(entry);
+        return getRegion(position).getInt(getRegionOffset(position) + 20);
+    }
+    //-------------------------------------------------------------------------
+    static final class IndexedDataFile {
+        //region private
+        private final int dataFileId;
+        private final int length;
+        private final int indexedLength;
+        private final long hash;
+        //endregion
+        IndexedDataFile(int dataFileId, int length, int indexedLength, long hash) {
+            this.dataFileId = dataFileId;
+            this.length = length;
+            this.indexedLength = indexedLength;
+            this.hash = hash;
+        }
+
+        //---------------------------------------------------------------------
+        int getDataFileId() {
+            return dataFileId;
+        }
+        int getLength() {
+            return length;
+        }
+        int getIndexedLength() {
+            return indexedLength;
+        }
+        long getHash() {
+            return hash;
+        }
+        //---------------------------------------------------------------------
+    }
+    //-------------------------------------------------------------------------
+}
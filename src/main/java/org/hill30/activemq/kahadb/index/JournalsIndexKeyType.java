@@ -0,0 +1,32 @@
+package org.hill30.activemq.kahadb.index;
+
+public enum JournalsIndexKeyType {
+    //the message id of adds, updates and acks
+    MESSAGE('m'),
+    //the destination name of adds, updates, acks, subscriptions and removed destinations
+    DESTINATION('d'),
+    //the transaction id as shown by the reader: TX:<connection id>:<id> or XID:[...]
+    TRANSACTION('t');
+    //-------------------------------------------------------------------------
+    //region private
+    private final byte code;
+    //endregion
+    JournalsIndexKeyType(char code) {
+        this.code = (byte)code;
+    }
+
+    //-------------------------------------------------------------------------
+    public byte getCode() {
+        return code;
+    }
+    //-------------------------------------------------------------------------
+    public static JournalsIndexKeyType valueOf(byte code) {
+        for (JournalsIndexKeyType keyType : values()) {
+            if(keyType.code == code) {
+                return keyType;
+            }
+        }
+        throw new IllegalArgumentException("code");
+    }
+    //-------------------------------------------------------------------------
+}
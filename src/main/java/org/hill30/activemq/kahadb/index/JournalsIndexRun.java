@@ -0,0 +1,139 @@
+package org.hill30.activemq.kahadb.index;
+
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+final class JournalsIndexRun {
+    //region private
+    private static final int KEY_TYPE_COUNT = JournalsIndexKeyType.values().length;
+    //-------------------------------------------------------------------------
+    private final int capacity;
+    //-------------------------------------------------------------------------
+    //the keys of a run are kept once, the entries refer to them by their number
+    private final List<Map<String, Integer>> keyIds = new ArrayList<>();
+    private final List<byte[]> keys = new ArrayList<>();
+    private final int[] entryKeys;
+    private final int[] dataFileIds;
+    private final int[] offsets;
+    private final int[] sizes;
+    private int count;
+    //-------------------------------------------------------------------------
+    private int getKeyId(JournalsIndexKeyType keyType, String key) {
+        Map<String, Integer> typeKeyIds = keyIds.get(keyType.ordinal());
+        Integer keyId = typeKeyIds.get(key);
+        if(keyId == null) {
+            byte[] encodedKey = JournalsIndexFile.encodeKey(keyType, key);
+            if(encodedKey.length > JournalsIndexFile.MAX_KEY_LENGTH) {
+                return -1;
+            }
+
+            keyId = keys.size();
+            keys.add(encodedKey);
+            typeKeyIds.put(key, keyId);
+        }
+        return keyId;
+    }
+    private int[] getKeyRanks() {
+        Integer[] keyOrder = new Integer[keys.size()];
+        for(int i = 0; i < keyOrder.length; ++i) {
+            keyOrder[i] = i;
+        }
+        Arrays.sort(keyOrder, (first, second) -> {
+            byte[] firstKey = keys.get(first);
+            byte[] secondKey = keys.get(second);
+            return JournalsIndexFile.compareKeys(firstKey, firstKey.length, secondKey, secondKey.length);
+        });
+
+        int[] keyRanks = new int[keyOrder.length];
+        for(int rank = 0; rank < keyOrder.length; ++rank) {
+            keyRanks[keyOrder[rank]] = rank;
+        }
+        return keyRanks;
+    }
+    //endregion
+    JournalsIndexRun(int capacity) {
+        if(capacity <= 0) {
+            throw new IndexOutOfBoundsException("capacity");
+        }
+
+        this.capacity = capacity;
+        for (int i = 0; i < KEY_TYPE_COUNT; ++i) {
+            keyIds.add(new HashMap<>());
+        }
+        entryKeys = new int[capacity];
+        dataFileIds = new int[capacity];
+        offsets = new int[capacity];
+        sizes = new int[capacity];
+    }
+
+    //-------------------------------------------------------------------------
+    int getCount() {
+        return count;
+    }
+    boolean isFull() {
+        //a command adds one entry of every key type at most
+        return count + KEY_TYPE_COUNT > capacity;
+    }
+    //-------------------------------------------------------------------------
+    void add(JournalsIndexKeyType keyType, String key, Location location) {
+        if(keyType == null) {
+            throw new NullPointerException("keyType");
+        }
+        if(key == null) {
+            throw new NullPointerException("key");
+        }
+        if(location == null) {
+            throw new NullPointerException("location");
+        }
+        if(count >= capacity) {
+            throw new IndexOutOfBoundsException("count");
+        }
+
+        //keys which do not fit the index are left out, no message id or destination is that long
+        int keyId = getKeyId(keyType, key);
+        if(keyId < 0) {
+            return;
+        }
+        entryKeys[count] = keyId;
+        dataFileIds[count] = location.getDataFileId();
+        offsets[count] = location.getOffset();
+        sizes[count] = location.getSize();
+        ++count;
+    }
+    long write(File file, List<JournalsIndexFile.IndexedDataFile> dataFiles) throws IOException {
+        if(file == null) {
+            throw new NullPointerException("file");
+        }
+        if(dataFiles == null) {
+            throw new NullPointerException("dataFiles");
+        }
+
+        //the entries are added in the journal order, so the key rank and the entry number sort them by key and location
+        int[] keyRanks = getKeyRanks();
+        long[] order = new long[count];
+        for(int i = 0; i < count; ++i) {
+            order[i] = ((long)keyRanks[entryKeys[i]] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        try (JournalsIndexWriter writer = new JournalsIndexWriter(file, dataFiles)) {
+            for (long value : order) {
+                int entry = (int)value;
+                byte[] key = keys.get(entryKeys[entry]);
+                writer.add(key, key.length, dataFileIds[entry], offsets[entry], sizes[entry]);
+            }
+            return writer.getEntryCount();
+        }
+    }
+    void clear() {
+        for (Map<String, Integer> typeKeyIds : keyIds) {
+            typeKeyIds.clear();
+        }
+        keys.clear();
+        count = 0;
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,117 @@
+package org.hill30.activemq.kahadb.index;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+final class JournalsIndexWriter implements Closeable {
+    //region private
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    //-------------------------------------------------------------------------
+    private final File file;
+    private final File keysFile;
+    private final DataOutputStream entriesStream;
+    private final DataOutputStream keysStream;
+    private long entryCount;
+    private long keysLength;
+    //-------------------------------------------------------------------------
+    private byte[] lastKey = new byte[256];
+    private int lastKeyLength = -1;
+    private long lastKeyOffset;
+    private int lastDataFileId;
+    private int lastOffset;
+    //-------------------------------------------------------------------------
+    private void appendKeys() throws IOException {
+        try (FileChannel target = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileChannel source = FileChannel.open(keysFile.toPath(), StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < keysLength) {
+                position += source.transferTo(position, keysLength - position, target);
+            }
+        }
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.seek(JournalsIndexFile.ENTRY_COUNT_POSITION);
+            output.writeLong(entryCount);
+        }
+    }
+    //endregion
+    JournalsIndexWriter(File file, List<JournalsIndexFile.IndexedDataFile> dataFiles) throws IOException {
+        if(file == null) {
+            throw new NullPointerException("file");
+        }
+        if(dataFiles == null) {
+            throw new NullPointerException("dataFiles");
+        }
+
+        //the entries are written in place, the keys after them once their count is known
+        this.file = file;
+        this.keysFile = new File(file.getPath() + ".keys");
+        this.entriesStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), WRITE_BUFFER_SIZE));
+        this.keysStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(keysFile), WRITE_BUFFER_SIZE));
+
+        entriesStream.writeInt(JournalsIndexFile.MAGIC);
+        entriesStream.writeInt(JournalsIndexFile.VERSION);
+        entriesStream.writeInt(dataFiles.size());
+        entriesStream.writeLong(0);
+        for (JournalsIndexFile.IndexedDataFile dataFile : dataFiles) {
+            entriesStream.writeInt(dataFile.getDataFileId());
+            entriesStream.writeInt(dataFile.getLength());
+            entriesStream.writeInt(dataFile.getIndexedLength());
+            entriesStream.writeLong(dataFile.getHash());
+        }
+    }
+
+    //-------------------------------------------------------------------------
+    long getEntryCount() {
+        return entryCount;
+    }
+    //-------------------------------------------------------------------------
+    void add(byte[] key, int keyLength, int dataFileId, int offset, int size) throws IOException {
+        if(key == null) {
+            throw new NullPointerException("key");
+        }
+        if(keyLength <= 0 || keyLength > key.length || keyLength > JournalsIndexFile.MAX_KEY_LENGTH) {
+            throw new IndexOutOfBoundsException("keyLength");
+        }
+
+        //the entries come sorted, the entries of the same key share its bytes
+        int keyOrder = lastKeyLength < 0 ? 1 : JournalsIndexFile.compareKeys(key, keyLength, lastKey, lastKeyLength);
+        if(keyOrder < 0 || (keyOrder == 0 && (dataFileId < lastDataFileId || (dataFileId == lastDataFileId && offset <= lastOffset)))) {
+            throw new IllegalStateException("The index entries are not sorted.");
+        }
+        if(keyOrder != 0) {
+            if(keyLength > lastKey.length) {
+                lastKey = Arrays.copyOf(lastKey, Math.max(keyLength, lastKey.length << 1));
+            }
+            System.arraycopy(key, 0, lastKey, 0, keyLength);
+            lastKeyLength = keyLength;
+            lastKeyOffset = keysLength;
+
+            keysStream.write(key, 0, keyLength);
+            keysLength += keyLength;
+        }
+
+        entriesStream.writeLong(lastKeyOffset);
+        entriesStream.writeInt(keyLength);
+        entriesStream.writeInt(dataFileId);
+        entriesStream.writeInt(offset);
+        entriesStream.writeInt(size);
+        lastDataFileId = dataFileId;
+        lastOffset = offset;
+        ++entryCount;
+    }
+    @Override
+    public void close() throws IOException {
+        try {
+            entriesStream.close();
+            keysStream.close();
+            appendKeys();
+        }
+        finally {
+            keysFile.delete();
+        }
+    }
+    //-------------------------------------------------------------------------
+}
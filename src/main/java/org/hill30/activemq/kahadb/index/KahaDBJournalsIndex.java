@@ -0,0 +1,329 @@
+package org.hill30.activemq.kahadb.index;
+
+import org.hill30.activemq.kahadb.utils.KahaDBJournalScanner;
+import org.hill30.activemq.kahadb.utils.KahaDBTransactionIdConversion;
+
+import org.apache.activemq.store.kahadb.JournalCommand;
+import org.apache.activemq.store.kahadb.data.KahaDestination;
+import org.apache.activemq.store.kahadb.data.KahaTransactionInfo;
+import org.apache.activemq.store.kahadb.disk.journal.DataFile;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static org.hill30.activemq.Utils.*;
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+
+public final class KahaDBJournalsIndex {
+    //region private
+    private static final String INDEX_FILE_NAME = "journals.index";
+    private static final int RUN_CAPACITY = 4 * 1024 * 1024;
+    //only the beginning of a journal file is hashed, a rewritten file differs in its first records
+    private static final int HASH_LENGTH = 16 * 1024;
+    //-------------------------------------------------------------------------
+    private boolean rebuild = false;
+    private boolean prefix = false;
+    private int limit = 0;
+    //-------------------------------------------------------------------------
+    private final StringBuilder transactionIdBuilder = new StringBuilder();
+    //-------------------------------------------------------------------------
+    private void updateIndex(File sourceDir) throws IOException {
+        updateIndex(createJournal(sourceDir));
+        //---------------------------------------------------------------------
+        for (File sourceSubDir : sourceDir.listFiles()) {
+            if(sourceSubDir.isDirectory()) {
+                updateIndex(sourceSubDir);
+            }
+        }
+        //---------------------------------------------------------------------
+    }
+    private void updateIndex(Journal journal) {
+        try {
+            showSeparator(2);
+            System.out.println("UPDATE JOURNALS INDEX");
+            System.out.println();
+            System.out.printf("- Directory: '%s'.\r\n", journal.getDirectory().getPath());
+
+            long start = System.currentTimeMillis();
+            journal.start();
+
+            File indexFile = getIndexFile(journal.getDirectory());
+            List<JournalsIndexFile.IndexedDataFile> indexedDataFiles = rebuild ? null : JournalsIndexFile.readDataFiles(indexFile);
+            Map<Integer, JournalsIndexFile.IndexedDataFile> indexedDataFileMap = new HashMap<>();
+            if(indexedDataFiles != null) {
+                for (JournalsIndexFile.IndexedDataFile indexedDataFile : indexedDataFiles) {
+                    indexedDataFileMap.put(indexedDataFile.getDataFileId(), indexedDataFile);
+                }
+            }
+
+            List<JournalsIndexFile.IndexedDataFile> dataFiles = new ArrayList<>();
+            Set<Integer> keptDataFileIds = new HashSet<>();
+            List<File> runFiles = new ArrayList<>();
+            JournalsIndexRun run = new JournalsIndexRun(RUN_CAPACITY);
+            int readDataFiles = 0;
+            long readSize = 0;
+            long entryCount;
+            try {
+                for (DataFile dataFile : new TreeMap<>(journal.getFileMap()).values()) {
+                    //the entries of unchanged journal files are kept, appended journal files are read from the indexed length
+                    int startOffset = 0;
+                    JournalsIndexFile.IndexedDataFile indexedDataFile = indexedDataFileMap.get(dataFile.getDataFileId());
+                    if(indexedDataFile != null && dataFile.getLength() >= indexedDataFile.getIndexedLength()
+                            && getIndexedHash(dataFile, indexedDataFile.getIndexedLength()) == indexedDataFile.getHash()) {
+                        keptDataFileIds.add(dataFile.getDataFileId());
+                        if(dataFile.getLength() == indexedDataFile.getLength()) {
+                            dataFiles.add(indexedDataFile);
+                            continue;
+                        }
+                        startOffset = indexedDataFile.getIndexedLength();
+                    }
+
+                    int indexedLength = indexDataFile(dataFile, startOffset, run, runFiles, indexFile);
+                    dataFiles.add(new JournalsIndexFile.IndexedDataFile(dataFile.getDataFileId(), dataFile.getLength(), indexedLength, getIndexedHash(dataFile, indexedLength)));
+                    ++readDataFiles;
+                    readSize += dataFile.getLength() - startOffset;
+                }
+
+                //the index is kept as it is when no journal file was appended, rewritten or removed
+                if(indexedDataFiles != null && readDataFiles == 0 && keptDataFileIds.size() == indexedDataFiles.size()) {
+                    System.out.printf("- Journals: %s (Unchanged: %s).\r\n", dataFiles.size(), dataFiles.size());
+                    System.out.println();
+                    System.out.printf("- Index is up to date: '%s'.\r\n", indexFile);
+                    return;
+                }
+
+                File tempFile = new File(indexFile.getPath() + ".tmp");
+                if(runFiles.isEmpty() && keptDataFileIds.isEmpty()) {
+                    entryCount = run.write(tempFile, dataFiles);
+                }
+                else {
+                    if(run.getCount() > 0) {
+                        runFiles.add(writeRun(run, indexFile, runFiles.size()));
+                    }
+                    //journal files which were removed or rewritten leave the index with their entries
+                    entryCount = mergeIndex(tempFile, dataFiles, keptDataFileIds.isEmpty() ? null : indexFile, keptDataFileIds, runFiles);
+                }
+                Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            finally {
+                for (File runFile : runFiles) {
+                    runFile.delete();
+                }
+            }
+
+            long end = System.currentTimeMillis();
+            System.out.printf("- Journals: %s (Read: %s, Unchanged: %s).\r\n", dataFiles.size(), readDataFiles, dataFiles.size() - readDataFiles);
+            System.out.printf("- Read size: %s.\r\n", bytesToString(readSize));
+            System.out.printf("- Entries: %s (Index size: %s).\r\n", entryCount, bytesToString(indexFile.length()));
+            System.out.println();
+            System.out.printf("- Index: '%s'.\r\n", indexFile);
+            System.out.printf("- It took time: %s seconds.\r\n", ((end - start) / 1000.0f));
+        }
+        catch (Throwable throwable) {
+            showException(throwable);
+        }
+        finally {
+            try {
+                journal.close();
+            }
+            catch (IOException e) {}
+        }
+    }
+    private int indexDataFile(DataFile dataFile, int startOffset, JournalsIndexRun run, List<File> runFiles, File indexFile) throws IOException {
+        int indexedLength = startOffset;
+        KahaDBJournalScanner scanner = new KahaDBJournalScanner(dataFile, startOffset);
+        while (scanner.next()) {
+            //a full run is sorted and written, the runs are merged at the end
+            if(run.isFull()) {
+                runFiles.add(writeRun(run, indexFile, runFiles.size()));
+            }
+
+            Location location = scanner.getLocation();
+            indexCommand(readCommandHeader(scanner.getSequence()), location, run);
+            indexedLength = location.getOffset() + location.getSize();
+        }
+        return indexedLength;
+    }
+    private void indexCommand(JournalCommand<?> command, Location location, JournalsIndexRun run) {
+        String messageId = getCommandMessageId(command);
+        if(messageId != null) {
+            run.add(JournalsIndexKeyType.MESSAGE, messageId, location);
+        }
+        KahaDestination destination = getCommandDestination(command);
+        if(destination != null) {
+            run.add(JournalsIndexKeyType.DESTINATION, destination.getName(), location);
+        }
+        KahaTransactionInfo transactionInfo = getCommandTransactionInfo(command);
+        if(transactionInfo != null) {
+            transactionIdBuilder.setLength(0);
+            run.add(JournalsIndexKeyType.TRANSACTION, KahaDBTransactionIdConversion.append(transactionIdBuilder, transactionInfo).toString(), location);
+        }
+    }
+    //-------------------------------------------------------------------------
+    private void lookup(File sourceDir, byte[] key) throws IOException {
+        lookupIndex(getIndexFile(sourceDir), key);
+        //---------------------------------------------------------------------
+        for (File sourceSubDir : sourceDir.listFiles()) {
+            if(sourceSubDir.isDirectory()) {
+                lookup(sourceSubDir, key);
+            }
+        }
+        //---------------------------------------------------------------------
+    }
+    private void lookupIndex(File indexFile, byte[] key) {
+        try {
+            showSeparator();
+            if(!indexFile.isFile()) {
+                System.out.printf("- Index not found: '%s', it is built when no key is given.\r\n", indexFile);
+                return;
+            }
+
+            long start = System.nanoTime();
+            JournalsIndexFile index = JournalsIndexFile.open(indexFile);
+            System.out.printf("- Index: '%s' (Journals: %s, Entries: %s).\r\n", indexFile, index.getDataFiles().size(), index.getEntryCount());
+            System.out.println();
+
+            int found = 0;
+            for(long entry = index.findFirst(key); entry < index.getEntryCount() && index.matches(entry, key, prefix) && (limit == 0 || found < limit); ++entry) {
+                ++found;
+                System.out.printf("%s %s: %s - Journal: %s (Offset: %s, Size: %s).\r\n",
+                        found, index.getKeyType(entry), index.getKey(entry),
+                        Journal.DEFAULT_FILE_PREFIX + index.getDataFileId(entry) + Journal.DEFAULT_FILE_SUFFIX, index.getOffset(entry), index.getSize(entry));
+            }
+            long end = System.nanoTime();
+
+            if(found > 0) {
+                System.out.println();
+            }
+            System.out.printf("- Found: %s.\r\n", found);
+            System.out.printf("- It took time: %s milliseconds.\r\n", ((end - start) / 1000000.0f));
+        }
+        catch (Throwable throwable) {
+            showException(throwable);
+        }
+    }
+    //-------------------------------------------------------------------------
+    private static File getIndexFile(File directory) {
+        return new File(directory, INDEX_FILE_NAME);
+    }
+    private static long getIndexedHash(DataFile dataFile, int indexedLength) throws IOException {
+        return getHash(dataFile.getFile(), Math.min(indexedLength, HASH_LENGTH));
+    }
+    private static File writeRun(JournalsIndexRun run, File indexFile, int runIndex) throws IOException {
+        File runFile = new File(indexFile.getPath() + ".run" + runIndex);
+        run.write(runFile, Collections.<JournalsIndexFile.IndexedDataFile>emptyList());
+        run.clear();
+        return runFile;
+    }
+    private static long mergeIndex(File file, List<JournalsIndexFile.IndexedDataFile> dataFiles, File indexFile, Set<Integer> keptDataFileIds, List<File> runFiles) throws IOException {
+        List<JournalsIndexCursor> cursors = new ArrayList<>();
+        try {
+            if(indexFile != null) {
+                cursors.add(new JournalsIndexCursor(indexFile, keptDataFileIds));
+            }
+            for (File runFile : runFiles) {
+                cursors.add(new JournalsIndexCursor(runFile, null));
+            }
+
+            //the runs and the kept entries are sorted, the smallest entry of them is the next one
+            PriorityQueue<JournalsIndexCursor> queue = new PriorityQueue<>();
+            for (JournalsIndexCursor cursor : cursors) {
+                if(cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            try (JournalsIndexWriter writer = new JournalsIndexWriter(file, dataFiles)) {
+                while (!queue.isEmpty()) {
+                    JournalsIndexCursor cursor = queue.poll();
+                    writer.add(cursor.getKey(), cursor.getKeyLength(), cursor.getDataFileId(), cursor.getOffset(), cursor.getSize());
+                    if(cursor.next()) {
+                        queue.add(cursor);
+                    }
+                }
+                return writer.getEntryCount();
+            }
+        }
+        finally {
+            for (JournalsIndexCursor cursor : cursors) {
+                try {
+                    cursor.close();
+                }
+                catch (IOException e) {}
+            }
+        }
+    }
+    //endregion
+    //-------------------------------------------------------------------------
+    public boolean isRebuild() {
+        return rebuild;
+    }
+    public void setRebuild(boolean rebuild) {
+        this.rebuild = rebuild;
+    }
+    public boolean isPrefix() {
+        return prefix;
+    }
+    public void setPrefix(boolean prefix) {
+        this.prefix = prefix;
+    }
+    public int getLimit() {
+        return limit;
+    }
+    public void setLimit(int limit) {
+        if(limit < 0) {
+            throw new IndexOutOfBoundsException("limit");
+        }
+
+        this.limit = limit;
+    }
+    //-------------------------------------------------------------------------
+    public void updateIndex(String sourceDirPath) throws NotDirectoryException {
+        if(isNullOrEmpty(sourceDirPath)) {
+            throw new NullPointerException("sourceDirPath");
+        }
+
+        File sourceDir = new File(sourceDirPath);
+        if(!sourceDir.isDirectory()) {
+            throw new NotDirectoryException("sourceDirPath");
+        }
+
+        try {
+            updateIndex(sourceDir);
+            showSeparator(2);
+        }
+        catch (Throwable throwable) {
+            showException(throwable);
+        }
+    }
+    public void lookup(String sourceDirPath, JournalsIndexKeyType keyType, String key) throws NotDirectoryException {
+        if(isNullOrEmpty(sourceDirPath)) {
+            throw new NullPointerException("sourceDirPath");
+        }
+        if(keyType == null) {
+            throw new NullPointerException("keyType");
+        }
+        if(key == null) {
+            throw new NullPointerException("key");
+        }
+
+        File sourceDir = new File(sourceDirPath);
+        if(!sourceDir.isDirectory()) {
+            throw new NotDirectoryException("sourceDirPath");
+        }
+
+        try {
+            lookup(sourceDir, JournalsIndexFile.encodeKey(keyType, key));
+            showSeparator();
+        }
+        catch (Throwable throwable) {
+            showException(throwable);
+        }
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,39 @@
+package org.hill30.activemq.kahadb.index;
+
+import static org.hill30.activemq.Utils.*;
+
+public final class Run {
+    public static void main(String[] args) throws Exception {
+        if (args.length <= 0) {
+            System.out.println("usage KahaDBJournalsIndex <journals directory> [--rebuild] [--message=<message id>] [--destination=<name>] [--transaction=<transaction id>] [--prefix] [--limit=<entries>]");
+            System.exit(1);
+        }
+        //---------------------------------------------------------------------
+        String sourceDirPath = args[0];
+        boolean rebuild = hasArgument(args, "rebuild");
+        String messageId = getArgumentValue(args, "message", null);
+        String destination = getArgumentValue(args, "destination", null);
+        String transactionId = getArgumentValue(args, "transaction", null);
+        boolean prefix = hasArgument(args, "prefix");
+        int limit = getArgumentValue(args, "limit", 0);
+        //---------------------------------------------------------------------
+        KahaDBJournalsIndex index = new KahaDBJournalsIndex();
+        index.setRebuild(rebuild);
+        index.setPrefix(prefix);
+        index.setLimit(limit);
+        //without a key the index is built or updated with the appended journal files
+        if(messageId != null) {
+            index.lookup(sourceDirPath, JournalsIndexKeyType.MESSAGE, messageId);
+        }
+        else if(destination != null) {
+            index.lookup(sourceDirPath, JournalsIndexKeyType.DESTINATION, destination);
+        }
+        else if(transactionId != null) {
+            index.lookup(sourceDirPath, JournalsIndexKeyType.TRANSACTION, transactionId);
+        }
+        else {
+            index.updateIndex(sourceDirPath);
+        }
+        //---------------------------------------------------------------------
+    }
+}
@@ -0,0 +1,174 @@
+package org.hill30.activemq.kahadb.optimizer;
+
+import org.hill30.activemq.kahadb.optimizer.destinations.PoolDestinationData;
+import org.hill30.activemq.kahadb.optimizer.locations.LocationStore;
+
+import org.apache.activemq.store.kahadb.disk.journal.DataFile;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+
+final class AnalysisCheckpoints {
+    //region private
+    private static final String CHECKPOINTS_FILE_NAME = "optimizer.checkpoints";
+    private static final String CHECKPOINTS_TEMP_FILE_NAME = CHECKPOINTS_FILE_NAME + ".temp";
+    private static final int CHECKPOINTS_MAGIC = 0x4B444243;
+    private static final int CHECKPOINTS_VERSION = 3;
+    //a closed journal file is checked by its length and the hash of its beginning, like the journals index does;
+    //the last one is appended to by the broker, its analysed part is hashed whole
+    private static final int HASH_LENGTH = 16 * 1024;
+    //-------------------------------------------------------------------------
+    private AnalysisCheckpoints() {
+    }
+    //-------------------------------------------------------------------------
+    private static long getCheckpointHash(DataFile dataFile, long length, boolean lastDataFile) throws IOException {
+        return getHash(dataFile.getFile(), lastDataFile ? length : Math.min(length, HASH_LENGTH));
+    }
+    //-------------------------------------------------------------------------
+    private static Location getStart(Journal journal, TreeMap<Integer, long[]> dataFiles) throws IOException {
+        if(dataFiles.isEmpty()) {
+            return null;
+        }
+
+        //data files removed by the broker since the checkpoint had no live data, the rest must be unchanged
+        int lastDataFileId = dataFiles.lastKey();
+        for (DataFile dataFile : journal.getFileMap().values()) {
+            if(dataFile.getDataFileId() >= lastDataFileId) {
+                continue;
+            }
+
+            //the size on disk, the journal gives the last data file the length of its written records
+            long[] checkpoint = dataFiles.get(dataFile.getDataFileId());
+            if(checkpoint == null || dataFile.getFile().length() != checkpoint[0] || getCheckpointHash(dataFile, checkpoint[0], false) != checkpoint[1]) {
+                return null;
+            }
+        }
+
+        //the broker appends to the last data file, only its analysed part is checked
+        DataFile lastDataFile = journal.getFileMap().get(lastDataFileId);
+        if(lastDataFile == null) {
+            return new Location(lastDataFileId + 1, 0);
+        }
+        long[] checkpoint = dataFiles.lastEntry().getValue();
+        if(lastDataFile.getLength() < checkpoint[0] || getCheckpointHash(lastDataFile, checkpoint[0], true) != checkpoint[1]) {
+            return null;
+        }
+        return new Location(lastDataFileId, (int)checkpoint[0]);
+    }
+    private static boolean hasDataFiles(Journal journal, PoolDestinationData poolDestinationData) {
+        //the broker can also remove a data file whose live records it has copied, like the acks it compacts
+        LocationStore locations = new LocationStore();
+        poolDestinationData.writeSubscriptionLocations(locations);
+        poolDestinationData.writeMessageLocations(locations);
+        for(int i = 0; i < locations.size(); ++i) {
+            if(!journal.getFileMap().containsKey(locations.getDataFileId(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    //endregion
+    static File getFile(Journal journal) {
+        if(journal == null) {
+            throw new NullPointerException("journal");
+        }
+
+        return new File(journal.getDirectory(), CHECKPOINTS_FILE_NAME);
+    }
+    //-------------------------------------------------------------------------
+    static int write(Journal journal, PoolDestinationData poolDestinationData) throws IOException {
+        if(journal == null) {
+            throw new NullPointerException("journal");
+        }
+        if(poolDestinationData == null) {
+            throw new NullPointerException("poolDestinationData");
+        }
+
+        //the data files the state was analysed from, then the state itself; the previous checkpoint is replaced only by a complete one
+        TreeMap<Integer, DataFile> dataFiles = new TreeMap<>(journal.getFileMap());
+        File file = new File(journal.getDirectory(), CHECKPOINTS_TEMP_FILE_NAME);
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            outputStream.writeInt(CHECKPOINTS_MAGIC);
+            outputStream.writeInt(CHECKPOINTS_VERSION);
+
+            outputStream.writeInt(dataFiles.size());
+            for (DataFile dataFile : dataFiles.values()) {
+                outputStream.writeInt(dataFile.getDataFileId());
+                outputStream.writeInt(dataFile.getLength());
+                outputStream.writeLong(getCheckpointHash(dataFile, dataFile.getLength(), dataFile.getDataFileId() == dataFiles.lastKey()));
+            }
+            poolDestinationData.write(outputStream);
+        }
+        Files.move(file.toPath(), getFile(journal).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return dataFiles.size();
+    }
+    static AnalysisCheckpoint restore(Journal journal) throws IOException {
+        File file = getFile(journal);
+        if(!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(file.length() < 8 || inputStream.readInt() != CHECKPOINTS_MAGIC || inputStream.readInt() != CHECKPOINTS_VERSION) {
+                return null;
+            }
+
+            TreeMap<Integer, long[]> dataFiles = new TreeMap<>();
+            int dataFileCount = inputStream.readInt();
+            for(int i = 0; i < dataFileCount; ++i) {
+                dataFiles.put(inputStream.readInt(), new long[] { inputStream.readInt(), inputStream.readLong() });
+            }
+
+            Location start = getStart(journal, dataFiles);
+            if(start == null) {
+                return null;
+            }
+
+            PoolDestinationData poolDestinationData = PoolDestinationData.read(inputStream);
+            if(!hasDataFiles(journal, poolDestinationData)) {
+                return null;
+            }
+
+            int restoredDataFiles = 0;
+            for (Map.Entry<Integer, long[]> dataFile : dataFiles.entrySet()) {
+                if(journal.getFileMap().containsKey(dataFile.getKey())) {
+                    ++restoredDataFiles;
+                }
+            }
+            return new AnalysisCheckpoint(start, restoredDataFiles, poolDestinationData);
+        }
+    }
+    //-------------------------------------------------------------------------
+    static final class AnalysisCheckpoint {
+        //region private
+        private final Location start;
+        private final int dataFiles;
+        private final PoolDestinationData poolDestinationData;
+        //endregion
+        AnalysisCheckpoint(Location start, int dataFiles, PoolDestinationData poolDestinationData) {
+            this.start = start;
+            this.dataFiles = dataFiles;
+            this.poolDestinationData = poolDestinationData;
+        }
+
+        //---------------------------------------------------------------------
+        Location getStart() {
+            return start;
+        }
+        int getDataFiles() {
+            return dataFiles;
+        }
+        PoolDestinationData getPoolDestinationData() {
+            return poolDestinationData;
+        }
+        //---------------------------------------------------------------------
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,247 @@
+package org.hill30.activemq.kahadb.optimizer;
+
+import org.hill30.activemq.kahadb.optimizer.destinations.PoolDestinationData;
+import org.hill30.activemq.kahadb.optimizer.locations.LocationStore;
+
+import org.apache.activemq.store.kahadb.disk.journal.DataFile;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+final class JournalsCapacityPlan {
+    //region private
+    private static final int PROBE_BLOCK_SIZE = 1024 * 1024;
+    //-------------------------------------------------------------------------
+    private final Journal sourceJournal;
+    private final TreeMap<Integer, DataFile> dataFiles;
+    private final LocationStore locations = new LocationStore();
+    //-------------------------------------------------------------------------
+    private final HashMap<Integer, Long> liveSizes = new HashMap<>();
+    private final HashMap<String, DestinationPlan> destinationPlans = new HashMap<>();
+    //-------------------------------------------------------------------------
+    private int targetDataFileCount;
+    private long targetSize;
+    //-------------------------------------------------------------------------
+    private void addDestinationLocation(String destination, Location location) {
+        destinationPlans.computeIfAbsent(destination, DestinationPlan::new).addLiveSize(location.getDataFileId(), location.getSize());
+    }
+    private void targetEstimate(int maxFileLength, int maxWriteBatchSize) {
+        //the same packing as the journal appender: a batch starts with a control record and never crosses a data file
+        long dataFileLength = 0;
+        long batchLength = 0;
+        for(int i = 0; i < locations.size(); ++i) {
+            int size = locations.getSize(i);
+            if(batchLength == 0 || batchLength + size >= maxWriteBatchSize || dataFileLength + size > maxFileLength) {
+                if(targetDataFileCount == 0 || dataFileLength + size >= maxFileLength) {
+                    ++targetDataFileCount;
+                    dataFileLength = 0;
+                }
+                dataFileLength += Journal.BATCH_CONTROL_RECORD_SIZE;
+                targetSize += Journal.BATCH_CONTROL_RECORD_SIZE;
+                batchLength = Journal.BATCH_CONTROL_RECORD_SIZE;
+            }
+            dataFileLength += size;
+            batchLength += size;
+            targetSize += size;
+        }
+    }
+    //endregion
+    JournalsCapacityPlan(Journal sourceJournal, PoolDestinationData poolDestinationData) {
+        if(sourceJournal == null) {
+            throw new NullPointerException("sourceJournal");
+        }
+        if(poolDestinationData == null) {
+            throw new NullPointerException("poolDestinationData");
+        }
+
+        this.sourceJournal = sourceJournal;
+        this.dataFiles = new TreeMap<>(sourceJournal.getFileMap());
+
+        //the records are moved in this order, subscriptions first
+        LocationStore messageLocations = poolDestinationData.getMessageLocations();
+        poolDestinationData.writeSubscriptionLocations(locations);
+        for(int i = 0; i < messageLocations.size(); ++i) {
+            locations.add(messageLocations.getDataFileId(i), messageLocations.getOffset(i), messageLocations.getSize(i));
+        }
+        for(int i = 0; i < locations.size(); ++i) {
+            liveSizes.merge(locations.getDataFileId(i), (long)locations.getSize(i), Long::sum);
+        }
+        poolDestinationData.writeDestinationLocations(this::addDestinationLocation);
+
+        //the free part of a data file is held by the destinations which have live records in it, in proportion to them
+        for (DestinationPlan destinationPlan : destinationPlans.values()) {
+            for (Map.Entry<Integer, Long> liveSize : destinationPlan.liveSizes.entrySet()) {
+                DataFile dataFile = dataFiles.get(liveSize.getKey());
+                if(dataFile != null) {
+                    long dataFileLiveSize = getLiveSize(dataFile.getDataFileId());
+                    destinationPlan.reclaimableSize += (long)((dataFile.getLength() - dataFileLiveSize) * (liveSize.getValue() / (double)dataFileLiveSize));
+                }
+            }
+        }
+
+        targetEstimate(sourceJournal.getMaxFileLength(), sourceJournal.getWriteBatchSize());
+    }
+
+    //-------------------------------------------------------------------------
+    int getDataFileCount() {
+        return dataFiles.size();
+    }
+    Collection<DataFile> getDataFiles() {
+        return dataFiles.values();
+    }
+    long getDataFilesSize() {
+        long size = 0;
+        for (DataFile dataFile : dataFiles.values()) {
+            size += dataFile.getLength();
+        }
+        return size;
+    }
+    long getLiveSize(int dataFileId) {
+        Long liveSize = liveSizes.get(dataFileId);
+        return liveSize == null ? 0 : liveSize;
+    }
+    long getReclaimableSize(int dataFileId) {
+        DataFile dataFile = dataFiles.get(dataFileId);
+        return dataFile == null ? 0 : dataFile.getLength() - getLiveSize(dataFileId);
+    }
+    //-------------------------------------------------------------------------
+    int getMoveCount() {
+        return locations.size();
+    }
+    long getMoveSize() {
+        return locations.getTotalSize();
+    }
+    int getTargetDataFileCount() {
+        return targetDataFileCount;
+    }
+    long getTargetSize() {
+        return targetSize;
+    }
+    //-------------------------------------------------------------------------
+    List<DestinationPlan> getDestinationPlans() {
+        List<DestinationPlan> plans = new ArrayList<>(destinationPlans.values());
+        //the destinations which hold the most disk first
+        plans.sort((plan1, plan2) -> Long.compare(plan2.getReclaimableSize(), plan1.getReclaimableSize()));
+        return plans;
+    }
+    //-------------------------------------------------------------------------
+    static long readProbe(Journal sourceJournal, long probeSize) throws IOException {
+        if(sourceJournal == null) {
+            throw new NullPointerException("sourceJournal");
+        }
+        if(probeSize <= 0) {
+            throw new IndexOutOfBoundsException("probeSize");
+        }
+
+        //blocks are sampled evenly over the data files, before the analysis has read them into the page cache
+        Collection<DataFile> dataFiles = new TreeMap<>(sourceJournal.getFileMap()).values();
+        long dataFilesSize = 0;
+        for (DataFile dataFile : dataFiles) {
+            dataFilesSize += dataFile.getLength();
+        }
+        if(dataFilesSize == 0) {
+            return 0;
+        }
+
+        long stride = Math.max(PROBE_BLOCK_SIZE, dataFilesSize / Math.max(1, probeSize / PROBE_BLOCK_SIZE));
+        ByteBuffer block = ByteBuffer.allocate(PROBE_BLOCK_SIZE);
+        long readSize = 0;
+        long nextPosition = 0;
+        long dataFileStart = 0;
+
+        long start = System.nanoTime();
+        for (DataFile dataFile : dataFiles) {
+            long dataFileEnd = dataFileStart + dataFile.getLength();
+            if(nextPosition < dataFileEnd && readSize < probeSize) {
+                try (FileChannel channel = FileChannel.open(dataFile.getFile().toPath(), StandardOpenOption.READ)) {
+                    for(; nextPosition < dataFileEnd && readSize < probeSize; nextPosition += stride) {
+                        long position = nextPosition - dataFileStart;
+                        block.clear();
+                        while (block.hasRemaining()) {
+                            if(channel.read(block, position + block.position()) < 0) {
+                                break;
+                            }
+                        }
+                        readSize += block.position();
+                    }
+                }
+            }
+            dataFileStart = dataFileEnd;
+        }
+        long time = System.nanoTime() - start;
+
+        return time == 0 ? 0 : (long)(readSize * 1000000000.0 / time);
+    }
+    static long writeProbe(File directory, long probeSize) throws IOException {
+        if(directory == null) {
+            throw new NullPointerException("directory");
+        }
+        if(probeSize <= 0) {
+            throw new IndexOutOfBoundsException("probeSize");
+        }
+
+        //a temporary file next to the target directory, it is synced like the moved journals and deleted
+        File probeFile = File.createTempFile("optimizer", ".probe", directory);
+        try (FileChannel channel = FileChannel.open(probeFile.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer block = ByteBuffer.allocate(PROBE_BLOCK_SIZE);
+            new Random().nextBytes(block.array());
+
+            long start = System.nanoTime();
+            for(long written = 0; written < probeSize; written += PROBE_BLOCK_SIZE) {
+                block.clear();
+                while (block.hasRemaining()) {
+                    channel.write(block);
+                }
+            }
+            channel.force(true);
+            long time = System.nanoTime() - start;
+
+            long writeSize = (probeSize + PROBE_BLOCK_SIZE - 1) / PROBE_BLOCK_SIZE * PROBE_BLOCK_SIZE;
+            return time == 0 ? 0 : (long)(writeSize * 1000000000.0 / time);
+        }
+        finally {
+            probeFile.delete();
+        }
+    }
+    //-------------------------------------------------------------------------
+    static final class DestinationPlan {
+        //region private
+        private final String destinationId;
+        private final HashMap<Integer, Long> liveSizes = new HashMap<>();
+        private long reclaimableSize;
+        //-------------------------------------------------------------------------
+        private void addLiveSize(int dataFileId, int size) {
+            liveSizes.merge(dataFileId, (long)size, Long::sum);
+        }
+        //endregion
+        DestinationPlan(String destinationId) {
+            this.destinationId = destinationId;
+        }
+
+        //---------------------------------------------------------------------
+        String getDestinationId() {
+            return destinationId;
+        }
+        int getDataFileCount() {
+            return liveSizes.size();
+        }
+        long getLiveSize() {
+            long liveSize = 0;
+            for (long size : liveSizes.values()) {
+                liveSize += size;
+            }
+            return liveSize;
+        }
+        long getReclaimableSize() {
+            return reclaimableSize;
+        }
+        //---------------------------------------------------------------------
+    }
+    //-------------------------------------------------------------------------
+}
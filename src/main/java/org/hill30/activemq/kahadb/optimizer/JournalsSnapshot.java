@@ -0,0 +1,124 @@
+package org.hill30.activemq.kahadb.optimizer;
+
+import org.apache.activemq.store.kahadb.disk.journal.DataFile;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+
+import java.io.*;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+
+final class JournalsSnapshot {
+    //region private
+    private static final String SNAPSHOT_FILE_NAME = "optimizer.snapshot";
+    private static final int SNAPSHOT_MAGIC = 0x4B444253;
+    private static final int SNAPSHOT_VERSION = 1;
+    //-------------------------------------------------------------------------
+    private final TreeMap<Integer, Integer> dataFileLengths;
+    //the broker appends to the last data file, only its analysed part is checked
+    private final long lastDataFileHash;
+    //-------------------------------------------------------------------------
+    private JournalsSnapshot(TreeMap<Integer, Integer> dataFileLengths, long lastDataFileHash) {
+        this.dataFileLengths = dataFileLengths;
+        this.lastDataFileHash = lastDataFileHash;
+    }
+    //endregion
+    static File getFile(File directory) {
+        if(directory == null) {
+            throw new NullPointerException("directory");
+        }
+
+        return new File(directory, SNAPSHOT_FILE_NAME);
+    }
+    //-------------------------------------------------------------------------
+    static JournalsSnapshot create(Journal journal) throws IOException {
+        if(journal == null) {
+            throw new NullPointerException("journal");
+        }
+
+        TreeMap<Integer, Integer> dataFileLengths = new TreeMap<>();
+        for (DataFile dataFile : new TreeMap<>(journal.getFileMap()).values()) {
+            dataFileLengths.put(dataFile.getDataFileId(), dataFile.getLength());
+        }
+
+        long lastDataFileHash = 0;
+        if(!dataFileLengths.isEmpty()) {
+            Map.Entry<Integer, Integer> lastDataFile = dataFileLengths.lastEntry();
+            lastDataFileHash = getHash(journal.getFile(lastDataFile.getKey()), lastDataFile.getValue());
+        }
+        return new JournalsSnapshot(dataFileLengths, lastDataFileHash);
+    }
+    static JournalsSnapshot read(File directory) throws IOException {
+        File file = getFile(directory);
+        if(!file.isFile()) {
+            throw new IllegalStateException("snapshot not found: " + file.getPath());
+        }
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(inputStream.readInt() != SNAPSHOT_MAGIC || inputStream.readInt() != SNAPSHOT_VERSION) {
+                throw new IllegalStateException("snapshot not supported: " + file.getPath());
+            }
+
+            TreeMap<Integer, Integer> dataFileLengths = new TreeMap<>();
+            int dataFiles = inputStream.readInt();
+            for(int i = 0; i < dataFiles; ++i) {
+                dataFileLengths.put(inputStream.readInt(), inputStream.readInt());
+            }
+            return new JournalsSnapshot(dataFileLengths, inputStream.readLong());
+        }
+    }
+    //-------------------------------------------------------------------------
+    int getDataFileCount() {
+        return dataFileLengths.size();
+    }
+    int getLastDataFileId() {
+        return dataFileLengths.isEmpty() ? 0 : dataFileLengths.lastKey();
+    }
+    int getLastDataFileLength() {
+        return dataFileLengths.isEmpty() ? 0 : dataFileLengths.lastEntry().getValue();
+    }
+    //-------------------------------------------------------------------------
+    void write(File directory) throws IOException {
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getFile(directory))))) {
+            outputStream.writeInt(SNAPSHOT_MAGIC);
+            outputStream.writeInt(SNAPSHOT_VERSION);
+
+            outputStream.writeInt(dataFileLengths.size());
+            for (Map.Entry<Integer, Integer> dataFileLength : dataFileLengths.entrySet()) {
+                outputStream.writeInt(dataFileLength.getKey());
+                outputStream.writeInt(dataFileLength.getValue());
+            }
+            outputStream.writeLong(lastDataFileHash);
+        }
+    }
+    Location getDeltaStart(Journal journal) throws IOException {
+        if(journal == null) {
+            throw new NullPointerException("journal");
+        }
+
+        if(dataFileLengths.isEmpty()) {
+            return new Location(0, 0);
+        }
+
+        //data files removed by the broker since the snapshot had no live data, the rest must be unchanged
+        int lastDataFileId = getLastDataFileId();
+        for (Map.Entry<Integer, Integer> dataFileLength : dataFileLengths.headMap(lastDataFileId).entrySet()) {
+            DataFile dataFile = journal.getFileMap().get(dataFileLength.getKey());
+            if(dataFile != null && dataFile.getLength() != dataFileLength.getValue()) {
+                throw new IllegalStateException("journal changed since the snapshot: " + dataFile.getFile().getName());
+            }
+        }
+
+        DataFile lastDataFile = journal.getFileMap().get(lastDataFileId);
+        if(lastDataFile == null) {
+            return new Location(lastDataFileId + 1, 0);
+        }
+        if(lastDataFile.getLength() < getLastDataFileLength() || getHash(lastDataFile.getFile(), getLastDataFileLength()) != lastDataFileHash) {
+            throw new IllegalStateException("journal changed since the snapshot: " + lastDataFile.getFile().getName());
+        }
+        return new Location(lastDataFileId, getLastDataFileLength());
+    }
+    //-------------------------------------------------------------------------
+}
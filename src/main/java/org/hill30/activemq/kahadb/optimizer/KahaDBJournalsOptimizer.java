@@ -1,10 +1,12 @@
 package org.hill30.activemq.kahadb.optimizer;
 
 import org.hill30.activemq.kahadb.optimizer.destinations.PoolDestinationData;
+import org.hill30.activemq.kahadb.optimizer.locations.LocationStore;
+import org.hill30.activemq.kahadb.utils.KahaDBJournalScanner;
 
+import org.apache.activemq.store.kahadb.disk.journal.DataFile;
 import org.apache.activemq.store.kahadb.disk.journal.Journal;
 import org.apache.activemq.store.kahadb.disk.journal.Location;
-import org.apache.activemq.util.ByteSequence;
 
 import java.io.File;
 import java.io.IOException;
@@ -14,6 +16,16 @@ import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
 
 public final class KahaDBJournalsOptimizer {
     //region private
+    private static final int MOVE_PREFETCH = 1024;
+    private static final long PROBE_SIZE = 16 * 1024 * 1024;
+    //-------------------------------------------------------------------------
+    private int analysisThreads = 1;
+    private boolean checkpoints = false;
+    private int selectiveLiveRatio = 0;
+    private boolean snapshot = false;
+    private String deltaSnapshotDirPath = null;
+    private boolean plan = false;
+    //-------------------------------------------------------------------------
     private class Journals {
         //region private
         private final Journal sourceJournal;
@@ -43,11 +55,30 @@ public final class KahaDBJournalsOptimizer {
         Journals journals = createJournals(sourceDir, targetDir);
         Journal sourceJournal = journals.getSourceJournal();
 
+        //the journal stays started until the end of the analysis, so the snapshot has the analysed lengths
+        JournalsSnapshot journalsSnapshot = null;
+        if(snapshot) {
+            sourceJournal.start();
+            journalsSnapshot = JournalsSnapshot.create(sourceJournal);
+        }
+
         PoolDestinationData sourcePoolDestinationData = journalsAnalysis(sourceJournal);
 
         if(!sourcePoolDestinationData.isEmpty()) {
+            //the state of the optimized journals is analysed from the moved records while they are written
+            PoolDestinationData targetPoolDestinationData = checkpoints ? new PoolDestinationData() : null;
+
             showSeparator();
-            dataOptimization(sourceJournal, sourcePoolDestinationData, journals.getTargetJournal());
+            dataOptimization(sourceJournal, sourcePoolDestinationData, journals.getTargetJournal(), targetPoolDestinationData);
+
+            if(targetPoolDestinationData != null) {
+                showSeparator();
+                checkpointsWrite(journals.getTargetJournal(), targetPoolDestinationData);
+            }
+        }
+        if(journalsSnapshot != null) {
+            showSeparator();
+            snapshotWrite(journalsSnapshot, targetDir);
         }
         //---------------------------------------------------------------------
         for (File sourceSubDir : sourceDir.listFiles()) {
@@ -62,6 +93,75 @@ public final class KahaDBJournalsOptimizer {
         }
         //---------------------------------------------------------------------
     }
+    private void deltaOptimaze(File sourceDir, File targetDir, boolean useAnyKeyToContinue) throws IOException {
+        showSeparator(2);
+
+        deltaCatchUp(sourceDir, targetDir);
+        //---------------------------------------------------------------------
+        for (File sourceSubDir : sourceDir.listFiles()) {
+            if(sourceSubDir.isDirectory()) {
+                if(useAnyKeyToContinue) {
+                    showSeparator();
+                    pressAnyKeyToContinue();
+                }
+                String targetSubDirPath = targetDir.getPath() + File.separator + sourceSubDir.getName();
+                deltaOptimaze(sourceSubDir, new File(targetSubDirPath), useAnyKeyToContinue);
+            }
+        }
+        //---------------------------------------------------------------------
+    }
+    private void planOptimaze(File sourceDir, File probeDir, boolean useAnyKeyToContinue) throws IOException {
+        showSeparator(2);
+
+        //nothing is written, the target directory is not created
+        Journal sourceJournal = createJournal(sourceDir, getJournalSize(sourceDir));
+
+        //the disk is probed before the analysis, afterwards the reads would hit the page cache
+        long readThroughput = readProbe(sourceJournal);
+
+        PoolDestinationData sourcePoolDestinationData = journalsAnalysis(sourceJournal);
+
+        showSeparator();
+        capacityPlan(sourceJournal, sourcePoolDestinationData, probeDir, readThroughput);
+        //---------------------------------------------------------------------
+        for (File sourceSubDir : sourceDir.listFiles()) {
+            if(sourceSubDir.isDirectory()) {
+                if(useAnyKeyToContinue) {
+                    showSeparator();
+                    pressAnyKeyToContinue();
+                }
+                planOptimaze(sourceSubDir, probeDir, useAnyKeyToContinue);
+            }
+        }
+        //---------------------------------------------------------------------
+    }
+    private void selectiveOptimaze(File sourceDir, File targetDir, File backupDir, boolean useAnyKeyToContinue) throws IOException {
+        showSeparator(2);
+
+        Journals journals = createJournals(sourceDir, targetDir);
+        Journal sourceJournal = journals.getSourceJournal();
+
+        PoolDestinationData sourcePoolDestinationData = journalsAnalysis(sourceJournal);
+
+        showSeparator();
+        if(dataCompaction(sourceJournal, sourcePoolDestinationData, journals.getTargetJournal(), backupDir) && checkpoints) {
+            showSeparator();
+            checkpointsWrite(sourceJournal, sourcePoolDestinationData);
+        }
+        //---------------------------------------------------------------------
+        for (File sourceSubDir : sourceDir.listFiles()) {
+            if(sourceSubDir.isDirectory()) {
+                if(useAnyKeyToContinue) {
+                    showSeparator();
+                    pressAnyKeyToContinue();
+                }
+                String targetSubDirPath = targetDir.getPath() + File.separator + sourceSubDir.getName();
+                String backupSubDirPath = backupDir.getPath() + File.separator + sourceSubDir.getName();
+                selectiveOptimaze(sourceSubDir, new File(targetSubDirPath), new File(backupSubDirPath), useAnyKeyToContinue);
+            }
+        }
+        //---------------------------------------------------------------------
+    }
     //-------------------------------------------------------------------------
     private Journals createJournals(File sourceDir, File targetDir) {
         deleteDir(targetDir);
@@ -72,7 +172,7 @@ public final class KahaDBJournalsOptimizer {
     }
     //-------------------------------------------------------------------------
     private PoolDestinationData journalsAnalysis(Journal sourceJournal) {
-        final PoolDestinationData poolDestinationData = new PoolDestinationData();
+        PoolDestinationData poolDestinationData = new PoolDestinationData();
 
         System.out.println("START JOURNALS ANALYSIS");
         System.out.println();
@@ -84,11 +184,28 @@ public final class KahaDBJournalsOptimizer {
             long start = System.currentTimeMillis();
             sourceJournal.start();
 
-            Location location = sourceJournal.getNextLocation(null);
-            while (location != null) {
-                ByteSequence sequence = sourceJournal.read(location);
-                poolDestinationData.sequenceAnalysis(sequence, location);
-                location = sourceJournal.getNextLocation(location);
+            //journals which did not change since the last optimization are not analysed again
+            Location analysisStart = new Location(0, 0);
+            if(checkpoints) {
+                AnalysisCheckpoints.AnalysisCheckpoint checkpoint = AnalysisCheckpoints.restore(sourceJournal);
+                if(checkpoint != null) {
+                    poolDestinationData = checkpoint.getPoolDestinationData();
+                    analysisStart = checkpoint.getStart();
+                    System.out.printf("- Checkpoint: %s journals restored (Analysis resumed at journal id: %s, offset: %s).\r\n",
+                            checkpoint.getDataFiles(), analysisStart.getDataFileId(), analysisStart.getOffset());
+                }
+            }
+
+            ParallelJournalsAnalysis parallelAnalysis = null;
+            if(analysisThreads > 1) {
+                parallelAnalysis = new ParallelJournalsAnalysis(sourceJournal, analysisThreads);
+                parallelAnalysis.analysis(poolDestinationData, analysisStart);
+            }
+            else {
+                KahaDBJournalScanner scanner = new KahaDBJournalScanner(sourceJournal, analysisStart);
+                while (scanner.next()) {
+                    poolDestinationData.sequenceAnalysis(scanner.getSequence(), scanner.getLocation());
+                }
             }
 
             long end = System.currentTimeMillis();
@@ -97,14 +214,23 @@ public final class KahaDBJournalsOptimizer {
             showCount("- Queues: %s.", poolDestinationData.getQueueCount());
             showCount("- Committed transactions: %s.", poolDestinationData.getCommittedTransactionCount());
             showCount("- Prepared transactions: %s.", poolDestinationData.getPreparedTransactionCount());
+            if(snapshot) {
+                showCount("- Inflighted transactions: %s.", poolDestinationData.getInflightedTransactionCount());
+            }
             System.out.println();
+            if(parallelAnalysis != null) {
+                showParallelAnalysis(parallelAnalysis, end - start);
+            }
             System.out.printf("- It took time: %s seconds.\r\n", ((end - start) / 1000.0f));
         }
         catch (Throwable throwable) {
             showException(throwable);
         }
         finally {
-            poolDestinationData.gc();
+            //a snapshot keeps inflighted transactions, they can end in the delta
+            if(!snapshot) {
+                poolDestinationData.gc();
+            }
 
             try {
                 sourceJournal.close();
@@ -114,7 +240,7 @@ public final class KahaDBJournalsOptimizer {
         return poolDestinationData;
     }
     //-------------------------------------------------------------------------
-    private void dataOptimization(Journal sourceJournal, PoolDestinationData sourcePoolDestinationData, Journal targetJournal) {
+    private void dataOptimization(Journal sourceJournal, PoolDestinationData sourcePoolDestinationData, Journal targetJournal, PoolDestinationData targetPoolDestinationData) {
         System.out.println("START JOURNALS DATA OPTIMIZATION");
         System.out.println();
 
@@ -123,8 +249,9 @@ public final class KahaDBJournalsOptimizer {
 
             targetJournal.start();
 
-            subscriptionsMove(sourceJournal, sourcePoolDestinationData.getSubscriptionLocations(), targetJournal);
-            messagesMove(sourceJournal, sourcePoolDestinationData.getMessageLocations(), targetJournal);
+            PipelinedJournalsMove.RecordSink recordSink = targetPoolDestinationData == null ? null : targetPoolDestinationData::sequenceAnalysis;
+            locationsMove("Subscriptions", sourceJournal, sourcePoolDestinationData.getSubscriptionLocations(), targetJournal, recordSink);
+            locationsMove("Messages", sourceJournal, sourcePoolDestinationData.getMessageLocations(), targetJournal, recordSink);
 
             long end = System.currentTimeMillis();
             System.out.printf("- Journals remained: %s (Total size: %s).\n\r", targetJournal.getFiles().size(), bytesToString(targetJournal.getDiskSize()));
@@ -140,8 +267,8 @@ public final class KahaDBJournalsOptimizer {
             } catch (IOException e) {  }
         }
     }
-    private void subscriptionsMove(Journal sourceJournal, Location[] locations, Journal targetJournal) {
-        if(locations.length == 0) {
+    private void locationsMove(String name, Journal sourceJournal, LocationStore locations, Journal targetJournal, PipelinedJournalsMove.RecordSink recordSink) {
+        if(locations.isEmpty()) {
             return;
         }
 
@@ -150,13 +277,10 @@ public final class KahaDBJournalsOptimizer {
 
             sourceJournal.start();
 
-            for(Location location : locations) {
-                ByteSequence sequence = sourceJournal.read(location);
-                targetJournal.write(sequence, true);
-            }
+            new PipelinedJournalsMove(sourceJournal, targetJournal, MOVE_PREFETCH, recordSink).move(locations);
 
             long end = System.currentTimeMillis();
-            System.out.printf("- Subscriptions moved: %s (It took time: %s seconds).\r\n", locations.length, ((end - start) / 1000.0f));
+            System.out.printf("- %s moved: %s (It took time: %s seconds).\r\n", name, locations.size(), ((end - start) / 1000.0f));
         }
         catch (Throwable throwable) {
             showException(throwable);
@@ -167,31 +291,241 @@ public final class KahaDBJournalsOptimizer {
             } catch (IOException e) { }
         }
     }
-    private void messagesMove(Journal sourceJournal, Location[] locations, Journal targetJournal) {
-        if(locations.length == 0) {
-            return;
-        }
+    private boolean dataCompaction(Journal sourceJournal, PoolDestinationData sourcePoolDestinationData, Journal targetJournal, File backupDir) {
+        System.out.println("START JOURNALS SELECTIVE COMPACTION");
+        System.out.println();
 
         try {
             long start = System.currentTimeMillis();
 
+            SelectiveJournalsCompaction compaction;
             sourceJournal.start();
+            try {
+                compaction = new SelectiveJournalsCompaction(sourceJournal, sourcePoolDestinationData, selectiveLiveRatio);
+            }
+            finally {
+                sourceJournal.close();
+            }
 
-            for(Location location : locations) {
-                ByteSequence sequence = sourceJournal.read(location);
-                targetJournal.write(sequence, true);
+            System.out.printf("- Live ratio: less than %s%%.\r\n", compaction.getLiveRatio());
+            for (DataFile dataFile : compaction.getSelectedDataFiles()) {
+                System.out.printf("- Journal selected: '%s' (Live size: %s of %s).\r\n",
+                        dataFile.getFile().getName(),
+                        bytesToString(compaction.getLiveSize(dataFile.getDataFileId())),
+                        bytesToString(dataFile.getLength()));
+            }
+            System.out.printf("- Journals selected: %s of %s in %s runs (Total size: %s).\r\n",
+                    compaction.getSelectedDataFiles().size(),
+                    compaction.getDataFileCount(),
+                    compaction.getRunCount(),
+                    bytesToString(compaction.getSelectedSize()));
+
+            //the analysis state describes the journals as long as nothing is compacted
+            boolean analysed = true;
+            if(!compaction.getSelectedDataFiles().isEmpty()) {
+                //only the live records of a run of selected journals are moved, into new journals which take the ids of the run
+                int writtenJournals = 0;
+                for(int run = 0; run < compaction.getRunCount(); ++run) {
+                    LocationStore selectedLocations = compaction.getSelectedLocations(run);
+                    LocationStore targetLocations = new LocationStore(selectedLocations.size());
+                    if(!selectedLocations.isEmpty()) {
+                        targetJournal.start();
+                        try {
+                            locationsMove("Records", sourceJournal, selectedLocations, targetJournal, (sequence, location) -> targetLocations.add(location));
+                        }
+                        finally {
+                            targetJournal.close();
+                        }
+                    }
+                    writtenJournals += compaction.replaceDataFiles(run, targetJournal, targetLocations, backupDir);
+                }
+                System.out.printf("- Journals written: %s (Runs skipped, their records do not fit in place: %s).\r\n", writtenJournals, compaction.getSkippedRunCount());
+                System.out.printf("- Backup directory: '%s'.\r\n", backupDir.getPath());
+
+                //a checkpoint of the journals before the compaction describes removed journals, the state follows the moved records instead
+                AnalysisCheckpoints.getFile(sourceJournal).delete();
+                analysed = compaction.relocate(sourcePoolDestinationData);
+                if(!analysed) {
+                    System.out.printf("- Analysis state: not all of its records were moved, no checkpoint is written.\r\n");
+                }
             }
 
             long end = System.currentTimeMillis();
-            System.out.printf("- Messages moved: %s (It took time: %s seconds).\r\n", locations.length, ((end - start) / 1000.0f));
+            System.out.println();
+            System.out.printf("- It took time: %s seconds.\r\n", ((end - start) / 1000.0f));
+            return analysed;
         }
         catch (Throwable throwable) {
             showException(throwable);
         }
+        return false;
+    }
+    private long readProbe(Journal sourceJournal) throws IOException {
+        sourceJournal.start();
+        try {
+            return JournalsCapacityPlan.readProbe(sourceJournal, PROBE_SIZE);
+        }
         finally {
+            sourceJournal.close();
+        }
+    }
+    private void capacityPlan(Journal sourceJournal, PoolDestinationData sourcePoolDestinationData, File probeDir, long readThroughput) {
+        System.out.println("START JOURNALS CAPACITY PLAN");
+        System.out.println();
+
+        try {
+            long start = System.currentTimeMillis();
+
+            JournalsCapacityPlan capacityPlan;
+            sourceJournal.start();
             try {
+                capacityPlan = new JournalsCapacityPlan(sourceJournal, sourcePoolDestinationData);
+            }
+            finally {
                 sourceJournal.close();
-            } catch (IOException e) {  }
+            }
+            long writeThroughput = JournalsCapacityPlan.writeProbe(probeDir, PROBE_SIZE);
+
+            for (DataFile dataFile : capacityPlan.getDataFiles()) {
+                System.out.printf("- Journal: '%s' (Live size: %s, Reclaimable: %s).\r\n",
+                        dataFile.getFile().getName(),
+                        bytesToString(capacityPlan.getLiveSize(dataFile.getDataFileId())),
+                        bytesToString(capacityPlan.getReclaimableSize(dataFile.getDataFileId())));
+            }
+            System.out.println();
+            for (JournalsCapacityPlan.DestinationPlan destinationPlan : capacityPlan.getDestinationPlans()) {
+                System.out.printf("- Destination: %s (Live size: %s, Journals: %s, Reclaimable: %s).\r\n",
+                        destinationPlan.getDestinationId(),
+                        bytesToString(destinationPlan.getLiveSize()),
+                        destinationPlan.getDataFileCount(),
+                        bytesToString(destinationPlan.getReclaimableSize()));
+            }
+            System.out.println();
+
+            long dataFilesSize = capacityPlan.getDataFilesSize();
+            long moveSize = capacityPlan.getMoveSize();
+            System.out.printf("- Journals: %s (Total size: %s).\r\n", capacityPlan.getDataFileCount(), bytesToString(dataFilesSize));
+            System.out.printf("- To move: %s (Records: %s).\r\n", bytesToString(moveSize), capacityPlan.getMoveCount());
+            System.out.printf("- Journals remained: %s (Total size: %s).\r\n", capacityPlan.getTargetDataFileCount(), bytesToString(capacityPlan.getTargetSize()));
+            System.out.printf("- Reclaimable: %s.\r\n", bytesToString(Math.max(0, dataFilesSize - capacityPlan.getTargetSize())));
+            System.out.println();
+
+            //reads and writes of the move are pipelined, the slower side sets the time
+            System.out.printf("- Read throughput: %s/s (Source: '%s').\r\n", bytesToString(readThroughput), sourceJournal.getDirectory().getPath());
+            System.out.printf("- The read throughput is probed before the analysis, journals already in the page cache can inflate it.\r\n");
+            System.out.printf("- Write throughput: %s/s (Target: '%s').\r\n", bytesToString(writeThroughput), probeDir.getPath());
+            long throughput = Math.min(readThroughput, writeThroughput);
+            if(throughput > 0) {
+                System.out.printf("- Estimated move time: %s seconds.\r\n", (float)moveSize / throughput);
+            }
+
+            long end = System.currentTimeMillis();
+            System.out.println();
+            System.out.printf("- It took time: %s seconds.\r\n", ((end - start) / 1000.0f));
+        }
+        catch (Throwable throwable) {
+            showException(throwable);
+        }
+    }
+    private void deltaCatchUp(File sourceDir, File targetDir) {
+        System.out.println("START JOURNALS DELTA CATCH-UP");
+        System.out.println();
+        System.out.printf("- Directory: '%s'.\r\n", sourceDir.getPath());
+        System.out.println();
+
+        int journalSize = getJournalSize(sourceDir);
+        Journal sourceJournal = createJournal(sourceDir, journalSize);
+        Journal targetJournal = createJournal(targetDir, journalSize);
+        try {
+            long start = System.currentTimeMillis();
+
+            JournalsSnapshot journalsSnapshot = JournalsSnapshot.read(targetDir);
+            System.out.printf("- Snapshot: %s journals (Last journal id: %s, Length: %s).\r\n",
+                    journalsSnapshot.getDataFileCount(),
+                    journalsSnapshot.getLastDataFileId(),
+                    bytesToString(journalsSnapshot.getLastDataFileLength()));
+
+            LocationStore deltaLocations = new LocationStore();
+            int skippedRecords = 0;
+            sourceJournal.start();
+            try {
+                KahaDBJournalScanner scanner = new KahaDBJournalScanner(sourceJournal, journalsSnapshot.getDeltaStart(sourceJournal));
+                while (scanner.next()) {
+                    //the same records as the full optimization, ack file maps and producer audits refer to the source data files
+                    if(PoolDestinationData.isAnalysedCommand(scanner.getCommandType())) {
+                        deltaLocations.add(scanner.getLocation());
+                    }
+                    else {
+                        ++skippedRecords;
+                    }
+                }
+            }
+            finally {
+                sourceJournal.close();
+            }
+            System.out.printf("- Delta: %s (Records: %s, Skipped: %s).\r\n", bytesToString(deltaLocations.getTotalSize()), deltaLocations.size(), skippedRecords);
+
+            //the delta is appended as it is, the optimized snapshot has everything the delta can refer to
+            targetJournal.start();
+            try {
+                locationsMove("Records", sourceJournal, deltaLocations, targetJournal, null);
+                System.out.printf("- Journals remained: %s (Total size: %s).\n\r", targetJournal.getFiles().size(), bytesToString(targetJournal.getDiskSize()));
+            }
+            finally {
+                targetJournal.close();
+            }
+            JournalsSnapshot.getFile(targetDir).delete();
+
+            long end = System.currentTimeMillis();
+            System.out.println();
+            System.out.printf("- It took time: %s seconds.\r\n", ((end - start) / 1000.0f));
+        }
+        catch (Throwable throwable) {
+            showException(throwable);
+        }
+    }
+    //-------------------------------------------------------------------------
+    private void snapshotWrite(JournalsSnapshot journalsSnapshot, File targetDir) {
+        System.out.println("START JOURNALS SNAPSHOT");
+        System.out.println();
+
+        try {
+            journalsSnapshot.write(targetDir);
+
+            System.out.printf("- Snapshot: %s journals (Last journal id: %s, Length: %s).\r\n",
+                    journalsSnapshot.getDataFileCount(),
+                    journalsSnapshot.getLastDataFileId(),
+                    bytesToString(journalsSnapshot.getLastDataFileLength()));
+            System.out.printf("- File: '%s'.\r\n", JournalsSnapshot.getFile(targetDir).getPath());
+        }
+        catch (Throwable throwable) {
+            showException(throwable);
+        }
+    }
+    private void checkpointsWrite(Journal journal, PoolDestinationData poolDestinationData) {
+        System.out.println("START JOURNALS CHECKPOINTS");
+        System.out.println();
+
+        //checkpoints describe the optimized journals, they are the ones the next optimization starts from
+        try {
+            long start = System.currentTimeMillis();
+
+            journal.start();
+            int dataFiles;
+            try {
+                dataFiles = AnalysisCheckpoints.write(journal, poolDestinationData);
+            }
+            finally {
+                journal.close();
+            }
+
+            long end = System.currentTimeMillis();
+            System.out.printf("- Checkpoint: %s journals (File: '%s').\r\n", dataFiles, AnalysisCheckpoints.getFile(journal).getName());
+            System.out.println();
+            System.out.printf("- It took time: %s seconds.\r\n", ((end - start) / 1000.0f));
+        }
+        catch (Throwable throwable) {
+            showException(throwable);
         }
     }
     //-------------------------------------------------------------------------
@@ -219,6 +553,16 @@ public final class KahaDBJournalsOptimizer {
         }
     }
     //-------------------------------------------------------------------------
+    private void showParallelAnalysis(ParallelJournalsAnalysis parallelAnalysis, long time) {
+        //decode time is summed over all workers, decode plus fold is what a single thread would have spent
+        long decodeTime = parallelAnalysis.getDecodeTime();
+        long foldTime = parallelAnalysis.getFoldTime();
+        System.out.printf("- Analysis threads: %s (Decode time: %s seconds, Fold time: %s seconds, Speedup: x%.2f).\r\n",
+                parallelAnalysis.getThreads(),
+                decodeTime / 1000.0f,
+                foldTime / 1000.0f,
+                time == 0 ? 1.0f : (float)(decodeTime + foldTime) / time);
+    }
     private void showCount(String format, int count) {
         if(count != 0) {
             System.out.printf(format + "\r\n", count);
@@ -226,6 +570,51 @@ public final class KahaDBJournalsOptimizer {
     }
     //endregion
     //-------------------------------------------------------------------------
+    public int getAnalysisThreads() {
+        return analysisThreads;
+    }
+    public void setAnalysisThreads(int analysisThreads) {
+        if(analysisThreads < 1) {
+            throw new IndexOutOfBoundsException("analysisThreads");
+        }
+
+        this.analysisThreads = analysisThreads;
+    }
+    public boolean isCheckpoints() {
+        return checkpoints;
+    }
+    public void setCheckpoints(boolean checkpoints) {
+        this.checkpoints = checkpoints;
+    }
+    public int getSelectiveLiveRatio() {
+        return selectiveLiveRatio;
+    }
+    public void setSelectiveLiveRatio(int selectiveLiveRatio) {
+        if(selectiveLiveRatio < 0 || selectiveLiveRatio > 100) {
+            throw new IndexOutOfBoundsException("selectiveLiveRatio");
+        }
+
+        this.selectiveLiveRatio = selectiveLiveRatio;
+    }
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+    public void setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+    }
+    public String getDeltaSnapshotDirPath() {
+        return deltaSnapshotDirPath;
+    }
+    public void setDeltaSnapshotDirPath(String deltaSnapshotDirPath) {
+        this.deltaSnapshotDirPath = deltaSnapshotDirPath;
+    }
+    public boolean isPlan() {
+        return plan;
+    }
+    public void setPlan(boolean plan) {
+        this.plan = plan;
+    }
+    //-------------------------------------------------------------------------
     public void optimaze(String sourceDirPath, boolean useAnyKeyToContinue) throws IOException {
         if(isNullOrEmpty(sourceDirPath)) {
             throw new NullPointerException("sourceDirPath");
@@ -237,7 +626,47 @@ public final class KahaDBJournalsOptimizer {
         }
 
         try {
+            if(plan) {
+                //the target directory would be created next to the journals directory, its disk is probed there
+                planOptimaze(sourceDir, sourceDir.getCanonicalFile().getParentFile(), useAnyKeyToContinue);
+
+                showSeparator(2);
+                return;
+            }
+            if(!isNullOrEmpty(deltaSnapshotDirPath)) {
+                //the broker is stopped, only the journals appended since the snapshot are processed
+                File targetDir = new File(deltaSnapshotDirPath + "_temp");
+                if(!targetDir.isDirectory()) {
+                    throw new IllegalArgumentException("deltaSnapshotDirPath");
+                }
+                deltaOptimaze(sourceDir, targetDir, useAnyKeyToContinue);
+
+                showSeparator(2);
+                renameDirs(sourceDir, targetDir);
+                showSeparator(2);
+                return;
+            }
+
             File targetDir = new File(sourceDirPath + "_temp");
+            if(snapshot) {
+                //the broker keeps running, the optimized snapshot waits for the delta catch-up
+                optimaze(sourceDir, targetDir, useAnyKeyToContinue);
+
+                showSeparator(2);
+                System.out.printf("- Snapshot optimized: '%s'.\r\n", targetDir.getPath());
+                showSeparator(2);
+                return;
+            }
+            if(selectiveLiveRatio > 0) {
+                //journals are compacted in place, the temp directory only holds the moved records
+                File backupDir = new File(sourceDir.getCanonicalPath() + "_" + System.currentTimeMillis());
+                selectiveOptimaze(sourceDir, targetDir, backupDir, useAnyKeyToContinue);
+
+                deleteDir(targetDir);
+                showSeparator(2);
+                return;
+            }
+
             optimaze(sourceDir, targetDir, useAnyKeyToContinue);
 
             showSeparator(2);
@@ -0,0 +1,122 @@
+package org.hill30.activemq.kahadb.optimizer;
+
+import org.hill30.activemq.kahadb.optimizer.destinations.PoolDestinationData;
+import org.hill30.activemq.kahadb.utils.KahaDBJournalScanner;
+
+import org.apache.activemq.store.kahadb.JournalCommand;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+
+final class ParallelJournalsAnalysis {
+    //region private
+    private final Journal journal;
+    private final int threads;
+    private final AtomicLong decodeTime = new AtomicLong();
+    private long foldTime;
+    //-------------------------------------------------------------------------
+    private final class DataFileCommands {
+        //region private
+        private final List<JournalCommand<?>> commands = new ArrayList<>();
+        private final List<Location> locations = new ArrayList<>();
+        //endregion
+        void add(JournalCommand<?> command, Location location) {
+            commands.add(command);
+            locations.add(location);
+        }
+        //---------------------------------------------------------------------
+        void fold(PoolDestinationData poolDestinationData) {
+            for(int i = 0; i < commands.size(); ++i) {
+                poolDestinationData.commandAnalysis(commands.get(i), locations.get(i));
+            }
+        }
+        //---------------------------------------------------------------------
+    }
+    //-------------------------------------------------------------------------
+    private DataFileCommands decodeDataFile(int dataFileId, int startOffset) throws IOException {
+        long start = System.nanoTime();
+        DataFileCommands dataFileCommands = new DataFileCommands();
+
+        KahaDBJournalScanner scanner = new KahaDBJournalScanner(journal.getFileMap().get(dataFileId), startOffset);
+        while (scanner.next()) {
+            dataFileCommands.add(readCommandHeader(scanner.getSequence()), scanner.getLocation());
+        }
+
+        decodeTime.addAndGet(System.nanoTime() - start);
+        return dataFileCommands;
+    }
+    //endregion
+    ParallelJournalsAnalysis(Journal journal, int threads) {
+        if(journal == null) {
+            throw new NullPointerException("journal");
+        }
+        if(threads < 1) {
+            throw new IndexOutOfBoundsException("threads");
+        }
+
+        this.journal = journal;
+        this.threads = threads;
+    }
+
+    //-------------------------------------------------------------------------
+    int getThreads() {
+        return threads;
+    }
+    long getDecodeTime() {
+        return TimeUnit.NANOSECONDS.toMillis(decodeTime.get());
+    }
+    long getFoldTime() {
+        return TimeUnit.NANOSECONDS.toMillis(foldTime);
+    }
+    //-------------------------------------------------------------------------
+    void analysis(PoolDestinationData poolDestinationData, Location analysisStart) throws IOException, InterruptedException {
+        if(poolDestinationData == null) {
+            throw new NullPointerException("poolDestinationData");
+        }
+        if(analysisStart == null) {
+            throw new NullPointerException("analysisStart");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            //files are decoded ahead of the fold, at most two per worker are kept in memory
+            //the analysis can resume in the middle of its first data file
+            Iterator<Integer> dataFileIds = new TreeSet<>(journal.getFileMap().keySet()).tailSet(analysisStart.getDataFileId()).iterator();
+            ArrayDeque<Future<DataFileCommands>> pendingDataFiles = new ArrayDeque<>();
+
+            while (dataFileIds.hasNext() || !pendingDataFiles.isEmpty()) {
+                while (dataFileIds.hasNext() && pendingDataFiles.size() < threads * 2) {
+                    final int dataFileId = dataFileIds.next();
+                    final int startOffset = dataFileId == analysisStart.getDataFileId() ? analysisStart.getOffset() : 0;
+                    pendingDataFiles.add(executor.submit(() -> decodeDataFile(dataFileId, startOffset)));
+                }
+
+                try {
+                    DataFileCommands dataFileCommands = pendingDataFiles.poll().get();
+
+                    long start = System.nanoTime();
+                    dataFileCommands.fold(poolDestinationData);
+                    foldTime += System.nanoTime() - start;
+                }
+                catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException)cause : new IOException(cause);
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,149 @@
+package org.hill30.activemq.kahadb.optimizer;
+
+import org.hill30.activemq.kahadb.optimizer.locations.LocationStore;
+
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.apache.activemq.util.ByteSequence;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.concurrent.*;
+
+final class PipelinedJournalsMove {
+    //region private
+    private static final ByteSequence END_OF_LOCATIONS = new ByteSequence(new byte[0]);
+    private static final ByteSequence FAILED_LOCATIONS = new ByteSequence(new byte[0]);
+    //the reader must never keep the JVM alive after the writer has gone
+    private static final ThreadFactory READER_THREAD_FACTORY = runnable -> {
+        Thread thread = new Thread(runnable, "journals-move-reader");
+        thread.setDaemon(true);
+        return thread;
+    };
+    //-------------------------------------------------------------------------
+    private interface LocationsReader {
+        void read(BlockingQueue<ByteSequence> sequences) throws IOException, InterruptedException;
+    }
+    //the moved records in the target order, with their target locations
+    interface RecordSink {
+        void add(ByteSequence sequence, Location location) throws IOException;
+    }
+    //-------------------------------------------------------------------------
+    private final Journal sourceJournal;
+    private final Journal targetJournal;
+    private final int prefetch;
+    private final RecordSink recordSink;
+    //-------------------------------------------------------------------------
+    private void readLocations(LocationStore locations, BlockingQueue<ByteSequence> sequences) throws IOException, InterruptedException {
+        Location location = new Location();
+        for(int i = 0; i < locations.size(); ++i) {
+            sequences.put(sourceJournal.read(locations.getLocation(i, location)));
+        }
+    }
+    private static Void readLocations(LocationsReader locationsReader, BlockingQueue<ByteSequence> sequences) throws Exception {
+        try {
+            locationsReader.read(sequences);
+        }
+        catch (InterruptedException e) {
+            //the writer failed and stopped taking, nobody waits for the end
+            throw e;
+        }
+        catch (Throwable throwable) {
+            //the writer is still taking, unless it failed too and interrupts this put
+            sequences.put(FAILED_LOCATIONS);
+            throw throwable;
+        }
+        sequences.put(END_OF_LOCATIONS);
+        return null;
+    }
+    private void move(LocationsReader locationsReader) throws IOException, InterruptedException {
+        final BlockingQueue<ByteSequence> sequences = new ArrayBlockingQueue<>(prefetch);
+        ExecutorService executor = Executors.newSingleThreadExecutor(READER_THREAD_FACTORY);
+        try {
+            Future<Void> reader = executor.submit(() -> readLocations(locationsReader, sequences));
+
+            //writes are asynchronous, only the last record waits for the disk
+            LinkedHashSet<Integer> dataFileIds = new LinkedHashSet<>();
+            ByteSequence pendingSequence = takeSequence(sequences, reader);
+            while (pendingSequence != END_OF_LOCATIONS) {
+                ByteSequence sequence = takeSequence(sequences, reader);
+                boolean last = sequence == END_OF_LOCATIONS;
+
+                Location location = targetJournal.write(pendingSequence, last);
+                dataFileIds.add(location.getDataFileId());
+                if(recordSink != null) {
+                    recordSink.add(pendingSequence, location);
+                }
+                if(last) {
+                    syncDataFiles(dataFileIds, location.getDataFileId());
+                }
+
+                pendingSequence = sequence;
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+    private static ByteSequence takeSequence(BlockingQueue<ByteSequence> sequences, Future<Void> reader) throws IOException, InterruptedException {
+        ByteSequence sequence = sequences.take();
+        if(sequence != FAILED_LOCATIONS) {
+            return sequence;
+        }
+
+        //the target journals are incomplete, they are neither written on nor synced
+        try {
+            reader.get();
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Journals move failed, the target journals are incomplete.", e.getCause());
+        }
+        throw new IOException("Journals move failed, the target journals are incomplete.");
+    }
+    private void syncDataFiles(LinkedHashSet<Integer> dataFileIds, int lastDataFileId) throws IOException {
+        //the last data file was synced by the last write, all batches before it are already written
+        for (int dataFileId : dataFileIds) {
+            if(dataFileId == lastDataFileId) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(targetJournal.getFile(dataFileId).toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+    }
+    //endregion
+    PipelinedJournalsMove(Journal sourceJournal, Journal targetJournal, int prefetch) {
+        this(sourceJournal, targetJournal, prefetch, null);
+    }
+    PipelinedJournalsMove(Journal sourceJournal, Journal targetJournal, int prefetch, RecordSink recordSink) {
+        if(sourceJournal == null) {
+            throw new NullPointerException("sourceJournal");
+        }
+        if(targetJournal == null) {
+            throw new NullPointerException("targetJournal");
+        }
+        if(prefetch < 1) {
+            throw new IndexOutOfBoundsException("prefetch");
+        }
+
+        this.sourceJournal = sourceJournal;
+        this.targetJournal = targetJournal;
+        this.prefetch = prefetch;
+        this.recordSink = recordSink;
+    }
+
+    //-------------------------------------------------------------------------
+    void move(final LocationStore locations) throws IOException, InterruptedException {
+        if(locations == null) {
+            throw new NullPointerException("locations");
+        }
+        if(locations.isEmpty()) {
+            return;
+        }
+
+        move(sequences -> readLocations(locations, sequences));
+    }
+    //-------------------------------------------------------------------------
+}
@@ -1,16 +1,30 @@
 package org.hill30.activemq.kahadb.optimizer;
 
+import static org.hill30.activemq.Utils.*;
+
 public final class Run {
     public static void main(String[] args) throws Exception {
         if(args.length <= 0) {
-            System.out.println("usage KahaDBJournalsOptimizer <journals directory>");
+            System.out.println("usage KahaDBJournalsOptimizer <journals directory> [--threads=<analysis threads>] [--checkpoints] [--selective=<live %>] [--snapshot] [--delta=<snapshot directory>] [--plan]");
             System.exit(1);
         }
         //---------------------------------------------------------------------
         String sourceDirPath = args[0];
         boolean useAnyKeyToContinue = false;
+        int analysisThreads = getArgumentValue(args, "threads", 1);
+        boolean checkpoints = hasArgument(args, "checkpoints");
+        int selectiveLiveRatio = getArgumentValue(args, "selective", 0);
+        boolean snapshot = hasArgument(args, "snapshot");
+        String deltaSnapshotDirPath = getArgumentValue(args, "delta", null);
+        boolean plan = hasArgument(args, "plan");
         //---------------------------------------------------------------------
         KahaDBJournalsOptimizer kahaDBJournalsOptimizer = new KahaDBJournalsOptimizer();
+        kahaDBJournalsOptimizer.setAnalysisThreads(analysisThreads);
+        kahaDBJournalsOptimizer.setCheckpoints(checkpoints);
+        kahaDBJournalsOptimizer.setSelectiveLiveRatio(selectiveLiveRatio);
+        kahaDBJournalsOptimizer.setSnapshot(snapshot);
+        kahaDBJournalsOptimizer.setDeltaSnapshotDirPath(deltaSnapshotDirPath);
+        kahaDBJournalsOptimizer.setPlan(plan);
         kahaDBJournalsOptimizer.optimaze(sourceDirPath, useAnyKeyToContinue);
         //---------------------------------------------------------------------
     }
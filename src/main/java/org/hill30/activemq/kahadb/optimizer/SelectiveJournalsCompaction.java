@@ -0,0 +1,241 @@
+package org.hill30.activemq.kahadb.optimizer;
+
+import org.hill30.activemq.kahadb.optimizer.destinations.PoolDestinationData;
+import org.hill30.activemq.kahadb.optimizer.locations.LocationStore;
+
+import org.apache.activemq.store.kahadb.disk.journal.DataFile;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+final class SelectiveJournalsCompaction {
+    //region private
+    private static final String INDEX_FILE_PREFIX = "db.";
+    //-------------------------------------------------------------------------
+    private final Journal sourceJournal;
+    private final int liveRatio;
+    private final TreeMap<Integer, DataFile> dataFiles;
+    //-------------------------------------------------------------------------
+    private final HashMap<Integer, Long> liveSizes = new HashMap<>();
+    private final TreeMap<Integer, Integer> selectedDataFileRuns = new TreeMap<>();
+    private final List<List<Integer>> selectedRuns = new ArrayList<>();
+    private final List<LocationStore> selectedRunLocations = new ArrayList<>();
+    private final LocationStore selectedLocations = new LocationStore();
+    private final LocationStore movedLocations = new LocationStore();
+    private final HashSet<Integer> replacedDataFileIds = new HashSet<>();
+    private int skippedRunCount;
+    //-------------------------------------------------------------------------
+    private void select() {
+        //the broker is stopped during the compaction, so the last data file can be selected too;
+        //adjacent selected data files are a run, the live records of a run are written back in place of it
+        List<Integer> run = null;
+        for (DataFile dataFile : dataFiles.values()) {
+            if(getLiveSize(dataFile.getDataFileId()) * 100 >= (long)dataFile.getLength() * liveRatio) {
+                run = null;
+                continue;
+            }
+
+            if(run == null) {
+                run = new ArrayList<>();
+                selectedRuns.add(run);
+                selectedRunLocations.add(new LocationStore());
+            }
+            run.add(dataFile.getDataFileId());
+            selectedDataFileRuns.put(dataFile.getDataFileId(), selectedRuns.size() - 1);
+        }
+    }
+    private static void moveFile(File source, File target) throws IOException {
+        Files.move(source.toPath(), target.toPath());
+    }
+    //endregion
+    SelectiveJournalsCompaction(Journal sourceJournal, PoolDestinationData poolDestinationData, int liveRatio) {
+        if(sourceJournal == null) {
+            throw new NullPointerException("sourceJournal");
+        }
+        if(poolDestinationData == null) {
+            throw new NullPointerException("poolDestinationData");
+        }
+        if(liveRatio < 0 || liveRatio > 100) {
+            throw new IndexOutOfBoundsException("liveRatio");
+        }
+
+        this.sourceJournal = sourceJournal;
+        this.liveRatio = liveRatio;
+        this.dataFiles = new TreeMap<>(sourceJournal.getFileMap());
+
+        LocationStore locations = new LocationStore();
+        poolDestinationData.writeSubscriptionLocations(locations);
+        poolDestinationData.writeMessageLocations(locations);
+        for(int i = 0; i < locations.size(); ++i) {
+            liveSizes.merge(locations.getDataFileId(i), (long)locations.getSize(i), Long::sum);
+        }
+
+        if(!dataFiles.isEmpty()) {
+            select();
+        }
+
+        for(int i = 0; i < locations.size(); ++i) {
+            Integer run = selectedDataFileRuns.get(locations.getDataFileId(i));
+            if(run != null) {
+                selectedRunLocations.get(run).add(locations.getDataFileId(i), locations.getOffset(i), locations.getSize(i));
+            }
+        }
+        //the runs are in the journal order, so are their records one after another
+        Location location = new Location();
+        for (LocationStore runLocations : selectedRunLocations) {
+            runLocations.sort();
+            for(int i = 0; i < runLocations.size(); ++i) {
+                selectedLocations.add(runLocations.getLocation(i, location));
+            }
+        }
+    }
+
+    //-------------------------------------------------------------------------
+    int getLiveRatio() {
+        return liveRatio;
+    }
+    int getDataFileCount() {
+        return dataFiles.size();
+    }
+    long getLiveSize(int dataFileId) {
+        Long liveSize = liveSizes.get(dataFileId);
+        return liveSize == null ? 0 : liveSize;
+    }
+    //-------------------------------------------------------------------------
+    List<DataFile> getSelectedDataFiles() {
+        List<DataFile> selectedDataFiles = new ArrayList<>();
+        for (int dataFileId : selectedDataFileRuns.keySet()) {
+            selectedDataFiles.add(dataFiles.get(dataFileId));
+        }
+        //the lowest utilisation first
+        selectedDataFiles.sort(Comparator.comparingDouble(dataFile -> getLiveSize(dataFile.getDataFileId()) / (double)Math.max(1, dataFile.getLength())));
+        return selectedDataFiles;
+    }
+    int getRunCount() {
+        return selectedRuns.size();
+    }
+    int getSkippedRunCount() {
+        return skippedRunCount;
+    }
+    LocationStore getSelectedLocations(int run) {
+        return selectedRunLocations.get(run);
+    }
+    long getSelectedSize() {
+        long selectedSize = 0;
+        for (int dataFileId : selectedDataFileRuns.keySet()) {
+            selectedSize += dataFiles.get(dataFileId).getLength();
+        }
+        return selectedSize;
+    }
+    //-------------------------------------------------------------------------
+    int replaceDataFiles(int run, Journal targetJournal, LocationStore targetLocations, File backupDir) throws IOException {
+        if(run < 0 || run >= selectedRuns.size()) {
+            throw new IndexOutOfBoundsException("run");
+        }
+        if(targetJournal == null) {
+            throw new NullPointerException("targetJournal");
+        }
+        if(targetLocations == null) {
+            throw new NullPointerException("targetLocations");
+        }
+        if(targetLocations.size() != selectedRunLocations.get(run).size()) {
+            throw new IndexOutOfBoundsException("targetLocations");
+        }
+        if(backupDir == null) {
+            throw new NullPointerException("backupDir");
+        }
+
+        //the target journal is closed, its data files are found by name from the first one; it is empty again for the next run
+        List<Integer> dataFileIds = selectedRuns.get(run);
+        List<Integer> targetDataFileIds = new ArrayList<>();
+        for(int dataFileId = 1; targetJournal.getFile(dataFileId).isFile(); ++dataFileId) {
+            if(targetJournal.getFile(dataFileId).length() != 0) {
+                targetDataFileIds.add(dataFileId);
+            }
+            else {
+                Files.delete(targetJournal.getFile(dataFileId).toPath());
+            }
+        }
+
+        //the moved records need more data files than the run has, in its place they would not keep their order
+        Location location = new Location();
+        if(targetDataFileIds.size() > dataFileIds.size()) {
+            for (int targetDataFileId : targetDataFileIds) {
+                Files.delete(targetJournal.getFile(targetDataFileId).toPath());
+            }
+            LocationStore runLocations = selectedRunLocations.get(run);
+            for(int i = 0; i < runLocations.size(); ++i) {
+                movedLocations.add(runLocations.getLocation(i, location));
+            }
+            ++skippedRunCount;
+            return 0;
+        }
+
+        //the data files of the run are moved away before the moved records take their ids, nothing is replayed twice
+        backupDir.mkdirs();
+        for (int dataFileId : dataFileIds) {
+            File dataFile = sourceJournal.getFile(dataFileId);
+            moveFile(dataFile, new File(backupDir, dataFile.getName()));
+            replacedDataFileIds.add(dataFileId);
+        }
+
+        HashMap<Integer, Integer> runDataFileIds = new HashMap<>();
+        for(int i = 0; i < targetDataFileIds.size(); ++i) {
+            runDataFileIds.put(targetDataFileIds.get(i), dataFileIds.get(i));
+            moveFile(targetJournal.getFile(targetDataFileIds.get(i)), sourceJournal.getFile(dataFileIds.get(i)));
+        }
+        for(int i = 0; i < targetLocations.size(); ++i) {
+            movedLocations.add(runDataFileIds.get(targetLocations.getDataFileId(i)), targetLocations.getOffset(i), targetLocations.getSize(i));
+        }
+
+        //the index points to the removed records, the broker rebuilds it from the journal
+        File[] indexFiles = sourceJournal.getDirectory().listFiles((dir, name) -> name.startsWith(INDEX_FILE_PREFIX));
+        if(indexFiles != null) {
+            for (File indexFile : indexFiles) {
+                moveFile(indexFile, new File(backupDir, indexFile.getName()));
+            }
+        }
+
+        return targetDataFileIds.size();
+    }
+    boolean relocate(PoolDestinationData poolDestinationData) {
+        if(poolDestinationData == null) {
+            throw new NullPointerException("poolDestinationData");
+        }
+
+        //only the live records of the replaced data files were moved, the committed operations which keep other ones go with them
+        poolDestinationData.removeCommittedOperations(location -> replacedDataFileIds.contains(location.getDataFileId())
+                && selectedLocations.indexOf(location.getDataFileId(), location.getOffset()) < 0);
+
+        //the moved records were written in the journal order, the i-th selected one is the i-th moved location;
+        //every location is looked up by its source position before it is updated, so a location written twice is moved once
+        List<Location> locations = new ArrayList<>();
+        poolDestinationData.writeStateLocations(locations::add);
+
+        List<Location> relocatedLocations = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        boolean relocated = true;
+        for (Location location : locations) {
+            if(!replacedDataFileIds.contains(location.getDataFileId())) {
+                continue;
+            }
+
+            int index = selectedLocations.indexOf(location.getDataFileId(), location.getOffset());
+            if(index < 0 || index >= movedLocations.size()) {
+                relocated = false;
+                continue;
+            }
+            relocatedLocations.add(location);
+            indexes.add(index);
+        }
+        for(int i = 0; i < relocatedLocations.size(); ++i) {
+            movedLocations.getLocation(indexes.get(i), relocatedLocations.get(i));
+        }
+        return relocated;
+    }
+    //-------------------------------------------------------------------------
+}
@@ -2,30 +2,99 @@ package org.hill30.activemq.kahadb.optimizer.destinations;
 
 import org.hill30.activemq.kahadb.optimizer.locations.MessageLocation;
 import org.hill30.activemq.kahadb.optimizer.locations.SubscriptionLocation;
+import org.hill30.activemq.kahadb.utils.KahaDBMessageKey;
 
 import org.apache.activemq.store.kahadb.disk.journal.Location;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
 
-import static org.hill30.activemq.Utils.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
 public final class DestinationData {
     //region private
-    private final String destinationId;
-    private final LinkedList<SubscriptionLocation> subscriptionLocations = new LinkedList<>();
-    private final LinkedList<MessageLocation> messageLocations = new LinkedList<>();
+    private static final int TAIL_COMPACTION_SLACK = 1024;
+    //-------------------------------------------------------------------------
+    private final int destinationId;
+    private final LinkedHashMap<Integer, SubscriptionLocation> subscriptionLocations = new LinkedHashMap<>();
+    private final LinkedHashMap<KahaDBMessageKey, MessageLocation> messageLocations = new LinkedHashMap<>();
+    //-------------------------------------------------------------------------
+    private MessageLocation lastMessageLocation;
+    //the messages in insertion order, removed ones are dropped from the tail when it is looked up and by compaction
+    private final ArrayDeque<MessageLocation> tailMessageLocations = new ArrayDeque<>();
+    //-------------------------------------------------------------------------
+    private final BitSet subscriptionOrdinals = new BitSet();
+    //pending acks of a new message, shared by messages until one of them changes, rebuilt when subscriptions change
+    private long[] pendingAckSubscriptions;
+    //-------------------------------------------------------------------------
+    private long[] getPendingAckSubscriptions() {
+        if(pendingAckSubscriptions == null) {
+            pendingAckSubscriptions = subscriptionOrdinals.toLongArray();
+        }
+        return pendingAckSubscriptions;
+    }
+    private MessageLocation getLastMessageLocation() {
+        //the last message was removed, the new last one is the newest message still kept, each message is dropped once
+        while (lastMessageLocation == null && !tailMessageLocations.isEmpty()) {
+            MessageLocation messageLocation = tailMessageLocations.peekLast();
+            if(isMessageLocation(messageLocation)) {
+                lastMessageLocation = messageLocation;
+            }
+            else {
+                tailMessageLocations.pollLast();
+            }
+        }
+        return lastMessageLocation;
+    }
+    private boolean isMessageLocation(MessageLocation messageLocation) {
+        return messageLocations.get(new KahaDBMessageKey(messageLocation.getProducerId(), messageLocation.getSequenceId())) == messageLocation;
+    }
+    private void addTailMessageLocation(MessageLocation messageLocation) {
+        //the messages acked from the head stay in the deque, it is rebuilt when they are the most of it
+        if(tailMessageLocations.size() > 2 * messageLocations.size() + TAIL_COMPACTION_SLACK) {
+            tailMessageLocations.clear();
+            tailMessageLocations.addAll(messageLocations.values());
+        }
+        else {
+            tailMessageLocations.addLast(messageLocation);
+        }
+    }
+    private boolean addMessageLocationEntry(KahaDBMessageKey messageKey, MessageLocation messageLocation) {
+        if(destinationId != messageLocation.getDestinationId()){
+            return false;
+        }
+
+        if(messageLocations.putIfAbsent(messageKey, messageLocation) != null) {
+            return false;
+        }
+
+        lastMessageLocation = messageLocation;
+        addTailMessageLocation(messageLocation);
+        return true;
+    }
+    private MessageLocation removeMessageLocationEntry(KahaDBMessageKey messageKey) {
+        MessageLocation removedMessageLocation = messageLocations.remove(messageKey);
+        if(removedMessageLocation != null && removedMessageLocation == lastMessageLocation) {
+            lastMessageLocation = null;
+        }
+        return removedMessageLocation;
+    }
     //endregion
-    public DestinationData(String destinationId) {
-        if(isNullOrEmpty(destinationId)) {
-            throw new NullPointerException("destinationId");
+    public DestinationData(int destinationId) {
+        if(destinationId < 0) {
+            throw new IndexOutOfBoundsException("destinationId");
         }
 
         this.destinationId = destinationId;
     }
 
     //-------------------------------------------------------------------------
-    String getDestinationId() {
+    int getDestinationId() {
         return destinationId;
     }
     //-------------------------------------------------------------------------
@@ -36,170 +105,172 @@ public final class DestinationData {
     //-------------------------------------------------------------------------
     SubscriptionLocation[] getSubscriptionLocations() {
         SubscriptionLocation[] arraySubscriptionLocations = new SubscriptionLocation[subscriptionLocations.size()];
-        return subscriptionLocations.toArray(arraySubscriptionLocations);
+        return subscriptionLocations.values().toArray(arraySubscriptionLocations);
     }
     MessageLocation[] getMessageLocations() {
         MessageLocation[] arrayMessageLocations = new MessageLocation[messageLocations.size()];
-        return messageLocations.toArray(arrayMessageLocations);
+        return messageLocations.values().toArray(arrayMessageLocations);
     }
     //-------------------------------------------------------------------------
-    public MessageLocation getMessageLocation(String messageId) {
-        if(isNullOrEmpty(messageId)) {
+    public MessageLocation getMessageLocation(KahaDBMessageKey messageKey) {
+        if(messageKey == null) {
             return null;
         }
 
-        MessageLocation messageLocation = null;
-
-        final Iterator<MessageLocation> iteratorMessageLocations = messageLocations.iterator();
-        while (iteratorMessageLocations.hasNext()) {
-            MessageLocation nextMessageLocation = iteratorMessageLocations.next();
-            if (nextMessageLocation.getMessageId().equals(messageId)) {
-                messageLocation = nextMessageLocation;
-                break;
-            }
-        }
-
-        return messageLocation;
+        return messageLocations.get(messageKey);
     }
     //-------------------------------------------------------------------------
-    boolean addSubscriptionLocation(String subscriptionKey, Location location, boolean retroactive) {
-        return addSubscriptionLocation(new SubscriptionLocation(subscriptionKey, destinationId, location), retroactive);
-    }
-    boolean addSubscriptionLocation(SubscriptionLocation subscriptionLocation, boolean retroactive) {
-        if(subscriptionLocation == null || !destinationId.equals(subscriptionLocation.getDestinationId())) {
+    boolean addSubscriptionLocation(int subscriptionKey, Location location, boolean retroactive) {
+        if(subscriptionKey < 0 || location == null) {
             return false;
         }
 
-        boolean removed = false;
-        final Iterator<SubscriptionLocation> iteratorSubscriptionLocations = subscriptionLocations.iterator();
-        while (iteratorSubscriptionLocations.hasNext()) {
-            SubscriptionLocation nextSubscriptionLocation = iteratorSubscriptionLocations.next();
-            if (nextSubscriptionLocation.getSubscriptionKey().equals(subscriptionLocation.getSubscriptionKey())) {
-                if(nextSubscriptionLocation.getLocation().compareTo(subscriptionLocation.getLocation()) == 0) {
-                    return false;
-                }
-
-                iteratorSubscriptionLocations.remove();
-                removed = true;
-                break;
+        int subscriptionOrdinal;
+        SubscriptionLocation existingSubscriptionLocation = subscriptionLocations.get(subscriptionKey);
+        if(existingSubscriptionLocation != null) {
+            if(existingSubscriptionLocation.getLocation().compareTo(location) == 0) {
+                return false;
             }
+
+            subscriptionOrdinal = existingSubscriptionLocation.getSubscriptionOrdinal();
+            subscriptionLocations.remove(subscriptionKey);
         }
+        else {
+            subscriptionOrdinal = subscriptionOrdinals.nextClearBit(0);
+            subscriptionOrdinals.set(subscriptionOrdinal);
+            pendingAckSubscriptions = null;
 
-        if(!removed) {
             if(messageLocations.size() != 0) {
-                String subscriptionKey = subscriptionLocation.getSubscriptionKey();
                 if (retroactive) {
-                    for (MessageLocation messageLocation : messageLocations) {
-                        messageLocation.addPendingSubscriptionKey(subscriptionKey);
+                    for (MessageLocation messageLocation : messageLocations.values()) {
+                        messageLocation.addPendingSubscription(subscriptionOrdinal);
                     }
                 }
                 else {
-                    MessageLocation lastMessageLocation = messageLocations.getLast();
+                    MessageLocation lastMessageLocation = getLastMessageLocation();
                     if (lastMessageLocation != null) {
-                        lastMessageLocation.addPendingSubscriptionKey(subscriptionKey);
+                        lastMessageLocation.addPendingSubscription(subscriptionOrdinal);
                     }
                 }
             }
         }
 
-        subscriptionLocations.add(subscriptionLocation);
+        subscriptionLocations.put(subscriptionKey, new SubscriptionLocation(subscriptionKey, destinationId, subscriptionOrdinal, location));
         return true;
     }
     //-------------------------------------------------------------------------
-    boolean addMessageLocation(String messageId, Location location) {
+    boolean addMessageLocation(KahaDBMessageKey messageKey, Location location) {
+        if(messageKey == null || messageLocations.containsKey(messageKey)) {
+            return false;
+        }
+
+        int producerId = messageKey.getProducerId();
+        long sequenceId = messageKey.getSequenceId();
         MessageLocation messageLocation = hasSubscriptions()
-                ? new MessageLocation(messageId, destinationId, location, getSubscriptionLocations())
-                : new MessageLocation(messageId, destinationId, location);
+                ? new MessageLocation(producerId, sequenceId, destinationId, location, getPendingAckSubscriptions(), subscriptionLocations.size())
+                : new MessageLocation(producerId, sequenceId, destinationId, location);
 
-        return addMessageLocation(messageLocation);
+        return addMessageLocationEntry(messageKey, messageLocation);
     }
     boolean addMessageLocation(MessageLocation messageLocation) {
-        if(messageLocation == null || !destinationId.equals(messageLocation.getDestinationId())){
+        if(messageLocation == null) {
             return false;
         }
 
-        final Iterator<MessageLocation> iteratorMessageLocations = messageLocations.iterator();
-        while (iteratorMessageLocations.hasNext()) {
-
-            if (iteratorMessageLocations.next().getMessageId().equals(messageLocation.getMessageId())) {
-                return false;
-            }
-        }
-
-        messageLocations.add(messageLocation);
-        return true;
+        return addMessageLocationEntry(new KahaDBMessageKey(messageLocation.getProducerId(), messageLocation.getSequenceId()), messageLocation);
     }
     //-------------------------------------------------------------------------
-    boolean removeSubscriptionLocation(String subscriptionKey) {
-        if(isNullOrEmpty(subscriptionKey)) {
+    boolean removeSubscriptionLocation(int subscriptionKey) {
+        if(subscriptionKey < 0) {
             return false;
         }
 
-        SubscriptionLocation removedSubscriptionLocation = null;
-
-        final Iterator<SubscriptionLocation> iteratorSubscriptionLocations = subscriptionLocations.iterator();
-        while (iteratorSubscriptionLocations.hasNext()) {
-            SubscriptionLocation nextSubscriptionLocation = iteratorSubscriptionLocations.next();
-            if (nextSubscriptionLocation.getSubscriptionKey().equals(subscriptionKey)) {
-                removedSubscriptionLocation = nextSubscriptionLocation;
-                iteratorSubscriptionLocations.remove();
-                break;
-            }
-        }
+        SubscriptionLocation removedSubscriptionLocation = subscriptionLocations.remove(subscriptionKey);
 
         if(removedSubscriptionLocation != null) {
-            final Iterator<MessageLocation> iteratorMessageLocations = messageLocations.iterator();
+            int subscriptionOrdinal = removedSubscriptionLocation.getSubscriptionOrdinal();
+
+            final Iterator<MessageLocation> iteratorMessageLocations = messageLocations.values().iterator();
             while (iteratorMessageLocations.hasNext()) {
                 MessageLocation nextMessageLocation = iteratorMessageLocations.next();
-                nextMessageLocation.removePendingSubscriptionKey(subscriptionKey);
+                nextMessageLocation.removePendingSubscription(subscriptionOrdinal);
                 if(nextMessageLocation.hasAllAcks()) {
                     iteratorMessageLocations.remove();
+                    if(nextMessageLocation == lastMessageLocation) {
+                        lastMessageLocation = null;
+                    }
                 }
             }
+
+            //no message refers to the ordinal any more, so it can be reused
+            subscriptionOrdinals.clear(subscriptionOrdinal);
+            pendingAckSubscriptions = null;
         }
 
         return removedSubscriptionLocation != null;
     }
 
-    boolean removeMessageLocation(String messageId) {
-        if(isNullOrEmpty(messageId)) {
+    boolean removeMessageLocation(KahaDBMessageKey messageKey) {
+        if(messageKey == null) {
+            return false;
+        }
+
+        return removeMessageLocationEntry(messageKey) != null;
+    }
+    boolean removeMessageLocation(KahaDBMessageKey messageKey, int subscriptionKey, Location ackLocation) {
+        if(messageKey == null || subscriptionKey < 0) {
             return false;
         }
 
-        boolean removed = false;
+        SubscriptionLocation subscriptionLocation = subscriptionLocations.get(subscriptionKey);
+        MessageLocation messageLocation = messageLocations.get(messageKey);
+        if(subscriptionLocation == null || messageLocation == null) {
+            return false;
+        }
 
-        final Iterator<MessageLocation> iteratorMessageLocations = messageLocations.iterator();
-        while (iteratorMessageLocations.hasNext()) {
-            if (iteratorMessageLocations.next().getMessageId().equals(messageId)) {
-                iteratorMessageLocations.remove();
-                removed = true;
-                break;
-            }
+        messageLocation.addAckLocation(subscriptionLocation.getSubscriptionOrdinal(), subscriptionKey, ackLocation);
+        if(!messageLocation.hasAllAcks()) {
+            return false;
         }
 
-        return removed;
+        removeMessageLocationEntry(messageKey);
+        return true;
     }
-    boolean removeMessageLocation(String messageId, String subscriptionKey, Location ackLocation) {
-        if(isNullOrEmpty(messageId)) {
-            return false;
+    //-------------------------------------------------------------------------
+    void write(DataOutput output) throws IOException {
+        output.writeInt(destinationId);
+
+        output.writeInt(subscriptionLocations.size());
+        for (SubscriptionLocation subscriptionLocation : subscriptionLocations.values()) {
+            output.writeInt(subscriptionLocation.getSubscriptionKey());
+            output.writeInt(subscriptionLocation.getSubscriptionOrdinal());
+            writeLocation(output, subscriptionLocation.getLocation());
         }
 
-        boolean removed = false;
+        output.writeInt(messageLocations.size());
+        for (MessageLocation messageLocation : messageLocations.values()) {
+            messageLocation.write(output);
+        }
+    }
+    static DestinationData read(DataInput input) throws IOException {
+        DestinationData destinationData = new DestinationData(input.readInt());
 
-        final Iterator<MessageLocation> iteratorMessageLocations = messageLocations.iterator();
-        while (iteratorMessageLocations.hasNext()) {
-            MessageLocation nextMessageLocation = iteratorMessageLocations.next();
-            if (nextMessageLocation.getMessageId().equals(messageId)) {
-                nextMessageLocation.addAckLocation(subscriptionKey, ackLocation);
-                if (nextMessageLocation.hasAllAcks()) {
-                    iteratorMessageLocations.remove();
-                    removed = true;
-                }
-                break;
-            }
+        int subscriptions = input.readInt();
+        for(int i = 0; i < subscriptions; ++i) {
+            int subscriptionKey = input.readInt();
+            int subscriptionOrdinal = input.readInt();
+            Location location = readLocation(input);
+
+            destinationData.subscriptionOrdinals.set(subscriptionOrdinal);
+            destinationData.subscriptionLocations.put(subscriptionKey, new SubscriptionLocation(subscriptionKey, destinationData.destinationId, subscriptionOrdinal, location));
         }
 
-        return removed;
+        //insertion order is kept, so the last message is the same as before the checkpoint
+        int messages = input.readInt();
+        for(int i = 0; i < messages; ++i) {
+            destinationData.addMessageLocation(MessageLocation.read(input));
+        }
+        return destinationData;
     }
     //-------------------------------------------------------------------------
 }
@@ -1,31 +1,54 @@
 package org.hill30.activemq.kahadb.optimizer.destinations;
 
 import org.hill30.activemq.Utils;
+import org.hill30.activemq.kahadb.optimizer.locations.LocationGroupSink;
+import org.hill30.activemq.kahadb.optimizer.locations.LocationSink;
+import org.hill30.activemq.kahadb.optimizer.locations.LocationStore;
 import org.hill30.activemq.kahadb.optimizer.locations.MessageLocation;
-import org.hill30.activemq.kahadb.utils.KahaDBTransactionIdConversion;
+import org.hill30.activemq.kahadb.utils.KahaDBMessageKey;
+import org.hill30.activemq.kahadb.utils.KahaDBSymbolTable;
+import org.hill30.activemq.kahadb.utils.KahaDBTransactionKey;
 import org.hill30.activemq.kahadb.optimizer.locations.AckMessageLocation;
 import org.hill30.activemq.kahadb.optimizer.locations.SubscriptionLocation;
 
-import org.apache.activemq.command.TransactionId;
 import org.apache.activemq.store.kahadb.JournalCommand;
 import org.apache.activemq.store.kahadb.data.*;
 import org.apache.activemq.store.kahadb.disk.journal.Location;
-import org.apache.activemq.store.kahadb.disk.util.DataByteArrayInputStream;
 import org.apache.activemq.util.ByteSequence;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
 
 public class PoolDestinationData {
     //region private
-    private final LinkedList<DestinationData> topicsDestinationData = new LinkedList<>();
-    private final LinkedList<DestinationData> queuesDestinationData = new LinkedList<>();
+    //the group of the commit and prepare records, destination groups are named by the destination id
+    private static final String TRANSACTIONS_GROUP = "transactions";
+    //the commands the analysis takes into account, the records of any other command are never moved
+    private static final EnumSet<KahaEntryType> ANALYSED_COMMAND_TYPES = EnumSet.of(
+            KahaEntryType.KAHA_ADD_MESSAGE_COMMAND,
+            KahaEntryType.KAHA_UPDATE_MESSAGE_COMMAND,
+            KahaEntryType.KAHA_REMOVE_MESSAGE_COMMAND,
+            KahaEntryType.KAHA_REMOVE_DESTINATION_COMMAND,
+            KahaEntryType.KAHA_SUBSCRIPTION_COMMAND,
+            KahaEntryType.KAHA_COMMIT_COMMAND,
+            KahaEntryType.KAHA_PREPARE_COMMAND,
+            KahaEntryType.KAHA_ROLLBACK_COMMAND);
     //-------------------------------------------------------------------------
-    private final LinkedHashMap<TransactionId, List<OperationLocation>> inflightedTransactions = new LinkedHashMap<>();
-    private final LinkedHashMap<TransactionId, TransactionLocation> preparedTransactions = new LinkedHashMap<>();
-    private final LinkedHashMap<TransactionId, TransactionLocation> committedTransactionLocations = new LinkedHashMap<>();
+    private final KahaDBSymbolTable symbolTable;
+    //-------------------------------------------------------------------------
+    private final Map<Integer, DestinationData> topicsDestinationData;
+    private final Map<Integer, DestinationData> queuesDestinationData;
+    //-------------------------------------------------------------------------
+    private final LinkedHashMap<KahaDBTransactionKey, TransactionLocation> inflightedTransactions = new LinkedHashMap<>();
+    private final LinkedHashMap<KahaDBTransactionKey, TransactionLocation> preparedTransactions = new LinkedHashMap<>();
+    private final LinkedHashMap<KahaDBTransactionKey, TransactionLocation> committedTransactionLocations = new LinkedHashMap<>();
+    private final HashMap<KahaDBMessageKey, List<CommittedTransactionLocation>> committedTransactionsByMessageId = new HashMap<>();
     //-------------------------------------------------------------------------
     private void commandAnalysis(JournalCommand<?> command, Location location, boolean transactionAnalysis) {
         KahaEntryType commandType = command.type();
@@ -71,36 +94,34 @@ public class PoolDestinationData {
 
     private void commandAnalysis(KahaAddMessageCommand command, Location location, boolean transactionAnalysis) {
         if(transactionAnalysis && command.hasTransactionInfo()) {
-            List<OperationLocation> inflightTx = getInflightTx(command.getTransactionInfo());
+            List<OperationLocation<?>> inflightTx = getInflightTx(command.getTransactionInfo());
             inflightTx.add(new AddOperationLocation(command, location));
         }
         else {
             KahaDestination destination = command.getDestination();
-            String destinationId = getDestinationId(destination);
 
             if (isDestinationTopic(destination)) {
-                DestinationData destinationData = getDestinationData(topicsDestinationData, destinationId);
+                DestinationData destinationData = getDestinationData(topicsDestinationData, symbolTable.getSymbol(destination));
                 if (destinationData != null) {
-                    destinationData.addMessageLocation(command.getMessageId(), location);
+                    destinationData.addMessageLocation(symbolTable.internMessageKey(command.getMessageId()), location);
                 }
             }
             else {
-                DestinationData destinationData = addDestinationData(queuesDestinationData, destinationId);
-                destinationData.addMessageLocation(command.getMessageId(), location);
+                DestinationData destinationData = addDestinationData(queuesDestinationData, symbolTable.intern(destination));
+                destinationData.addMessageLocation(symbolTable.internMessageKey(command.getMessageId()), location);
             }
         }
     }
     private void commandAnalysis(KahaUpdateMessageCommand command, Location location, boolean transactionAnalysis) {
         KahaAddMessageCommand addCommand = command.getMessage();
         KahaDestination destination = addCommand.getDestination();
-        String destinationId = getDestinationId(destination);
 
-        LinkedList<DestinationData> listDestinationData = isDestinationTopic(destination) ? topicsDestinationData : queuesDestinationData;
-        DestinationData destinationData = getDestinationData(listDestinationData, destinationId);
+        Map<Integer, DestinationData> mapDestinationData = isDestinationTopic(destination) ? topicsDestinationData : queuesDestinationData;
+        DestinationData destinationData = getDestinationData(mapDestinationData, symbolTable.getSymbol(destination));
         MessageLocation messageLocation = null;
 
         if(destinationData != null) {
-            messageLocation = destinationData.getMessageLocation(addCommand.getMessageId());
+            messageLocation = destinationData.getMessageLocation(symbolTable.getMessageKey(addCommand.getMessageId()));
             if(messageLocation != null) {
                 messageLocation.updateLocation(location);
             }
@@ -112,24 +133,28 @@ public class PoolDestinationData {
     }
     private void commandAnalysis(KahaRemoveMessageCommand command, Location location, boolean transactionAnalysis) {
         if(transactionAnalysis && command.hasTransactionInfo()) {
-            List<OperationLocation> inflightTx = getInflightTx(command.getTransactionInfo());
+            List<OperationLocation<?>> inflightTx = getInflightTx(command.getTransactionInfo());
             inflightTx.add(new RemoveOperationLocation(command, location));
         }
         else {
             KahaDestination destination = command.getDestination();
-            String destinationId = getDestinationId(destination);
-            String messageId = command.getMessageId();
+            int destinationId = symbolTable.getSymbol(destination);
+            KahaDBMessageKey messageKey = symbolTable.getMessageKey(command.getMessageId());
+            if(messageKey == null) {
+                //the producer of this message has never been seen, nothing can reference it
+                return;
+            }
 
             if (isDestinationTopic(destination)) {
                 DestinationData destinationData = getDestinationData(topicsDestinationData, destinationId);
                 if (destinationData != null) {
-                    destinationData.removeMessageLocation(messageId, command.getSubscriptionKey(), location);
+                    destinationData.removeMessageLocation(messageKey, symbolTable.getSymbol(command.getSubscriptionKey()), location);
                 }
             }
             else {
                 DestinationData destinationData = getDestinationData(queuesDestinationData, destinationId);
                 if (destinationData != null) {
-                    destinationData.removeMessageLocation(messageId);
+                    destinationData.removeMessageLocation(messageKey);
 
                     if (!destinationData.hasMessages()) {
                         removeDestinationData(queuesDestinationData, destinationId);
@@ -137,35 +162,33 @@ public class PoolDestinationData {
                 }
             }
 
-            removeMessageOfCommittedTransaction(messageId);
+            removeMessageOfCommittedTransaction(messageKey);
         }
     }
     private void commandAnalysis(KahaRemoveDestinationCommand command) {
         KahaDestination destination = command.getDestination();
-        String destinationId = getDestinationId(destination);
 
-        LinkedList<DestinationData> listDestinationData = isDestinationTopic(destination) ? topicsDestinationData : queuesDestinationData;
-        removeDestinationData(listDestinationData, destinationId);
+        Map<Integer, DestinationData> mapDestinationData = isDestinationTopic(destination) ? topicsDestinationData : queuesDestinationData;
+        removeDestinationData(mapDestinationData, symbolTable.getSymbol(destination));
     }
     private void commandAnalysis(KahaSubscriptionCommand command, Location location) {
         KahaDestination destination = command.getDestination();
 
         if(isDestinationTopic(destination)) {
-            LinkedList<DestinationData> listDestinationData = topicsDestinationData;
-            String destinationId = getDestinationId(destination);
-            String subscriptionKey = command.getSubscriptionKey();
+            Map<Integer, DestinationData> mapDestinationData = topicsDestinationData;
 
             if(command.hasSubscriptionInfo()) {
-                DestinationData destinationData = addDestinationData(listDestinationData, destinationId);
-                destinationData.addSubscriptionLocation(subscriptionKey, location, command.getRetroactive());
+                DestinationData destinationData = addDestinationData(mapDestinationData, symbolTable.intern(destination));
+                destinationData.addSubscriptionLocation(symbolTable.intern(command.getSubscriptionKey()), location, command.getRetroactive());
             }
             else {
-                DestinationData destinationData = getDestinationData(listDestinationData, destinationId);
+                int destinationId = symbolTable.getSymbol(destination);
+                DestinationData destinationData = getDestinationData(mapDestinationData, destinationId);
                 if(destinationData != null) {
-                    destinationData.removeSubscriptionLocation(subscriptionKey);
+                    destinationData.removeSubscriptionLocation(symbolTable.getSymbol(command.getSubscriptionKey()));
 
                     if(!destinationData.hasSubscriptions()) {
-                        removeDestinationData(listDestinationData, destinationId);
+                        removeDestinationData(mapDestinationData, destinationId);
                     }
                 }
             }
@@ -176,18 +199,18 @@ public class PoolDestinationData {
             return;
         }
 
-        TransactionId transactionId = KahaDBTransactionIdConversion.convert(command.getTransactionInfo());
-        List<OperationLocation> inflightTx = inflightedTransactions.remove(transactionId);
+        //a lookup key over the decoded record, the stored key of the transaction is the one kept
+        KahaDBTransactionKey transactionId = new KahaDBTransactionKey(command.getTransactionInfo());
+        TransactionLocation inflightTx = inflightedTransactions.remove(transactionId);
         if(inflightTx == null) {
-            TransactionLocation prepareMessageLocation = preparedTransactions.remove(transactionId);
-            inflightTx = prepareMessageLocation == null ? null : prepareMessageLocation.getOperationLocations();
+            inflightTx = preparedTransactions.remove(transactionId);
         }
 
         if(inflightTx != null) {
-            CommittedTransactionLocation committedTransactionLocation = new CommittedTransactionLocation(transactionId, location, inflightTx);
-            committedTransactionLocations.put(committedTransactionLocation.getTransactionId(), committedTransactionLocation);
+            CommittedTransactionLocation committedTransactionLocation = new CommittedTransactionLocation(inflightTx.getTransactionId(), location, inflightTx.getOperationLocations());
+            addCommittedTransaction(committedTransactionLocation);
 
-            inflightTx.forEach(OperationLocation::execute);
+            inflightTx.getOperationLocations().forEach(OperationLocation::execute);
         }
     }
     private void commandAnalysis(KahaPrepareCommand command, Location location) {
@@ -195,10 +218,10 @@ public class PoolDestinationData {
             return;
         }
 
-        TransactionId transactionId = KahaDBTransactionIdConversion.convert(command.getTransactionInfo());
-        List<OperationLocation> inflightTx = inflightedTransactions.remove(transactionId);
+        KahaDBTransactionKey transactionId = new KahaDBTransactionKey(command.getTransactionInfo());
+        TransactionLocation inflightTx = inflightedTransactions.remove(transactionId);
         if(inflightTx != null) {
-            preparedTransactions.put(transactionId, new TransactionLocation(transactionId, location, inflightTx));
+            preparedTransactions.put(inflightTx.getTransactionId(), new TransactionLocation(inflightTx.getTransactionId(), location, inflightTx.getOperationLocations()));
         }
     }
     private void commandAnalysis(KahaRollbackCommand command) {
@@ -206,82 +229,80 @@ public class PoolDestinationData {
             return;
         }
 
-        TransactionId transactionId = KahaDBTransactionIdConversion.convert(command.getTransactionInfo());
-        List<OperationLocation> inflightTx = inflightedTransactions.remove(transactionId);
+        KahaDBTransactionKey transactionId = new KahaDBTransactionKey(command.getTransactionInfo());
+        TransactionLocation inflightTx = inflightedTransactions.remove(transactionId);
         if(inflightTx == null) {
             preparedTransactions.remove(transactionId);
         }
     }
     //-------------------------------------------------------------------------
-    private DestinationData addDestinationData(LinkedList<DestinationData> listDestinationData, String destinationId) {
-        DestinationData destinationData = getDestinationData(listDestinationData, destinationId);
+    private DestinationData addDestinationData(Map<Integer, DestinationData> mapDestinationData, int destinationId) {
+        DestinationData destinationData = mapDestinationData.get(destinationId);
         if(destinationData == null) {
             destinationData = new DestinationData(destinationId);
-            listDestinationData.add(destinationData);
+            mapDestinationData.put(destinationId, destinationData);
         }
         return destinationData;
     }
-    private boolean removeDestinationData(LinkedList<DestinationData> listDestinationData, String destinationId) {
-        boolean removed = false;
-
-        final Iterator<DestinationData> iteratorListDestinationData = listDestinationData.iterator();
-        while (iteratorListDestinationData.hasNext()) {
-            if (iteratorListDestinationData.next().getDestinationId().equals(destinationId)) {
-                iteratorListDestinationData.remove();
-                removed = true;
-                break;
+    private boolean removeDestinationData(Map<Integer, DestinationData> mapDestinationData, int destinationId) {
+        return mapDestinationData.remove(destinationId) != null;
+    }
+    private DestinationData getDestinationData(Map<Integer, DestinationData> mapDestinationData, int destinationId) {
+        return mapDestinationData.get(destinationId);
+    }
+    //-------------------------------------------------------------------------
+    private void addCommittedTransaction(CommittedTransactionLocation committedTransactionLocation) {
+        committedTransactionLocations.put(committedTransactionLocation.getTransactionId(), committedTransactionLocation);
+
+        for(OperationLocation<?> operationLocation : committedTransactionLocation.getOperationLocations()) {
+            List<CommittedTransactionLocation> messageTransactions = committedTransactionsByMessageId.get(operationLocation.getMessageKey());
+            if(messageTransactions == null) {
+                messageTransactions = new ArrayList<>(1);
+                committedTransactionsByMessageId.put(operationLocation.getMessageKey(), messageTransactions);
+            }
+            if(!messageTransactions.contains(committedTransactionLocation)) {
+                messageTransactions.add(committedTransactionLocation);
             }
         }
-
-        return removed;
     }
-    private DestinationData getDestinationData(LinkedList<DestinationData> listDestinationData, String destinationId) {
-        DestinationData destinationData = null;
-
-        final Iterator<DestinationData> iteratorListDestinationData = listDestinationData.iterator();
-        while (iteratorListDestinationData.hasNext()) {
-            DestinationData nextDestinationData = iteratorListDestinationData.next();
-            if (nextDestinationData.getDestinationId().equals(destinationId)) {
-                destinationData = nextDestinationData;
-                break;
-            }
+    private void removeMessageOfCommittedTransaction(KahaDBMessageKey messageKey) {
+        List<CommittedTransactionLocation> messageTransactions = committedTransactionsByMessageId.remove(messageKey);
+        if(messageTransactions == null) {
+            return;
         }
 
-        return destinationData;
-    }
-    //-------------------------------------------------------------------------
-    private void removeMessageOfCommittedTransaction(String messageId) {
-        final Iterator<TransactionLocation> iteratorTransactionLocations = committedTransactionLocations.values().iterator();
-        while (iteratorTransactionLocations.hasNext()) {
-            TransactionLocation nextTransactionLocations = iteratorTransactionLocations.next();
-            if(((CommittedTransactionLocation)nextTransactionLocations).removeCommandLocation(messageId)) {
-                if(!nextTransactionLocations.hasCommandLocations()) {
-                    iteratorTransactionLocations.remove();
+        for(CommittedTransactionLocation committedTransactionLocation : messageTransactions) {
+            if(committedTransactionLocation.removeCommandLocation(messageKey)) {
+                if(!committedTransactionLocation.hasCommandLocations()) {
+                    //a transaction id committed again replaces the previous entry, keep the newest one
+                    committedTransactionLocations.remove(committedTransactionLocation.getTransactionId(), committedTransactionLocation);
                 }
             }
         }
     }
     //-------------------------------------------------------------------------
-    private List<OperationLocation> getInflightTx(KahaTransactionInfo info) {
-        TransactionId transactionId = KahaDBTransactionIdConversion.convert(info);
-        List<OperationLocation> inflightTx = inflightedTransactions.get(transactionId);
+    private List<OperationLocation<?>> getInflightTx(KahaTransactionInfo info) {
+        KahaDBTransactionKey transactionId = new KahaDBTransactionKey(info);
+        TransactionLocation inflightTx = inflightedTransactions.get(transactionId);
 
         if(inflightTx == null) {
-            inflightTx = new ArrayList<>();
+            //the XA ids are copied once, when the transaction is first stored
+            transactionId = transactionId.compact();
+            inflightTx = new TransactionLocation(transactionId, null, new ArrayList<>());
             inflightedTransactions.put(transactionId, inflightTx);
         }
 
-        return inflightTx;
+        return inflightTx.getOperationLocations();
     }
     //-------------------------------------------------------------------------
-    private void addSubscriptionLocations(LinkedList<DestinationData> destinationDates, List<Location> target) {
+    private void addSubscriptionLocations(Collection<DestinationData> destinationDates, LocationSink target) {
         for (DestinationData destinationData : destinationDates) {
             for (SubscriptionLocation subscriptionLocation : destinationData.getSubscriptionLocations()) {
                 target.add(subscriptionLocation.getLocation());
             }
         }
     }
-    private void addDestinationLocations(Collection<DestinationData> destinationDates, List<Location> target) {
+    private void addDestinationLocations(Collection<DestinationData> destinationDates, LocationSink target) {
         for(DestinationData destinationData : destinationDates) {
             for(MessageLocation messageLocation : destinationData.getMessageLocations()) {
                 target.add(messageLocation.getLocation());
@@ -292,7 +313,7 @@ public class PoolDestinationData {
             }
         }
     }
-    private void addTransactionLocations(Collection<TransactionLocation> transactionLocations, List<Location> target, boolean addCommandLocations) {
+    private void addTransactionLocations(Collection<TransactionLocation> transactionLocations, LocationSink target, boolean addCommandLocations) {
         for(TransactionLocation transactionLocation : transactionLocations) {
             target.add(transactionLocation.getLocation());
 
@@ -301,27 +322,84 @@ public class PoolDestinationData {
             }
         }
     }
-    private void addOperationLocations(Collection<OperationLocation> operationLocationLocations, List<Location> target) {
-        for(OperationLocation operationLocation : operationLocationLocations) {
+    private void addOperationLocations(Collection<OperationLocation<?>> operationLocationLocations, LocationSink target) {
+        for(OperationLocation<?> operationLocation : operationLocationLocations) {
             target.add(operationLocation.getLocation());
         }
     }
+    private void addDestinationGroupLocations(Collection<DestinationData> destinationDates, LocationGroupSink target) {
+        for(DestinationData destinationData : destinationDates) {
+            String group = symbolTable.getName(destinationData.getDestinationId());
+
+            for (SubscriptionLocation subscriptionLocation : destinationData.getSubscriptionLocations()) {
+                target.add(group, subscriptionLocation.getLocation());
+            }
+            for(MessageLocation messageLocation : destinationData.getMessageLocations()) {
+                target.add(group, messageLocation.getLocation());
+
+                for(AckMessageLocation ackMessageLocation : messageLocation.getAckMessageLocations()) {
+                    target.add(group, ackMessageLocation.getLocation());
+                }
+            }
+        }
+    }
+    private void addTransactionGroupLocations(Collection<TransactionLocation> transactionLocations, LocationGroupSink target) {
+        for(TransactionLocation transactionLocation : transactionLocations) {
+            String group = transactionLocation.getTransactionId().toString();
+
+            target.add(group, transactionLocation.getLocation());
+            for(OperationLocation<?> operationLocation : transactionLocation.getOperationLocations()) {
+                target.add(group, operationLocation.getLocation());
+                //operations take effect at the end of the transaction, that is their place in the destination order
+                target.add(getDestinationId(operationLocation.getDestination()), transactionLocation.getLocation());
+            }
+        }
+    }
+    private void addSubscriptionGroupLocations(Collection<DestinationData> destinationDates, LocationGroupSink target) {
+        for(DestinationData destinationData : destinationDates) {
+            String destinationName = symbolTable.getName(destinationData.getDestinationId());
+            SubscriptionLocation[] subscriptionLocations = destinationData.getSubscriptionLocations();
+            String[] groups = new String[subscriptionLocations.length];
+            for(int i = 0; i < subscriptionLocations.length; ++i) {
+                groups[i] = symbolTable.getName(subscriptionLocations[i].getSubscriptionKey()) + " (DestId: " + destinationName + ")";
+                target.add(groups[i], subscriptionLocations[i].getLocation());
+            }
+
+            //a message and its acks are kept by every subscription which has not acked it yet
+            for(MessageLocation messageLocation : destinationData.getMessageLocations()) {
+                for(int i = 0; i < subscriptionLocations.length; ++i) {
+                    if(messageLocation.hasPendingSubscription(subscriptionLocations[i].getSubscriptionOrdinal())) {
+                        target.add(groups[i], messageLocation.getLocation());
+
+                        for(AckMessageLocation ackMessageLocation : messageLocation.getAckMessageLocations()) {
+                            target.add(groups[i], ackMessageLocation.getLocation());
+                        }
+                    }
+                }
+            }
+        }
+    }
+    private void addOperationGroupLocations(Collection<OperationLocation<?>> operationLocations, LocationGroupSink target) {
+        for(OperationLocation<?> operationLocation : operationLocations) {
+            target.add(getDestinationId(operationLocation.getDestination()), operationLocation.getLocation());
+        }
+    }
     //-------------------------------------------------------------------------
     private abstract class OperationLocation<T extends JournalCommand<T>> {
         //region private
-        private String messageId;
+        private final KahaDBMessageKey messageKey;
         private final T command;
         private final Location location;
         //endregion
-        OperationLocation(String messageId, T command, Location location) {
-            this.messageId = messageId;
+        OperationLocation(KahaDBMessageKey messageKey, T command, Location location) {
+            this.messageKey = messageKey;
             this.command = command;
             this.location = location;
         }
 
         //-------------------------------------------------------------------------
-        public String getMessageId() {
-            return messageId;
+        public KahaDBMessageKey getMessageKey() {
+            return messageKey;
         }
         public T getCommand() {
             return command;
@@ -329,6 +407,7 @@ public class PoolDestinationData {
         public Location getLocation() {
             return location;
         }
+        public abstract KahaDestination getDestination();
         //-------------------------------------------------------------------------
         public void execute() {
             commandAnalysis(command, location, false);
@@ -337,29 +416,42 @@ public class PoolDestinationData {
     }
     private final class AddOperationLocation extends OperationLocation<KahaAddMessageCommand> {
         AddOperationLocation(KahaAddMessageCommand command, Location location) {
-            super(command.getMessageId(), command, location);
+            super(symbolTable.internMessageKey(command.getMessageId()), command, location);
+            //the operation is kept under the key of its transaction, the XA slices of the record are not
+            command.clearTransactionInfo();
+        }
+
+        @Override
+        public KahaDestination getDestination() {
+            return getCommand().getDestination();
         }
     }
     private final class RemoveOperationLocation extends OperationLocation<KahaRemoveMessageCommand> {
         RemoveOperationLocation(KahaRemoveMessageCommand command, Location location) {
-            super(command.getMessageId(), command, location);
+            super(symbolTable.internMessageKey(command.getMessageId()), command, location);
+            command.clearTransactionInfo();
+        }
+
+        @Override
+        public KahaDestination getDestination() {
+            return getCommand().getDestination();
         }
     }
     //-------------------------------------------------------------------------
     private class TransactionLocation {
         //region private
-        private final TransactionId transactionId;
+        private final KahaDBTransactionKey transactionId;
         private final Location location;
-        private final List<OperationLocation> operationLocations;
+        private final List<OperationLocation<?>> operationLocations;
         //endregion
-        TransactionLocation(TransactionId transactionId, Location location, List<OperationLocation> operationLocations) {
+        TransactionLocation(KahaDBTransactionKey transactionId, Location location, List<OperationLocation<?>> operationLocations) {
             this.transactionId = transactionId;
             this.location = location;
             this.operationLocations = operationLocations;
         }
 
         //-------------------------------------------------------------------------
-        public TransactionId getTransactionId() {
+        public KahaDBTransactionKey getTransactionId() {
             return transactionId;
         }
         public Location getLocation() {
@@ -369,24 +461,24 @@ public class PoolDestinationData {
             return operationLocations.size() != 0;
         }
         //---------------------------------------------------------------------
-        List<OperationLocation> getOperationLocations() {
+        List<OperationLocation<?>> getOperationLocations() {
             return operationLocations;
         }
         //---------------------------------------------------------------------
     }
     private class CommittedTransactionLocation extends TransactionLocation {
-        CommittedTransactionLocation(TransactionId transactionId, Location location, List<OperationLocation> operationLocations) {
+        CommittedTransactionLocation(KahaDBTransactionKey transactionId, Location location, List<OperationLocation<?>> operationLocations) {
             super(transactionId, location, new ArrayList<>(operationLocations));
         }
 
         //---------------------------------------------------------------------
-        boolean removeCommandLocation(String messageId) {
+        boolean removeCommandLocation(KahaDBMessageKey messageKey) {
             boolean removed = false;
 
-            final Iterator<OperationLocation> iteratorCommandLocations = getOperationLocations().iterator();
+            final Iterator<OperationLocation<?>> iteratorCommandLocations = getOperationLocations().iterator();
             while (iteratorCommandLocations.hasNext()) {
-                OperationLocation operationLocation = iteratorCommandLocations.next();
-                if(operationLocation.getMessageId().equals(messageId)) {
+                OperationLocation<?> operationLocation = iteratorCommandLocations.next();
+                if(operationLocation.getMessageKey().equals(messageKey)) {
                     iteratorCommandLocations.remove();
                     removed = true;
                 }
@@ -397,19 +489,101 @@ public class PoolDestinationData {
         //---------------------------------------------------------------------
     }
     //-------------------------------------------------------------------------
-    private final class LocationComparator implements Comparator<Location> {
-        @Override
-        public int compare(Location o1, Location o2) {
-            return o1.compareTo(o2);
+    private static void writeDestinations(DataOutput output, Map<Integer, DestinationData> mapDestinationData) throws IOException {
+        output.writeInt(mapDestinationData.size());
+        for (DestinationData destinationData : mapDestinationData.values()) {
+            destinationData.write(output);
+        }
+    }
+    private static void readDestinations(DataInput input, Map<Integer, DestinationData> mapDestinationData) throws IOException {
+        int destinations = input.readInt();
+        for(int i = 0; i < destinations; ++i) {
+            DestinationData destinationData = DestinationData.read(input);
+            mapDestinationData.put(destinationData.getDestinationId(), destinationData);
+        }
+    }
+    private static void writeTransactionId(DataOutput output, KahaDBTransactionKey transactionId) throws IOException {
+        writeBytes(output, transactionId.toTransactionInfo().toFramedByteArray());
+    }
+    private static KahaDBTransactionKey readTransactionId(DataInput input) throws IOException {
+        return new KahaDBTransactionKey(new KahaTransactionInfo().mergeFramed(readBytes(input)));
+    }
+    private static void writeBytes(DataOutput output, byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+    private static byte[] readBytes(DataInput input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return bytes;
+    }
+    //-------------------------------------------------------------------------
+    private void writeOperations(DataOutput output, List<OperationLocation<?>> operationLocations) throws IOException {
+        output.writeInt(operationLocations.size());
+        for (OperationLocation<?> operationLocation : operationLocations) {
+            JournalCommand<?> command = operationLocation.getCommand();
+            if(command.type() == KahaEntryType.KAHA_ADD_MESSAGE_COMMAND) {
+                //the analysis never reads the message body
+                KahaAddMessageCommand addCommand = ((KahaAddMessageCommand)command).clone();
+                addCommand.clearMessage();
+                command = addCommand;
+            }
+
+            output.writeInt(command.type().getNumber());
+            writeLocation(output, operationLocation.getLocation());
+            writeBytes(output, command.toFramedByteArray());
+        }
+    }
+    private List<OperationLocation<?>> readOperations(DataInput input) throws IOException {
+        int operations = input.readInt();
+        List<OperationLocation<?>> operationLocations = new ArrayList<>(operations);
+        for(int i = 0; i < operations; ++i) {
+            KahaEntryType commandType = KahaEntryType.valueOf(input.readInt());
+            Location location = readLocation(input);
+            byte[] commandBytes = readBytes(input);
+
+            if(commandType == KahaEntryType.KAHA_ADD_MESSAGE_COMMAND) {
+                operationLocations.add(new AddOperationLocation(new KahaAddMessageCommand().mergeFramed(commandBytes), location));
+            }
+            else {
+                operationLocations.add(new RemoveOperationLocation(new KahaRemoveMessageCommand().mergeFramed(commandBytes), location));
+            }
+        }
+        return operationLocations;
+    }
+    private void writeTransactions(DataOutput output, LinkedHashMap<KahaDBTransactionKey, TransactionLocation> transactionLocations) throws IOException {
+        output.writeInt(transactionLocations.size());
+        for (TransactionLocation transactionLocation : transactionLocations.values()) {
+            writeTransactionId(output, transactionLocation.getTransactionId());
+            writeLocation(output, transactionLocation.getLocation());
+            writeOperations(output, transactionLocation.getOperationLocations());
         }
     }
     //endregion
+    private PoolDestinationData(KahaDBSymbolTable symbolTable, Supplier<Map<Integer, DestinationData>> destinationDataFactory) {
+        if(destinationDataFactory == null) {
+            throw new NullPointerException("destinationDataFactory");
+        }
+
+        this.symbolTable = symbolTable;
+        this.topicsDestinationData = destinationDataFactory.get();
+        this.queuesDestinationData = destinationDataFactory.get();
+    }
+    PoolDestinationData(Supplier<Map<Integer, DestinationData>> destinationDataFactory) {
+        //the destinations kept in another map, the lookup benchmark compares it with the hashed one
+        this(new KahaDBSymbolTable(), destinationDataFactory);
+    }
+    public PoolDestinationData() {
+        this(new KahaDBSymbolTable(), LinkedHashMap::new);
+    }
+
     //-------------------------------------------------------------------------
     public boolean isEmpty() {
         return getTopicCount() == 0
                 && getQueueCount() == 0
                 && getPreparedTransactionCount() == 0
-                && getCommittedTransactionCount() == 0;
+                && getCommittedTransactionCount() == 0
+                && getInflightedTransactionCount() == 0;
     }
     //-------------------------------------------------------------------------
     public int getTopicCount() {
@@ -424,6 +598,13 @@ public class PoolDestinationData {
     public int getCommittedTransactionCount() {
         return committedTransactionLocations.size();
     }
+    public int getInflightedTransactionCount() {
+        return inflightedTransactions.size();
+    }
+    //-------------------------------------------------------------------------
+    public static boolean isAnalysedCommand(KahaEntryType commandType) {
+        return commandType != null && ANALYSED_COMMAND_TYPES.contains(commandType);
+    }
     //-------------------------------------------------------------------------
     public void sequenceAnalysis(ByteSequence sequence, Location location) throws IOException {
         if(sequence == null) {
@@ -433,43 +614,188 @@ public class PoolDestinationData {
             throw new NullPointerException("location");
         }
 
-        DataByteArrayInputStream sequenceInputStream = new DataByteArrayInputStream(sequence);
-        KahaEntryType commandType = KahaEntryType.valueOf(sequenceInputStream.readByte());
+        commandAnalysis(readCommandHeader(sequence), location, true);
+    }
+    public void commandAnalysis(JournalCommand<?> command, Location location) {
+        if(command == null) {
+            throw new NullPointerException("command");
+        }
+        if(location == null) {
+            throw new NullPointerException("location");
+        }
 
-        JournalCommand<?> command = (JournalCommand<?>)commandType.createMessage();
-        command.mergeFramed(sequenceInputStream);
-        //---------------------------------------------------------------------
         commandAnalysis(command, location, true);
     }
     public void gc() {
         //discard any inflighted transactions
         inflightedTransactions.clear();
     }
+    public void removeCommittedOperations(Predicate<Location> removed) {
+        if(removed == null) {
+            throw new NullPointerException("removed");
+        }
+
+        //an operation of a committed transaction can keep a record which is not live, once that record is removed
+        //an analysis of the journals would not have the operation, nor the transaction without any operation left
+        Iterator<TransactionLocation> iteratorTransactionLocations = committedTransactionLocations.values().iterator();
+        while (iteratorTransactionLocations.hasNext()) {
+            TransactionLocation transactionLocation = iteratorTransactionLocations.next();
+            transactionLocation.getOperationLocations().removeIf(operationLocation -> removed.test(operationLocation.getLocation()));
+            if(!transactionLocation.hasCommandLocations()) {
+                iteratorTransactionLocations.remove();
+            }
+        }
+
+        //the message id index is rebuilt from the operations which are still committed
+        committedTransactionsByMessageId.clear();
+        for (TransactionLocation transactionLocation : new ArrayList<>(committedTransactionLocations.values())) {
+            addCommittedTransaction((CommittedTransactionLocation)transactionLocation);
+        }
+    }
     //-------------------------------------------------------------------------
-    public Location[] getSubscriptionLocations() {
-        List<Location> locations = new ArrayList<>();
+    public LocationStore getSubscriptionLocations() {
+        LocationStore locations = new LocationStore();
 
-        addSubscriptionLocations(topicsDestinationData, locations);
+        writeSubscriptionLocations(locations);
 
-        locations.sort(new LocationComparator());
+        locations.sort();
 
-        Location[] arrayLocation = new Location[locations.size()];
-        return locations.toArray(arrayLocation);
+        return locations;
     }
-    public Location[] getMessageLocations() {
-        List<Location> locations = new ArrayList<>();
+    public LocationStore getMessageLocations() {
+        LocationStore locations = new LocationStore();
+
+        writeMessageLocations(locations);
+
+        if(committedTransactionLocations.size() != 0 || preparedTransactions.size() != 0 || inflightedTransactions.size() != 0) {
+            locations.sort();
+        }
 
-        addDestinationLocations(topicsDestinationData, locations);
-        addDestinationLocations(queuesDestinationData, locations);
-        addTransactionLocations(committedTransactionLocations.values(), locations, false);
-        addTransactionLocations(preparedTransactions.values(), locations, true);
+        return locations;
+    }
+    public void writeSubscriptionLocations(LocationSink target) {
+        if(target == null) {
+            throw new NullPointerException("target");
+        }
 
-        if(committedTransactionLocations.size() != 0 || preparedTransactions.size() != 0) {
-            locations.sort(new LocationComparator());
+        addSubscriptionLocations(topicsDestinationData.values(), target);
+    }
+    public void writeMessageLocations(LocationSink target) {
+        if(target == null) {
+            throw new NullPointerException("target");
         }
 
-        Location[] arrayLocation = new Location[locations.size()];
-        return locations.toArray(arrayLocation);
+        addDestinationLocations(topicsDestinationData.values(), target);
+        addDestinationLocations(queuesDestinationData.values(), target);
+        addTransactionLocations(committedTransactionLocations.values(), target, false);
+        addTransactionLocations(preparedTransactions.values(), target, true);
+        //inflighted transactions are kept until gc, the end of them is not in the analysed journals yet
+        for (TransactionLocation inflightTx : inflightedTransactions.values()) {
+            addOperationLocations(inflightTx.getOperationLocations(), target);
+        }
+    }
+    public void writeDestinationLocations(LocationGroupSink target) {
+        if(target == null) {
+            throw new NullPointerException("target");
+        }
+
+        //the same locations as the subscription and message ones, each of them once
+        addDestinationGroupLocations(topicsDestinationData.values(), target);
+        addDestinationGroupLocations(queuesDestinationData.values(), target);
+        for (TransactionLocation transactionLocation : committedTransactionLocations.values()) {
+            target.add(TRANSACTIONS_GROUP, transactionLocation.getLocation());
+        }
+        for (TransactionLocation transactionLocation : preparedTransactions.values()) {
+            target.add(TRANSACTIONS_GROUP, transactionLocation.getLocation());
+            addOperationGroupLocations(transactionLocation.getOperationLocations(), target);
+        }
+        for (TransactionLocation inflightTx : inflightedTransactions.values()) {
+            addOperationGroupLocations(inflightTx.getOperationLocations(), target);
+        }
+    }
+    public void writeSubscriptionGroups(LocationGroupSink target) {
+        if(target == null) {
+            throw new NullPointerException("target");
+        }
+
+        addSubscriptionGroupLocations(topicsDestinationData.values(), target);
+    }
+    public void writeLocationGroups(LocationGroupSink target) {
+        if(target == null) {
+            throw new NullPointerException("target");
+        }
+
+        addDestinationGroupLocations(topicsDestinationData.values(), target);
+        addDestinationGroupLocations(queuesDestinationData.values(), target);
+        addTransactionGroupLocations(committedTransactionLocations.values(), target);
+        addTransactionGroupLocations(preparedTransactions.values(), target);
+    }
+    public void writeStateLocations(LocationSink target) {
+        if(target == null) {
+            throw new NullPointerException("target");
+        }
+
+        //every location instance the state keeps, the operations of committed transactions too,
+        //so the target can update them in place; a location kept twice is written twice
+        addSubscriptionLocations(topicsDestinationData.values(), target);
+        addDestinationLocations(topicsDestinationData.values(), target);
+        addDestinationLocations(queuesDestinationData.values(), target);
+        addTransactionLocations(committedTransactionLocations.values(), target, true);
+        addTransactionLocations(preparedTransactions.values(), target, true);
+        for (TransactionLocation inflightTx : inflightedTransactions.values()) {
+            addOperationLocations(inflightTx.getOperationLocations(), target);
+        }
+    }
+    //-------------------------------------------------------------------------
+    public void write(DataOutput output) throws IOException {
+        if(output == null) {
+            throw new NullPointerException("output");
+        }
+
+        symbolTable.write(output);
+
+        writeDestinations(output, topicsDestinationData);
+        writeDestinations(output, queuesDestinationData);
+
+        output.writeInt(inflightedTransactions.size());
+        for (TransactionLocation inflightTx : inflightedTransactions.values()) {
+            writeTransactionId(output, inflightTx.getTransactionId());
+            writeOperations(output, inflightTx.getOperationLocations());
+        }
+        writeTransactions(output, preparedTransactions);
+        writeTransactions(output, committedTransactionLocations);
+    }
+    public static PoolDestinationData read(DataInput input) throws IOException {
+        if(input == null) {
+            throw new NullPointerException("input");
+        }
+
+        PoolDestinationData poolDestinationData = new PoolDestinationData(KahaDBSymbolTable.read(input), LinkedHashMap::new);
+
+        readDestinations(input, poolDestinationData.topicsDestinationData);
+        readDestinations(input, poolDestinationData.queuesDestinationData);
+
+        int inflightedTransactions = input.readInt();
+        for(int i = 0; i < inflightedTransactions; ++i) {
+            KahaDBTransactionKey transactionId = readTransactionId(input);
+            poolDestinationData.inflightedTransactions.put(transactionId, poolDestinationData.new TransactionLocation(transactionId, null, poolDestinationData.readOperations(input)));
+        }
+
+        int preparedTransactions = input.readInt();
+        for(int i = 0; i < preparedTransactions; ++i) {
+            KahaDBTransactionKey transactionId = readTransactionId(input);
+            Location location = readLocation(input);
+            poolDestinationData.preparedTransactions.put(transactionId, poolDestinationData.new TransactionLocation(transactionId, location, poolDestinationData.readOperations(input)));
+        }
+
+        //the message id index is rebuilt from the operations which are still committed
+        int committedTransactions = input.readInt();
+        for(int i = 0; i < committedTransactions; ++i) {
+            KahaDBTransactionKey transactionId = readTransactionId(input);
+            Location location = readLocation(input);
+            poolDestinationData.addCommittedTransaction(poolDestinationData.new CommittedTransactionLocation(transactionId, location, poolDestinationData.readOperations(input)));
+        }
+        return poolDestinationData;
     }
     //-------------------------------------------------------------------------
 }
@@ -2,16 +2,14 @@ package org.hill30.activemq.kahadb.optimizer.locations;
 
 import org.apache.activemq.store.kahadb.disk.journal.Location;
 
-import static org.hill30.activemq.Utils.*;
-
 public final class AckMessageLocation {
     //region private
-    private final String subscriptionKey;
+    private final int subscriptionKey;
     private final Location location;
     //endregion
-    public AckMessageLocation(String subscriptionKey, Location location) {
-        if(isNullOrEmpty(subscriptionKey)) {
-            throw new NullPointerException("subscriptionKey");
+    public AckMessageLocation(int subscriptionKey, Location location) {
+        if(subscriptionKey < 0) {
+            throw new IndexOutOfBoundsException("subscriptionKey");
         }
         if(location == null) {
             throw new NullPointerException("location");
@@ -22,7 +20,7 @@ public final class AckMessageLocation {
     }
 
     //-------------------------------------------------------------------------
-    public String getSubscriptionKey() {
+    public int getSubscriptionKey() {
         return subscriptionKey;
     }
     public Location getLocation() {
@@ -0,0 +1,8 @@
+package org.hill30.activemq.kahadb.optimizer.locations;
+
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+
+public interface LocationGroupSink {
+    //locations of one group must keep their order in the journal
+    void add(String group, Location location);
+}
@@ -0,0 +1,7 @@
+package org.hill30.activemq.kahadb.optimizer.locations;
+
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+
+public interface LocationSink {
+    void add(Location location);
+}
@@ -0,0 +1,162 @@
+package org.hill30.activemq.kahadb.optimizer.locations;
+
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+
+import java.util.Arrays;
+
+public final class LocationStore implements LocationSink {
+    //region private
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX_SIZE = 1 << RADIX_BITS;
+    //-------------------------------------------------------------------------
+    //(dataFileId << 32) | offset, so the natural long order is the journal order
+    private long[] positions;
+    private int[] sizes;
+    private int count;
+    //-------------------------------------------------------------------------
+    private void ensureCapacity(int capacity) {
+        if(capacity > positions.length) {
+            int newCapacity = Math.max(capacity, positions.length + (positions.length >> 1));
+            positions = Arrays.copyOf(positions, newCapacity);
+            sizes = Arrays.copyOf(sizes, newCapacity);
+        }
+    }
+    private void checkIndex(int index) {
+        if(index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("index");
+        }
+    }
+    //-------------------------------------------------------------------------
+    private static long toPosition(int dataFileId, int offset) {
+        return ((long)dataFileId << 32) | (offset & 0xFFFFFFFFL);
+    }
+    //endregion
+    public LocationStore() {
+        this(DEFAULT_CAPACITY);
+    }
+    public LocationStore(int capacity) {
+        if(capacity < 0) {
+            throw new IndexOutOfBoundsException("capacity");
+        }
+
+        positions = new long[capacity];
+        sizes = new int[capacity];
+    }
+
+    //-------------------------------------------------------------------------
+    public int size() {
+        return count;
+    }
+    public boolean isEmpty() {
+        return count == 0;
+    }
+    public long getTotalSize() {
+        long totalSize = 0;
+        for(int i = 0; i < count; ++i) {
+            totalSize += sizes[i];
+        }
+        return totalSize;
+    }
+    //-------------------------------------------------------------------------
+    public int getDataFileId(int index) {
+        checkIndex(index);
+        return (int)(positions[index] >>> 32);
+    }
+    public int getOffset(int index) {
+        checkIndex(index);
+        return (int)positions[index];
+    }
+    public int getSize(int index) {
+        checkIndex(index);
+        return sizes[index];
+    }
+    public int indexOf(int dataFileId, int offset) {
+        //the store must be sorted
+        return Math.max(-1, Arrays.binarySearch(positions, 0, count, toPosition(dataFileId, offset)));
+    }
+    public Location getLocation(int index, Location target) {
+        if(target == null) {
+            throw new NullPointerException("target");
+        }
+        checkIndex(index);
+
+        target.setDataFileId((int)(positions[index] >>> 32));
+        target.setOffset((int)positions[index]);
+        target.setSize(sizes[index]);
+        return target;
+    }
+    //-------------------------------------------------------------------------
+    @Override
+    public void add(Location location) {
+        if(location == null) {
+            throw new NullPointerException("location");
+        }
+
+        add(location.getDataFileId(), location.getOffset(), location.getSize());
+    }
+    public void add(int dataFileId, int offset, int size) {
+        if(dataFileId < 0) {
+            throw new IndexOutOfBoundsException("dataFileId");
+        }
+        if(offset < 0) {
+            throw new IndexOutOfBoundsException("offset");
+        }
+
+        ensureCapacity(count + 1);
+        positions[count] = toPosition(dataFileId, offset);
+        sizes[count] = size;
+        ++count;
+    }
+    public void clear() {
+        count = 0;
+    }
+    //-------------------------------------------------------------------------
+    public void sort() {
+        if(count < 2) {
+            return;
+        }
+
+        long[] sourcePositions = positions;
+        int[] sourceSizes = sizes;
+        long[] targetPositions = new long[count];
+        int[] targetSizes = new int[count];
+        int[] counts = new int[RADIX_SIZE];
+
+        //LSD radix sort, digits that are equal for every entry are skipped
+        for(int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for(int i = 0; i < count; ++i) {
+                ++counts[(int)(sourcePositions[i] >>> shift) & (RADIX_SIZE - 1)];
+            }
+            if(counts[(int)(sourcePositions[0] >>> shift) & (RADIX_SIZE - 1)] == count) {
+                continue;
+            }
+
+            for(int i = 0, total = 0; i < RADIX_SIZE; ++i) {
+                int digitCount = counts[i];
+                counts[i] = total;
+                total += digitCount;
+            }
+            for(int i = 0; i < count; ++i) {
+                int target = counts[(int)(sourcePositions[i] >>> shift) & (RADIX_SIZE - 1)]++;
+                targetPositions[target] = sourcePositions[i];
+                targetSizes[target] = sourceSizes[i];
+            }
+
+            long[] swapPositions = sourcePositions;
+            sourcePositions = targetPositions;
+            targetPositions = swapPositions;
+
+            int[] swapSizes = sourceSizes;
+            sourceSizes = targetSizes;
+            targetSizes = swapSizes;
+        }
+
+        if(sourcePositions != positions) {
+            System.arraycopy(sourcePositions, 0, positions, 0, count);
+            System.arraycopy(sourceSizes, 0, sizes, 0, count);
+        }
+    }
+    //-------------------------------------------------------------------------
+}
@@ -2,52 +2,93 @@ package org.hill30.activemq.kahadb.optimizer.locations;
 
 import org.apache.activemq.store.kahadb.disk.journal.Location;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Set;
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
 
-import static org.hill30.activemq.Utils.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
 
 public final class MessageLocation {
     //region private
-    private final String messageId;
-    private final String destinationId;
+    private final int producerId;
+    private final long sequenceId;
+    private final int destinationId;
     //-------------------------------------------------------------------------
-    private final Set<String> pendingAckSubscriptionKeys = new HashSet<>();
+    //bit per subscription ordinal of the destination, shared with the destination until the first change
+    private long[] pendingAckSubscriptions;
+    private boolean pendingAckSubscriptionsShared;
+    private int pendingAckCount;
     private final LinkedList<AckMessageLocation> ackMessageLocations = new LinkedList<>();
     //-------------------------------------------------------------------------
     private Location location;
+    //-------------------------------------------------------------------------
+    private boolean isPendingAckSubscription(int subscriptionOrdinal) {
+        int word = subscriptionOrdinal >>> 6;
+        return pendingAckSubscriptions != null
+                && word < pendingAckSubscriptions.length
+                && (pendingAckSubscriptions[word] & (1L << subscriptionOrdinal)) != 0;
+    }
+    private void ensureOwnPendingAckSubscriptions(int subscriptionOrdinal) {
+        int length = Math.max((subscriptionOrdinal >>> 6) + 1, pendingAckSubscriptions == null ? 0 : pendingAckSubscriptions.length);
+
+        if(pendingAckSubscriptions == null) {
+            pendingAckSubscriptions = new long[length];
+        }
+        else if(pendingAckSubscriptionsShared || length > pendingAckSubscriptions.length) {
+            pendingAckSubscriptions = Arrays.copyOf(pendingAckSubscriptions, length);
+        }
+        pendingAckSubscriptionsShared = false;
+    }
+    private boolean clearPendingAckSubscription(int subscriptionOrdinal) {
+        if(!isPendingAckSubscription(subscriptionOrdinal)) {
+            return false;
+        }
+
+        ensureOwnPendingAckSubscriptions(subscriptionOrdinal);
+        pendingAckSubscriptions[subscriptionOrdinal >>> 6] &= ~(1L << subscriptionOrdinal);
+        --pendingAckCount;
+        return true;
+    }
     //endregion
-    public MessageLocation(String messageId, String destinationId, Location location) {
-        this(messageId, destinationId, location, null);
+    public MessageLocation(int producerId, long sequenceId, int destinationId, Location location) {
+        this(producerId, sequenceId, destinationId, location, null, 0);
     }
-    public MessageLocation(String messageId, String destinationId, Location location, SubscriptionLocation[] subscriptionLocations) {
-        if(isNullOrEmpty(messageId)) {
-            throw new NullPointerException("messageId");
+    public MessageLocation(int producerId, long sequenceId, int destinationId, Location location, long[] sharedPendingAckSubscriptions, int pendingAckCount) {
+        if(producerId < 0) {
+            throw new IndexOutOfBoundsException("producerId");
         }
-        if(isNullOrEmpty(destinationId)) {
-            throw new NullPointerException("destinationId");
+        if(destinationId < 0) {
+            throw new IndexOutOfBoundsException("destinationId");
         }
         if(location == null) {
             throw new NullPointerException("location");
         }
+        if(pendingAckCount < 0) {
+            throw new IndexOutOfBoundsException("pendingAckCount");
+        }
 
-        this.messageId = messageId;
+        this.producerId = producerId;
+        this.sequenceId = sequenceId;
         this.destinationId = destinationId;
         this.location = location;
 
-        if(subscriptionLocations != null) {
-            for (SubscriptionLocation subscriptionLocation : subscriptionLocations) {
-                pendingAckSubscriptionKeys.add(subscriptionLocation.getSubscriptionKey());
-            }
+        if(sharedPendingAckSubscriptions != null && pendingAckCount != 0) {
+            this.pendingAckSubscriptions = sharedPendingAckSubscriptions;
+            this.pendingAckSubscriptionsShared = true;
+            this.pendingAckCount = pendingAckCount;
         }
     }
 
     //-------------------------------------------------------------------------
-    public String getMessageId() {
-        return messageId;
+    public int getProducerId() {
+        return producerId;
+    }
+    public long getSequenceId() {
+        return sequenceId;
     }
-    public String getDestinationId() {
+    public int getDestinationId() {
         return destinationId;
     }
     public Location getLocation() {
@@ -55,35 +96,47 @@ public final class MessageLocation {
     }
     //-------------------------------------------------------------------------
     public boolean hasAllAcks() {
-        return pendingAckSubscriptionKeys.size() == 0 && ackMessageLocations.size() != 0;
+        return pendingAckCount == 0 && ackMessageLocations.size() != 0;
+    }
+    public int getPendingAckCount() {
+        return pendingAckCount;
     }
     //-------------------------------------------------------------------------
     public AckMessageLocation[] getAckMessageLocations() {
         AckMessageLocation[] result = new AckMessageLocation[ackMessageLocations.size()];
         return ackMessageLocations.toArray(result);
     }
-    public void addAckLocation(String subscriptionKey, Location location) {
-        if(isNullOrEmpty(subscriptionKey)) {
-            throw new NullPointerException("subscriptionKey");
+    public void addAckLocation(int subscriptionOrdinal, int subscriptionKey, Location location) {
+        if(subscriptionOrdinal < 0) {
+            throw new IndexOutOfBoundsException("subscriptionOrdinal");
         }
         if(location == null) {
             throw new NullPointerException("location");
         }
 
-        if(pendingAckSubscriptionKeys.remove(subscriptionKey)) {
+        if(clearPendingAckSubscription(subscriptionOrdinal)) {
             ackMessageLocations.add(new AckMessageLocation(subscriptionKey, location));
         }
     }
     //-------------------------------------------------------------------------
-    public void addPendingSubscriptionKey(String subscriptionKey) {
-        if(isNullOrEmpty(subscriptionKey)) {
-            throw new NullPointerException("subscriptionKey");
+    public boolean hasPendingSubscription(int subscriptionOrdinal) {
+        return subscriptionOrdinal >= 0 && isPendingAckSubscription(subscriptionOrdinal);
+    }
+    public void addPendingSubscription(int subscriptionOrdinal) {
+        if(subscriptionOrdinal < 0) {
+            throw new IndexOutOfBoundsException("subscriptionOrdinal");
         }
 
-        pendingAckSubscriptionKeys.add(subscriptionKey);
+        if(!isPendingAckSubscription(subscriptionOrdinal)) {
+            ensureOwnPendingAckSubscriptions(subscriptionOrdinal);
+            pendingAckSubscriptions[subscriptionOrdinal >>> 6] |= 1L << subscriptionOrdinal;
+            ++pendingAckCount;
+        }
     }
-    public void removePendingSubscriptionKey(String subscriptionKey) {
-        pendingAckSubscriptionKeys.remove(subscriptionKey);
+    public void removePendingSubscription(int subscriptionOrdinal) {
+        if(subscriptionOrdinal >= 0) {
+            clearPendingAckSubscription(subscriptionOrdinal);
+        }
     }
     //-------------------------------------------------------------------------
     public void updateLocation(Location location) {
@@ -94,4 +147,51 @@ public final class MessageLocation {
         this.location = location;
     }
     //-------------------------------------------------------------------------
+    public void write(DataOutput output) throws IOException {
+        if(output == null) {
+            throw new NullPointerException("output");
+        }
+
+        output.writeInt(producerId);
+        output.writeLong(sequenceId);
+        output.writeInt(destinationId);
+        writeLocation(output, location);
+
+        output.writeInt(pendingAckCount);
+        output.writeInt(pendingAckSubscriptions == null ? 0 : pendingAckSubscriptions.length);
+        if(pendingAckSubscriptions != null) {
+            for (long pendingAckSubscription : pendingAckSubscriptions) {
+                output.writeLong(pendingAckSubscription);
+            }
+        }
+
+        output.writeInt(ackMessageLocations.size());
+        for (AckMessageLocation ackMessageLocation : ackMessageLocations) {
+            output.writeInt(ackMessageLocation.getSubscriptionKey());
+            writeLocation(output, ackMessageLocation.getLocation());
+        }
+    }
+    public static MessageLocation read(DataInput input) throws IOException {
+        if(input == null) {
+            throw new NullPointerException("input");
+        }
+
+        MessageLocation messageLocation = new MessageLocation(input.readInt(), input.readLong(), input.readInt(), readLocation(input));
+
+        messageLocation.pendingAckCount = input.readInt();
+        int words = input.readInt();
+        if(words != 0) {
+            messageLocation.pendingAckSubscriptions = new long[words];
+            for(int i = 0; i < words; ++i) {
+                messageLocation.pendingAckSubscriptions[i] = input.readLong();
+            }
+        }
+
+        int acks = input.readInt();
+        for(int i = 0; i < acks; ++i) {
+            messageLocation.ackMessageLocations.add(new AckMessageLocation(input.readInt(), readLocation(input)));
+        }
+        return messageLocation;
+    }
+    //-------------------------------------------------------------------------
 }
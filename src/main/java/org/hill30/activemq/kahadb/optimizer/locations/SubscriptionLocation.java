@@ -2,20 +2,22 @@ package org.hill30.activemq.kahadb.optimizer.locations;
 
 import org.apache.activemq.store.kahadb.disk.journal.Location;
 
-import static org.hill30.activemq.Utils.*;
-
 public final class SubscriptionLocation {
     //region private
-    private final String subscriptionKey;
-    private final String destinationId;
+    private final int subscriptionKey;
+    private final int destinationId;
+    private final int subscriptionOrdinal;
     private final Location location;
     //endregion
-    public SubscriptionLocation(String subscriptionKey, String destinationId, Location location) {
-        if(isNullOrEmpty(subscriptionKey)) {
-            throw new NullPointerException("subscriptionKey");
+    public SubscriptionLocation(int subscriptionKey, int destinationId, int subscriptionOrdinal, Location location) {
+        if(subscriptionKey < 0) {
+            throw new IndexOutOfBoundsException("subscriptionKey");
+        }
+        if(destinationId < 0) {
+            throw new IndexOutOfBoundsException("destinationId");
         }
-        if(isNullOrEmpty(destinationId)) {
-            throw new NullPointerException("destinationId");
+        if(subscriptionOrdinal < 0) {
+            throw new IndexOutOfBoundsException("subscriptionOrdinal");
         }
         if(location == null) {
             throw new NullPointerException("location");
@@ -23,16 +25,20 @@ public final class SubscriptionLocation {
 
         this.subscriptionKey = subscriptionKey;
         this.destinationId = destinationId;
+        this.subscriptionOrdinal = subscriptionOrdinal;
         this.location = location;
     }
 
     //-------------------------------------------------------------------------
-    public String getSubscriptionKey() {
+    public int getSubscriptionKey() {
         return subscriptionKey;
     }
-    public String getDestinationId() {
+    public int getDestinationId() {
         return destinationId;
     }
+    public int getSubscriptionOrdinal() {
+        return subscriptionOrdinal;
+    }
     public Location getLocation() {
         return location;
     }
@@ -0,0 +1,190 @@
+package org.hill30.activemq.kahadb.reader;
+
+import org.hill30.activemq.kahadb.utils.KahaDBTransactionIdConversion;
+
+import org.apache.activemq.store.kahadb.JournalCommand;
+import org.apache.activemq.store.kahadb.data.*;
+
+import java.util.EnumSet;
+import java.util.regex.Pattern;
+
+import static org.hill30.activemq.Utils.*;
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+
+public final class JournalsReaderFilter {
+    //region private
+    private EnumSet<KahaEntryType> commandTypes = null;
+    private String destination = null;
+    private Pattern destinationPattern = null;
+    private String messageId = null;
+    private String transactionId = null;
+    private String subscriptionKey = null;
+    private int firstDataFileId = 0;
+    private int lastDataFileId = Integer.MAX_VALUE;
+    //-------------------------------------------------------------------------
+    private final StringBuilder transactionIdBuilder = new StringBuilder();
+    //-------------------------------------------------------------------------
+    private static KahaEntryType parseCommandType(String name) {
+        //"KAHA_ADD_MESSAGE_COMMAND", "add_message_command", "add_message" and "add" are the same type
+        String typeName = name.trim().toUpperCase();
+        for (String candidate : new String[] {typeName, "KAHA_" + typeName, typeName + "_COMMAND", "KAHA_" + typeName + "_COMMAND", "KAHA_" + typeName + "_MESSAGE_COMMAND"}) {
+            for (KahaEntryType commandType : KahaEntryType.values()) {
+                if(commandType.name().equals(candidate)) {
+                    return commandType;
+                }
+            }
+        }
+        throw new IllegalArgumentException("commandTypes: " + name);
+    }
+    private static Pattern globToPattern(String glob) {
+        //only '*' and '?' are wildcards, the rest of the name is matched as it is
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for(int i = 0; i < glob.length(); ++i) {
+            char c = glob.charAt(i);
+            if(c == '*' || c == '?') {
+                if(literal.length() != 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            }
+            else {
+                literal.append(c);
+            }
+        }
+        if(literal.length() != 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+    //endregion
+    //-------------------------------------------------------------------------
+    public EnumSet<KahaEntryType> getCommandTypes() {
+        return commandTypes == null ? null : EnumSet.copyOf(commandTypes);
+    }
+    public void setCommandTypes(EnumSet<KahaEntryType> commandTypes) {
+        this.commandTypes = commandTypes == null || commandTypes.isEmpty() ? null : EnumSet.copyOf(commandTypes);
+    }
+    public void setCommandTypes(String commandTypes) {
+        if(isNullOrEmpty(commandTypes)) {
+            this.commandTypes = null;
+            return;
+        }
+
+        EnumSet<KahaEntryType> parsedCommandTypes = EnumSet.noneOf(KahaEntryType.class);
+        for (String name : commandTypes.split(",")) {
+            if(!name.trim().isEmpty()) {
+                parsedCommandTypes.add(parseCommandType(name));
+            }
+        }
+        setCommandTypes(parsedCommandTypes);
+    }
+    public String getDestination() {
+        return destination;
+    }
+    public void setDestination(String destination) {
+        this.destination = isNullOrEmpty(destination) ? null : destination;
+        this.destinationPattern = this.destination == null ? null : globToPattern(destination);
+    }
+    public String getMessageId() {
+        return messageId;
+    }
+    public void setMessageId(String messageId) {
+        this.messageId = isNullOrEmpty(messageId) ? null : messageId;
+    }
+    public String getTransactionId() {
+        return transactionId;
+    }
+    public void setTransactionId(String transactionId) {
+        this.transactionId = isNullOrEmpty(transactionId) ? null : transactionId;
+    }
+    public String getSubscriptionKey() {
+        return subscriptionKey;
+    }
+    public void setSubscriptionKey(String subscriptionKey) {
+        this.subscriptionKey = isNullOrEmpty(subscriptionKey) ? null : subscriptionKey;
+    }
+    //-------------------------------------------------------------------------
+    public int getFirstDataFileId() {
+        return firstDataFileId;
+    }
+    public int getLastDataFileId() {
+        return lastDataFileId;
+    }
+    public void setDataFileRange(int firstDataFileId, int lastDataFileId) {
+        if(firstDataFileId < 0) {
+            throw new IndexOutOfBoundsException("firstDataFileId");
+        }
+        if(lastDataFileId < firstDataFileId) {
+            throw new IndexOutOfBoundsException("lastDataFileId");
+        }
+
+        this.firstDataFileId = firstDataFileId;
+        this.lastDataFileId = lastDataFileId;
+    }
+    public void setDataFileRange(String dataFileRange) {
+        if(isNullOrEmpty(dataFileRange)) {
+            setDataFileRange(0, Integer.MAX_VALUE);
+            return;
+        }
+
+        //"<id>", "<first>-<last>", "<first>-" or "-<last>"
+        int separator = dataFileRange.indexOf('-');
+        if(separator < 0) {
+            int dataFileId = Integer.parseInt(dataFileRange.trim());
+            setDataFileRange(dataFileId, dataFileId);
+        }
+        else {
+            String first = dataFileRange.substring(0, separator).trim();
+            String last = dataFileRange.substring(separator + 1).trim();
+            setDataFileRange(first.isEmpty() ? 0 : Integer.parseInt(first), last.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(last));
+        }
+    }
+    //-------------------------------------------------------------------------
+    public boolean hasCommandFilter() {
+        return destinationPattern != null || messageId != null || transactionId != null || subscriptionKey != null;
+    }
+    public boolean accept(KahaEntryType commandType) {
+        if(commandType == null) {
+            throw new NullPointerException("commandType");
+        }
+
+        return commandTypes == null || commandTypes.contains(commandType);
+    }
+    public boolean accept(JournalCommand<?> command) {
+        if(command == null) {
+            throw new NullPointerException("command");
+        }
+        if(!hasCommandFilter()) {
+            return true;
+        }
+
+        //a command without the filtered field never matches
+        if(destinationPattern != null) {
+            KahaDestination commandDestination = getCommandDestination(command);
+            if(commandDestination == null || !destinationPattern.matcher(commandDestination.getName()).matches()) {
+                return false;
+            }
+        }
+        if(messageId != null && !messageId.equals(getCommandMessageId(command))) {
+            return false;
+        }
+        if(subscriptionKey != null && !subscriptionKey.equals(getCommandSubscriptionKey(command))) {
+            return false;
+        }
+        if(transactionId != null) {
+            KahaTransactionInfo transactionInfo = getCommandTransactionInfo(command);
+            if(transactionInfo == null) {
+                return false;
+            }
+
+            transactionIdBuilder.setLength(0);
+            if(!transactionId.contentEquals(KahaDBTransactionIdConversion.append(transactionIdBuilder, transactionInfo))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    //-------------------------------------------------------------------------
+}
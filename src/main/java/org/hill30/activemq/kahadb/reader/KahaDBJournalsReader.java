@@ -1,6 +1,10 @@
 package org.hill30.activemq.kahadb.reader;
 
+import org.hill30.activemq.kahadb.utils.KahaDBJournalScanner;
 import org.hill30.activemq.kahadb.utils.KahaDBTransactionIdConversion;
+import org.hill30.activemq.kahadb.utils.export.ExportFormat;
+import org.hill30.activemq.kahadb.utils.export.ExportSchema;
+import org.hill30.activemq.kahadb.utils.export.ExportWriter;
 
 import org.apache.activemq.ActiveMQMessageAuditNoSync;
 import org.apache.activemq.command.SubscriptionInfo;
@@ -10,13 +14,14 @@ import org.apache.activemq.store.kahadb.JournalCommand;
 import org.apache.activemq.store.kahadb.data.*;
 import org.apache.activemq.store.kahadb.disk.journal.Journal;
 import org.apache.activemq.store.kahadb.disk.journal.Location;
-import org.apache.activemq.store.kahadb.disk.util.DataByteArrayInputStream;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.wireformat.WireFormat;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.OutputStream;
 import java.nio.file.NotDirectoryException;
 import java.util.Map;
 import java.util.Set;
@@ -26,7 +31,32 @@ import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
 
 public final class KahaDBJournalsReader {
     //region private
+    private static final int COLUMN_DIRECTORY = 0;
+    private static final int COLUMN_FILE = 1;
+    private static final int COLUMN_OFFSET = 2;
+    private static final int COLUMN_SIZE = 3;
+    private static final int COLUMN_TYPE = 4;
+    private static final int COLUMN_DESTINATION_TYPE = 5;
+    private static final int COLUMN_DESTINATION = 6;
+    private static final int COLUMN_MESSAGE_ID = 7;
+    private static final int COLUMN_TRANSACTION_ID = 8;
+    private static final int COLUMN_SUBSCRIPTION_KEY = 9;
+    private static final int COLUMN_CLIENT_ID = 10;
+    private static final int COLUMN_INFO = 11;
+    //the revers command types are written with a leading '-' like in the shown data
+    private static final String[] REVERS_COMMAND_TYPES = new String[KahaEntryType.values().length];
+    static {
+        for (KahaEntryType commandType : KahaEntryType.values()) {
+            REVERS_COMMAND_TYPES[commandType.ordinal()] = "-" + commandType;
+        }
+    }
+    //-------------------------------------------------------------------------
     private final boolean showFileMapCommand;
+    private ExportFormat exportFormat = null;
+    private String exportFilePath = null;
+    private JournalsReaderFilter filter = null;
+    //-------------------------------------------------------------------------
+    private final StringBuilder transactionIdBuilder = new StringBuilder();
     //-------------------------------------------------------------------------
     private void showData(File sourceDir, boolean useAnyKeyToContinue) throws IOException {
         showJournalData(createJournal(sourceDir), useAnyKeyToContinue);
@@ -52,38 +82,47 @@ public final class KahaDBJournalsReader {
             int fileIndex = 0;
             int dataIndex = 0;
             File lastFile = null;
+            File shownFile = null;
 
-            Location location = journal.getNextLocation(null);
-            while (location != null) {
-                File nextFile = journal.getFile(location.getDataFileId());
+            KahaDBJournalScanner scanner = createScanner(journal);
+            while (scanner.next()) {
+                File nextFile = scanner.getFile();
                 if(lastFile == null || !lastFile.equals(nextFile)) {
-                    if(lastFile != null) {
+                    lastFile = nextFile;
+                    dataIndex = 1;
+                }
+                else {
+                    ++dataIndex;
+                }
+
+                //the index is the record number in the journal file, filtered records are counted too
+                JournalCommand<?> command = readFilteredCommand(scanner);
+                if(command == null) {
+                    continue;
+                }
+
+                //a journal file is shown with its first shown record, files without one are left out
+                if(shownFile != lastFile) {
+                    if(shownFile != null) {
                         showSeparator();
                     }
 
-                    if(useAnyKeyToContinue && lastFile != null) {
+                    if(useAnyKeyToContinue && shownFile != null) {
                         pressAnyKeyToContinue();
                         showSeparator();
                     }
 
-                    lastFile = nextFile;
-                    dataIndex = 1;
+                    shownFile = lastFile;
                     ++fileIndex;
 
-                    System.out.printf("(%s) Journal: '%s'.\r\n", fileIndex, lastFile);
+                    System.out.printf("(%s) Journal: '%s'.\r\n", fileIndex, shownFile);
                     System.out.println();
                 }
-                else {
-                    ++dataIndex;
-                }
-
-                ByteSequence sequence = journal.read(location);
-                showJournalData(sequence, dataIndex);
 
-                location = journal.getNextLocation(location);
+                showJournalData(command, dataIndex);
             }
 
-            if(lastFile != null) {
+            if(shownFile != null) {
                 showSeparator();
             }
         }
@@ -97,24 +136,185 @@ public final class KahaDBJournalsReader {
             catch (IOException e) {}
         }
     }
-    private void showJournalData(ByteSequence sequence, int dataIndex) throws IOException {
-        DataByteArrayInputStream sequenceDataStream = new DataByteArrayInputStream(sequence);
-        KahaEntryType commandType = KahaEntryType.valueOf(sequenceDataStream.readByte());
+    private void showJournalData(JournalCommand<?> command, int dataIndex) {
+        KahaEntryType commandType = command.type();
+        String info = getCommandInfo(commandType, command);
+        String commandTypeStr = isReversCommand(commandType, command) ? "-" + commandType.toString() : commandType.toString();
+        if (info == null || info.isEmpty()) {
+            System.out.printf("%s CommandType: %s.\r\n", dataIndex, commandTypeStr);
+        }
+        else {
+            System.out.printf("%s CommandType: %s - %s.\r\n", dataIndex, commandTypeStr, info);
+        }
+    }
+    //-------------------------------------------------------------------------
+    private KahaDBJournalScanner createScanner(Journal journal) {
+        //journal files out of the range are never read
+        return filter == null
+                ? new KahaDBJournalScanner(journal)
+                : new KahaDBJournalScanner(journal, filter.getFirstDataFileId(), filter.getLastDataFileId());
+    }
+    private JournalCommand<?> readFilteredCommand(KahaDBJournalScanner scanner) throws IOException {
+        //the type is the first byte, other commands are rejected before their record is copied or decoded
+        KahaEntryType commandType = scanner.getCommandType();
+        if(!showCommandAvailable(commandType) || (filter != null && !filter.accept(commandType))) {
+            return null;
+        }
 
-        JournalCommand<?> command = (JournalCommand<?>)commandType.createMessage();
-        command.mergeFramed(sequenceDataStream);
+        ByteSequence sequence = scanner.getSequence();
+        //message bodies are never shown, file maps and audits are the only commands shown with their payload
+        boolean showPayload = commandType == KahaEntryType.KAHA_ACK_MESSAGE_FILE_MAP_COMMAND || commandType == KahaEntryType.KAHA_PRODUCER_AUDIT_COMMAND;
+        JournalCommand<?> command = showPayload ? readCommand(sequence) : readCommandHeader(sequence);
+        return filter == null || filter.accept(command) ? command : null;
+    }
+    //-------------------------------------------------------------------------
+    private void exportData(File sourceDir, ExportWriter exportWriter) throws IOException {
+        exportJournalData(createJournal(sourceDir), exportWriter);
         //---------------------------------------------------------------------
-        if(showCommandAvailable(commandType)) {
-            String info = getCommandInfo(commandType, command);
-            String commandTypeStr = isReversCommand(commandType, command) ? "-" + commandType.toString() : commandType.toString();
-            if (info == null || info.isEmpty()) {
-                System.out.printf("%s CommandType: %s.\r\n", dataIndex, commandTypeStr);
+        for (File sourceSubDir : sourceDir.listFiles()) {
+            if(sourceSubDir.isDirectory()) {
+                exportData(sourceSubDir, exportWriter);
             }
-            else {
-                System.out.printf("%s CommandType: %s - %s.\r\n", dataIndex, commandTypeStr, info);
+        }
+        //---------------------------------------------------------------------
+    }
+    private void exportJournalData(Journal journal, ExportWriter exportWriter) {
+        try {
+            journal.start();
+
+            String directory = journal.getDirectory().getPath();
+            KahaDBJournalScanner scanner = createScanner(journal);
+            while (scanner.next()) {
+                exportJournalData(exportWriter, directory, scanner);
+            }
+        }
+        catch (Throwable throwable) {
+            showException(throwable);
+        }
+        finally {
+            try {
+                journal.close();
+            }
+            catch (IOException e) {}
+        }
+    }
+    private void exportJournalData(ExportWriter exportWriter, String directory, KahaDBJournalScanner scanner) throws IOException {
+        JournalCommand<?> command = readFilteredCommand(scanner);
+        if(command == null) {
+            return;
+        }
+        Location location = scanner.getLocation();
+        KahaEntryType commandType = command.type();
+        //---------------------------------------------------------------------
+        //the fields are written as they are, no record text is built
+        exportWriter.setString(COLUMN_DIRECTORY, directory);
+        exportWriter.setLong(COLUMN_FILE, location.getDataFileId());
+        exportWriter.setLong(COLUMN_OFFSET, location.getOffset());
+        exportWriter.setLong(COLUMN_SIZE, location.getSize());
+        exportWriter.setString(COLUMN_TYPE, isReversCommand(commandType, command) ? REVERS_COMMAND_TYPES[commandType.ordinal()] : commandType.name());
+        exportCommandInfo(exportWriter, commandType, command);
+        exportWriter.endRecord();
+    }
+    private void exportCommandInfo(ExportWriter exportWriter, KahaEntryType commandType, JournalCommand<?> command) {
+        switch (commandType) {
+            case KAHA_ADD_MESSAGE_COMMAND: {
+                exportCommandInfo(exportWriter, (KahaAddMessageCommand)command);
+                break;
+            }
+            case KAHA_UPDATE_MESSAGE_COMMAND: {
+                exportCommandInfo(exportWriter, ((KahaUpdateMessageCommand)command).getMessage());
+                break;
+            }
+            case KAHA_REMOVE_MESSAGE_COMMAND: {
+                KahaRemoveMessageCommand removeMessageCommand = (KahaRemoveMessageCommand)command;
+                exportDestination(exportWriter, removeMessageCommand.getDestination());
+                exportWriter.setString(COLUMN_MESSAGE_ID, removeMessageCommand.getMessageId());
+                if(removeMessageCommand.hasTransactionInfo()) {
+                    exportWriter.setString(COLUMN_TRANSACTION_ID, getTransactionId(removeMessageCommand.getTransactionInfo()));
+                }
+                if(removeMessageCommand.hasSubscriptionKey()) {
+                    exportWriter.setString(COLUMN_SUBSCRIPTION_KEY, removeMessageCommand.getSubscriptionKey());
+                }
+                break;
+            }
+            case KAHA_REMOVE_DESTINATION_COMMAND: {
+                exportDestination(exportWriter, ((KahaRemoveDestinationCommand)command).getDestination());
+                break;
+            }
+            case KAHA_SUBSCRIPTION_COMMAND: {
+                KahaSubscriptionCommand subscriptionCommand = (KahaSubscriptionCommand)command;
+                exportDestination(exportWriter, subscriptionCommand.getDestination());
+                if(subscriptionCommand.hasSubscriptionInfo()) {
+                    exportWriter.setString(COLUMN_CLIENT_ID, getClientId(subscriptionCommand));
+                }
+                exportWriter.setString(COLUMN_SUBSCRIPTION_KEY, subscriptionCommand.getSubscriptionKey());
+                break;
+            }
+            case KAHA_COMMIT_COMMAND: {
+                KahaCommitCommand commitCommand = (KahaCommitCommand)command;
+                if(commitCommand.hasTransactionInfo()) {
+                    exportWriter.setString(COLUMN_TRANSACTION_ID, getTransactionId(commitCommand.getTransactionInfo()));
+                }
+                break;
             }
+            case KAHA_PREPARE_COMMAND: {
+                KahaPrepareCommand prepareCommand = (KahaPrepareCommand)command;
+                if(prepareCommand.hasTransactionInfo()) {
+                    exportWriter.setString(COLUMN_TRANSACTION_ID, getTransactionId(prepareCommand.getTransactionInfo()));
+                }
+                break;
+            }
+            case KAHA_ROLLBACK_COMMAND: {
+                KahaRollbackCommand rollbackCommand = (KahaRollbackCommand)command;
+                if(rollbackCommand.hasTransactionInfo()) {
+                    exportWriter.setString(COLUMN_TRANSACTION_ID, getTransactionId(rollbackCommand.getTransactionInfo()));
+                }
+                break;
+            }
+            default: {
+                //file maps, audits and traces are rare, their text is kept as it is shown
+                String info = getCommandInfo(commandType, command);
+                if(!isNullOrEmpty(info)) {
+                    exportWriter.setString(COLUMN_INFO, info);
+                }
+                break;
+            }
+        }
+    }
+    private void exportCommandInfo(ExportWriter exportWriter, KahaAddMessageCommand command) {
+        exportDestination(exportWriter, command.getDestination());
+        exportWriter.setString(COLUMN_MESSAGE_ID, command.getMessageId());
+        if(command.hasTransactionInfo()) {
+            exportWriter.setString(COLUMN_TRANSACTION_ID, getTransactionId(command.getTransactionInfo()));
+        }
+    }
+    private void exportDestination(ExportWriter exportWriter, KahaDestination destination) {
+        if(destination != null) {
+            exportWriter.setString(COLUMN_DESTINATION_TYPE, destination.getType().name());
+            exportWriter.setString(COLUMN_DESTINATION, destination.getName());
         }
     }
+    private CharSequence getTransactionId(KahaTransactionInfo transactionInfo) {
+        transactionIdBuilder.setLength(0);
+        return KahaDBTransactionIdConversion.append(transactionIdBuilder, transactionInfo);
+    }
+    //-------------------------------------------------------------------------
+    private static ExportSchema createExportSchema() {
+        ExportSchema schema = new ExportSchema();
+        schema.addColumn("directory", ExportSchema.ColumnType.SYMBOL);
+        schema.addColumn("file", ExportSchema.ColumnType.LONG);
+        schema.addColumn("offset", ExportSchema.ColumnType.LONG);
+        schema.addColumn("size", ExportSchema.ColumnType.LONG);
+        schema.addColumn("type", ExportSchema.ColumnType.SYMBOL);
+        schema.addColumn("destinationType", ExportSchema.ColumnType.SYMBOL);
+        schema.addColumn("destination", ExportSchema.ColumnType.SYMBOL);
+        schema.addColumn("messageId", ExportSchema.ColumnType.STRING);
+        schema.addColumn("transactionId", ExportSchema.ColumnType.STRING);
+        schema.addColumn("subscriptionKey", ExportSchema.ColumnType.SYMBOL);
+        schema.addColumn("clientId", ExportSchema.ColumnType.SYMBOL);
+        schema.addColumn("info", ExportSchema.ColumnType.STRING);
+        return schema;
+    }
     //-------------------------------------------------------------------------
     private boolean showCommandAvailable(KahaEntryType commandType) {
         if(commandType == KahaEntryType.KAHA_ACK_MESSAGE_FILE_MAP_COMMAND) {
@@ -199,22 +399,26 @@ public final class KahaDBJournalsReader {
         String result = getDestinationInfo(destination);
 
         if(command.hasSubscriptionInfo()) {
-            try {
-                Buffer buffer = command.getSubscriptionInfo();
-                ByteSequence sequence = new ByteSequence(buffer.getData(), buffer.getOffset(), buffer.getLength());
-                WireFormat wireFormat = new OpenWireFormat();
-                SubscriptionInfo subscriptionInfo = (SubscriptionInfo)wireFormat.unmarshal(sequence);
-
-                result += ", ClientId: " + subscriptionInfo.getClientId();
-            } catch (Throwable throwable) {
-                showException(throwable);
-            }
+            result += ", ClientId: " + getClientId(command);
         }
 
         result += ", SubKey: " + command.getSubscriptionKey();
 
         return result;
     }
+    private String getClientId(KahaSubscriptionCommand command) {
+        try {
+            Buffer buffer = command.getSubscriptionInfo();
+            ByteSequence sequence = new ByteSequence(buffer.getData(), buffer.getOffset(), buffer.getLength());
+            WireFormat wireFormat = new OpenWireFormat();
+            SubscriptionInfo subscriptionInfo = (SubscriptionInfo)wireFormat.unmarshal(sequence);
+
+            return subscriptionInfo.getClientId();
+        } catch (Throwable throwable) {
+            showException(throwable);
+        }
+        return null;
+    }
     private String getCommandInfo(KahaAckMessageFileMapCommand command) {
         try {
             ObjectInputStream objectIn = new ObjectInputStream(command.getAckMessageFileMap().newInput());
@@ -262,6 +466,25 @@ public final class KahaDBJournalsReader {
         this.showFileMapCommand = showFileMapCommand;
     }
 
+    //-------------------------------------------------------------------------
+    public ExportFormat getExportFormat() {
+        return exportFormat;
+    }
+    public void setExportFormat(ExportFormat exportFormat) {
+        this.exportFormat = exportFormat;
+    }
+    public JournalsReaderFilter getFilter() {
+        return filter;
+    }
+    public void setFilter(JournalsReaderFilter filter) {
+        this.filter = filter;
+    }
+    public String getExportFilePath() {
+        return exportFilePath;
+    }
+    public void setExportFilePath(String exportFilePath) {
+        this.exportFilePath = exportFilePath;
+    }
     //-------------------------------------------------------------------------
     public void showData(String sourceDirPath, boolean useAnyKeyToContinue) throws NotDirectoryException {
         if(isNullOrEmpty(sourceDirPath)) {
@@ -274,7 +497,16 @@ public final class KahaDBJournalsReader {
         }
 
         try {
-            showData(sourceDir, useAnyKeyToContinue);
+            if(exportFormat != null) {
+                //the records go to the console when no file is given, without any other text
+                try (OutputStream output = isNullOrEmpty(exportFilePath) ? null : new FileOutputStream(exportFilePath);
+                     ExportWriter exportWriter = ExportWriter.create(exportFormat, output == null ? System.out : output, createExportSchema())) {
+                    exportData(sourceDir, exportWriter);
+                }
+            }
+            else {
+                showData(sourceDir, useAnyKeyToContinue);
+            }
         }
         catch (Throwable throwable) {
             showException(throwable);
@@ -1,17 +1,34 @@
 package org.hill30.activemq.kahadb.reader;
 
+import org.hill30.activemq.kahadb.utils.export.ExportFormat;
+
+import static org.hill30.activemq.Utils.*;
+
 public final class Run {
     public static void main(String[] args) throws Exception {
         if (args.length <= 0) {
-            System.out.println("usage KahaDBJournalsReader <journals directory>");
+            System.out.println("usage KahaDBJournalsReader <journals directory> [--type=<command types>] [--destination=<name or glob>] [--message=<message id>] [--transaction=<transaction id>] [--subscription=<subscription key>] [--files=<first id>-<last id>] [--export=<ndjson|csv|columnar>] [--output=<export file>]");
             System.exit(1);
         }
         //---------------------------------------------------------------------
         String sourceDirPath = args[0];
         boolean useAnyKeyToContinue = false;
         boolean showFileMapCommand = true;
+        String export = getArgumentValue(args, "export", null);
+        String exportFilePath = getArgumentValue(args, "output", null);
+        //---------------------------------------------------------------------
+        JournalsReaderFilter filter = new JournalsReaderFilter();
+        filter.setCommandTypes(getArgumentValue(args, "type", null));
+        filter.setDestination(getArgumentValue(args, "destination", null));
+        filter.setMessageId(getArgumentValue(args, "message", null));
+        filter.setTransactionId(getArgumentValue(args, "transaction", null));
+        filter.setSubscriptionKey(getArgumentValue(args, "subscription", null));
+        filter.setDataFileRange(getArgumentValue(args, "files", null));
         //---------------------------------------------------------------------
         KahaDBJournalsReader reader = new KahaDBJournalsReader(showFileMapCommand);
+        reader.setExportFormat(isNullOrEmpty(export) ? null : ExportFormat.parse(export));
+        reader.setExportFilePath(exportFilePath);
+        reader.setFilter(filter);
         reader.showData(sourceDirPath, useAnyKeyToContinue);
         //---------------------------------------------------------------------
     }
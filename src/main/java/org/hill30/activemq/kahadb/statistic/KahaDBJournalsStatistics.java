@@ -1,29 +1,98 @@
 package org.hill30.activemq.kahadb.statistic;
 ;
+import org.hill30.activemq.kahadb.optimizer.destinations.PoolDestinationData;
+import org.hill30.activemq.kahadb.statistic.statistics.JournalLivenessStatistic;
 import org.hill30.activemq.kahadb.statistic.statistics.JournalStatistic;
+import org.hill30.activemq.kahadb.statistic.statistics.SizeHistogram;
+import org.hill30.activemq.kahadb.statistic.statistics.StoreStatistic;
+import org.hill30.activemq.kahadb.statistic.statistics.TransactionStatistic;
 import org.hill30.activemq.kahadb.statistic.statistics.CommandStatistic;
 import org.hill30.activemq.kahadb.statistic.statistics.DestinationStatistic;
+import org.hill30.activemq.kahadb.utils.KahaDBJournalScanner;
+import org.hill30.activemq.kahadb.utils.KahaDBTransactionIdConversion;
+import org.hill30.activemq.kahadb.utils.export.ExportFormat;
+import org.hill30.activemq.kahadb.utils.export.ExportSchema;
+import org.hill30.activemq.kahadb.utils.export.ExportWriter;
 
+import org.apache.activemq.store.kahadb.data.KahaEntryType;
+import org.apache.activemq.store.kahadb.data.KahaTransactionInfo;
+import org.apache.activemq.store.kahadb.disk.journal.DataFile;
 import org.apache.activemq.store.kahadb.disk.journal.Journal;
 import org.apache.activemq.store.kahadb.disk.journal.Location;
-import org.apache.activemq.util.ByteSequence;
 
 import javax.management.OperationsException;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.NotDirectoryException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import static org.hill30.activemq.Utils.*;
 import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
 
 public final class KahaDBJournalsStatistics {
     //region private
+    private static final int LIVENESS_BAR_SIZE = 10;
+    //-------------------------------------------------------------------------
+    private static final int COLUMN_SCOPE = 0;
+    private static final int COLUMN_DIRECTORY = 1;
+    private static final int COLUMN_JOURNAL = 2;
+    //command statistics columns
+    private static final int COLUMN_LAST_JOURNAL = 3;
+    private static final int COLUMN_WINDOW = 4;
+    private static final int COLUMN_DESTINATION_TYPE = 5;
+    private static final int COLUMN_DESTINATION = 6;
+    private static final int COLUMN_TYPE = 7;
+    private static final int COLUMN_COUNT = 8;
+    private static final int COLUMN_TOTAL_SIZE = 9;
+    private static final int COLUMN_AVERAGE_SIZE = 10;
+    private static final int COLUMN_P50_SIZE = 11;
+    private static final int COLUMN_P99_SIZE = 12;
+    private static final int COLUMN_MAX_SIZE = 13;
+    private static final int COLUMN_LAST_SIZE = 14;
+    //liveness columns
+    private static final int COLUMN_LENGTH = 3;
+    private static final int COLUMN_LIVE_SIZE = 4;
+    private static final int COLUMN_DEAD_SIZE = 5;
+    private static final int COLUMN_LIVE_PERCENT = 6;
+    private static final int COLUMN_NAME = 7;
+    private static final int COLUMN_PINNED_SIZE = 8;
+    //transaction columns
+    private static final int COLUMN_LAST_TRANSACTION_JOURNAL = 3;
+    private static final int COLUMN_STATE = 4;
+    private static final int COLUMN_TRANSACTION_ID = 5;
+    private static final int COLUMN_RECORDS = 6;
+    private static final int COLUMN_SIZE = 7;
+    private static final int COLUMN_LIFETIME_RECORDS = 8;
+    private static final int COLUMN_LIFETIME_SIZE = 9;
+    //-------------------------------------------------------------------------
+    private boolean liveness = false;
+    private int livenessTop = 5;
+    private boolean transactions = false;
+    private boolean rollup = false;
+    private int rollupWindow = 0;
+    private ExportFormat exportFormat = null;
+    private String exportFilePath = null;
+    //-------------------------------------------------------------------------
+    private ExportWriter exportWriter;
+    //-------------------------------------------------------------------------
     private void showStatistic(File sourceDir, boolean useAnyKeyToContinue) throws IOException {
-        showJournalStatistic(createJournal(sourceDir), useAnyKeyToContinue);
+        if(transactions) {
+            showJournalTransactions(createJournal(sourceDir));
+        }
+        else if(liveness) {
+            showJournalLiveness(createJournal(sourceDir));
+        }
+        else {
+            showJournalStatistic(createJournal(sourceDir), useAnyKeyToContinue);
+        }
         //---------------------------------------------------------------------
         for (File sourceSubDir : sourceDir.listFiles()) {
             if(sourceSubDir.isDirectory()) {
-                if(useAnyKeyToContinue) {
+                if(useAnyKeyToContinue && exportWriter == null) {
                     showSeparator();
                     pressAnyKeyToContinue();
                 }
@@ -35,22 +104,28 @@ public final class KahaDBJournalsStatistics {
     //-------------------------------------------------------------------------
     private void showJournalStatistic(Journal journal, boolean useAnyKeyToContinue) {
         try {
-            showSeparator(2);
+            if(exportWriter == null) {
+                showSeparator(2);
+            }
 
             journal.start();
 
             int fileIndex = 0;
             JournalStatistic lastJournalStatistic = null;
             long headerSize = -1;
-            Location location = journal.getNextLocation(null);
-            while (location != null) {
-                File nextFile = journal.getFile(location.getDataFileId());
+            //the journal statistics are merged into the store ones as soon as the journal ends
+            StoreStatistic storeStatistic = rollup || rollupWindow > 0 ? new StoreStatistic(rollupWindow) : null;
+            boolean showJournals = storeStatistic == null && exportWriter == null;
+            KahaDBJournalScanner scanner = new KahaDBJournalScanner(journal);
+            while (scanner.next()) {
+                Location location = scanner.getLocation();
+                File nextFile = scanner.getFile();
                 if(lastJournalStatistic == null || !lastJournalStatistic.getFile().equals(nextFile)) {
                     if(lastJournalStatistic != null) {
-                        showJournalStatistic(lastJournalStatistic, fileIndex);
+                        addJournalStatistic(lastJournalStatistic, storeStatistic, fileIndex);
                     }
 
-                    if(useAnyKeyToContinue && lastJournalStatistic != null) {
+                    if(useAnyKeyToContinue && showJournals && lastJournalStatistic != null) {
                         pressAnyKeyToContinue();
                         showSeparator();
                     }
@@ -61,15 +136,178 @@ public final class KahaDBJournalsStatistics {
                 if(headerSize == -1) {
                     headerSize = location.getOffset();
                 }
-                ByteSequence sequence = journal.read(location);
-                lastJournalStatistic.addSequence(sequence, location.getSize() + headerSize);
-
-                location = journal.getNextLocation(location);
+                lastJournalStatistic.addSequence(scanner.getSequence(), location.getSize() + headerSize);
             }
 
             if(lastJournalStatistic != null) {
-                showJournalStatistic(lastJournalStatistic, fileIndex);
+                addJournalStatistic(lastJournalStatistic, storeStatistic, fileIndex);
+            }
+            if(storeStatistic != null && exportWriter != null) {
+                exportStoreStatistic(storeStatistic, journal.getDirectory().getPath());
+            }
+            else if(storeStatistic != null) {
+                showStoreStatistic(storeStatistic);
+            }
+        }
+        catch (Throwable throwable) {
+            showException(throwable);
+        }
+        finally {
+            try {
+                journal.close();
+            }
+            catch (IOException e) {}
+        }
+    }
+    private void addJournalStatistic(JournalStatistic journalStatistic, StoreStatistic storeStatistic, int fileIndex) throws OperationsException, IOException {
+        if(storeStatistic != null) {
+            storeStatistic.addJournalStatistic(journalStatistic);
+        }
+        else if(exportWriter != null) {
+            exportJournalStatistic(journalStatistic);
+        }
+        else {
+            showJournalStatistic(journalStatistic, fileIndex);
+        }
+    }
+    private void showJournalLiveness(Journal journal) {
+        try {
+            if(exportWriter == null) {
+                showSeparator(2);
+            }
+
+            journal.start();
+
+            //one pass over the journals, the liveness is known only at the end of it
+            PoolDestinationData poolDestinationData = new PoolDestinationData();
+            KahaDBJournalScanner scanner = new KahaDBJournalScanner(journal);
+            while (scanner.next()) {
+                poolDestinationData.sequenceAnalysis(scanner.getSequence(), scanner.getLocation());
+            }
+
+            TreeMap<Integer, JournalLivenessStatistic> livenessStatistics = new TreeMap<>();
+            for (DataFile dataFile : journal.getFileMap().values()) {
+                livenessStatistics.put(dataFile.getDataFileId(), new JournalLivenessStatistic(dataFile.getFile(), dataFile.getLength()));
+            }
+            poolDestinationData.writeDestinationLocations((destination, location) -> {
+                JournalLivenessStatistic livenessStatistic = livenessStatistics.get(location.getDataFileId());
+                if(livenessStatistic != null) {
+                    livenessStatistic.addDestinationSize(destination, location.getSize());
+                }
+            });
+            poolDestinationData.writeSubscriptionGroups((subscription, location) -> {
+                JournalLivenessStatistic livenessStatistic = livenessStatistics.get(location.getDataFileId());
+                if(livenessStatistic != null) {
+                    livenessStatistic.addSubscriptionSize(subscription, location.getSize());
+                }
+            });
+
+            if(exportWriter != null) {
+                for (JournalLivenessStatistic livenessStatistic : livenessStatistics.values()) {
+                    exportJournalLiveness(livenessStatistic);
+                }
+                return;
+            }
+
+            int fileIndex = 0;
+            long totalLength = 0;
+            long totalLiveSize = 0;
+            for (JournalLivenessStatistic livenessStatistic : livenessStatistics.values()) {
+                showJournalLiveness(livenessStatistic, ++fileIndex);
+                totalLength += livenessStatistic.getLength();
+                totalLiveSize += livenessStatistic.getLiveSize();
+            }
+
+            showSeparator();
+            System.out.printf("Journals: %s (Total size: %s, Live size: %s, Dead size: %s).\r\n",
+                    livenessStatistics.size(),
+                    bytesToString(totalLength),
+                    bytesToString(totalLiveSize),
+                    bytesToString(Math.max(0, totalLength - totalLiveSize)));
+            showSeparator(2);
+        }
+        catch (Throwable throwable) {
+            showException(throwable);
+        }
+        finally {
+            try {
+                journal.close();
             }
+            catch (IOException e) {}
+        }
+    }
+    private void showJournalTransactions(Journal journal) {
+        try {
+            if(exportWriter == null) {
+                showSeparator(2);
+            }
+
+            journal.start();
+
+            //one pass over the journals, only the commands with a transaction are decoded
+            TransactionStatistic transactionStatistic = new TransactionStatistic(livenessTop);
+            KahaDBJournalScanner scanner = new KahaDBJournalScanner(journal);
+            while (scanner.next()) {
+                transactionStatistic.addSequence(scanner.getSequence(), scanner.getLocation());
+            }
+            List<TransactionStatistic.TransactionLifetime> openTransactions = transactionStatistic.getOpenTransactions();
+
+            if(exportWriter != null) {
+                String directory = journal.getDirectory().getPath();
+                for (TransactionStatistic.TransactionLifetime lifetime : transactionStatistic.getLongestTransactions()) {
+                    exportTransactionLifetime(journal, directory, lifetime);
+                }
+                for (TransactionStatistic.TransactionLifetime lifetime : openTransactions) {
+                    exportTransactionLifetime(journal, directory, lifetime);
+                }
+                return;
+            }
+
+            int preparedCount = 0;
+            int firstPinnedDataFileId = Integer.MAX_VALUE;
+            int lastPinnedDataFileId = -1;
+            for (TransactionStatistic.TransactionLifetime lifetime : openTransactions) {
+                if(lifetime.isPrepared()) {
+                    ++preparedCount;
+                }
+                firstPinnedDataFileId = Math.min(firstPinnedDataFileId, lifetime.getFirstDataFileId());
+                lastPinnedDataFileId = Math.max(lastPinnedDataFileId, lifetime.getLastDataFileId());
+            }
+
+            System.out.printf("Transaction statistics:\r\n");
+            System.out.printf("- Directory: '%s'.\r\n", journal.getDirectory().getPath());
+            System.out.printf("- Records: %s (Total size: %s).\r\n", transactionStatistic.getRecordCount(), bytesToString(transactionStatistic.getSize()));
+            System.out.printf("- Committed: %s.\r\n", transactionStatistic.getCommittedCount());
+            System.out.printf("- Rolled back: %s.\r\n", transactionStatistic.getRolledBackCount());
+            System.out.printf("- Prepared: %s.\r\n", preparedCount);
+            System.out.printf("- Inflighted: %s.\r\n", openTransactions.size() - preparedCount);
+            if(!openTransactions.isEmpty()) {
+                //like KahaDB, every journal from the first to the last record of an open transaction is kept
+                System.out.printf("- Pinned journals: '%s' - '%s'.\r\n", getJournalName(journal, firstPinnedDataFileId), getJournalName(journal, lastPinnedDataFileId));
+            }
+            System.out.println();
+            System.out.printf("Lifetime of the completed transactions:\r\n");
+            showLifetimeHistogram("Records", transactionStatistic.getLifetimeRecords(), false);
+            showLifetimeHistogram("Size", transactionStatistic.getLifetimeSizes(), true);
+
+            List<TransactionStatistic.TransactionLifetime> longestTransactions = transactionStatistic.getLongestTransactions();
+            if(!longestTransactions.isEmpty()) {
+                showSeparator();
+                System.out.printf("Longest transactions:\r\n");
+                int index = 0;
+                for (TransactionStatistic.TransactionLifetime lifetime : longestTransactions) {
+                    showTransactionLifetime(journal, lifetime, ++index);
+                }
+            }
+            if(!openTransactions.isEmpty()) {
+                showSeparator();
+                System.out.printf("Open transactions:\r\n");
+                int index = 0;
+                for (TransactionStatistic.TransactionLifetime lifetime : openTransactions) {
+                    showTransactionLifetime(journal, lifetime, ++index);
+                }
+            }
+            showSeparator(2);
         }
         catch (Throwable throwable) {
             showException(throwable);
@@ -81,6 +319,297 @@ public final class KahaDBJournalsStatistics {
             catch (IOException e) {}
         }
     }
+    private void showLifetimeHistogram(String name, SizeHistogram histogram, boolean size) {
+        System.out.printf("+ %s: ~P50: %s, ~P99: %s, Max: %s.\r\n",
+                name,
+                size ? bytesToString(histogram.getPercentileSize(50)) : histogram.getPercentileSize(50),
+                size ? bytesToString(histogram.getPercentileSize(99)) : histogram.getPercentileSize(99),
+                size ? bytesToString(histogram.getPercentileSize(100)) : histogram.getPercentileSize(100));
+    }
+    private void showTransactionLifetime(Journal journal, TransactionStatistic.TransactionLifetime lifetime, int index) throws IOException {
+        System.out.printf("(%s) %s - %s (Records: %s (Size: %s), Lifetime: %s records (Size: %s), Journals: '%s' - '%s').\r\n",
+                index,
+                getTransactionId(journal, lifetime),
+                lifetime.getStateName(),
+                lifetime.getRecordCount(),
+                bytesToString(lifetime.getSize()),
+                lifetime.getLifetimeRecords(),
+                bytesToString(lifetime.getLifetimeSize()),
+                getJournalName(journal, lifetime.getFirstDataFileId()),
+                getJournalName(journal, lifetime.getLastDataFileId()));
+    }
+    private void exportTransactionLifetime(Journal journal, String directory, TransactionStatistic.TransactionLifetime lifetime) throws IOException {
+        exportWriter.setString(COLUMN_SCOPE, "transaction");
+        exportWriter.setString(COLUMN_DIRECTORY, directory);
+        exportWriter.setString(COLUMN_JOURNAL, getJournalName(journal, lifetime.getFirstDataFileId()));
+        exportWriter.setString(COLUMN_LAST_TRANSACTION_JOURNAL, getJournalName(journal, lifetime.getLastDataFileId()));
+        exportWriter.setString(COLUMN_STATE, lifetime.getStateName());
+        exportWriter.setString(COLUMN_TRANSACTION_ID, getTransactionId(journal, lifetime));
+        exportWriter.setLong(COLUMN_RECORDS, lifetime.getRecordCount());
+        exportWriter.setLong(COLUMN_SIZE, lifetime.getSize());
+        exportWriter.setLong(COLUMN_LIFETIME_RECORDS, lifetime.getLifetimeRecords());
+        exportWriter.setLong(COLUMN_LIFETIME_SIZE, lifetime.getLifetimeSize());
+        exportWriter.endRecord();
+    }
+    private static String getTransactionId(Journal journal, TransactionStatistic.TransactionLifetime lifetime) throws IOException {
+        //only the hashed id is kept, the shown id is read back from the first record of the transaction
+        KahaTransactionInfo transactionInfo = getCommandTransactionInfo(readCommandHeader(journal.read(lifetime.getFirstLocation())));
+        return transactionInfo == null ? "?" : KahaDBTransactionIdConversion.append(new StringBuilder(), transactionInfo).toString();
+    }
+    private static String getJournalName(Journal journal, int dataFileId) {
+        DataFile dataFile = journal.getFileMap().get(dataFileId);
+        return dataFile == null ? Journal.DEFAULT_FILE_PREFIX + dataFileId + Journal.DEFAULT_FILE_SUFFIX : dataFile.getFile().getName();
+    }
+    private void exportJournalLiveness(JournalLivenessStatistic livenessStatistic) throws IOException {
+        String directory = livenessStatistic.getFile().getParent();
+        String journal = livenessStatistic.getFile().getName();
+
+        exportWriter.setString(COLUMN_SCOPE, "journal");
+        exportWriter.setString(COLUMN_DIRECTORY, directory);
+        exportWriter.setString(COLUMN_JOURNAL, journal);
+        exportWriter.setLong(COLUMN_LENGTH, livenessStatistic.getLength());
+        exportWriter.setLong(COLUMN_LIVE_SIZE, livenessStatistic.getLiveSize());
+        exportWriter.setLong(COLUMN_DEAD_SIZE, livenessStatistic.getDeadSize());
+        exportWriter.setLong(COLUMN_LIVE_PERCENT, livenessStatistic.getLivePercent());
+        exportWriter.endRecord();
+
+        //every pinning destination and subscription, the limit of the shown ones is for reading only
+        for (Map.Entry<String, Long> destination : livenessStatistic.getTopDestinations(livenessStatistic.getDestinationCount())) {
+            exportPinnedSize(directory, journal, "destination", destination);
+        }
+        for (Map.Entry<String, Long> subscription : livenessStatistic.getTopSubscriptions(livenessStatistic.getSubscriptionCount())) {
+            exportPinnedSize(directory, journal, "subscription", subscription);
+        }
+    }
+    private void exportPinnedSize(String directory, String journal, String scope, Map.Entry<String, Long> pinnedSize) throws IOException {
+        exportWriter.setString(COLUMN_SCOPE, scope);
+        exportWriter.setString(COLUMN_DIRECTORY, directory);
+        exportWriter.setString(COLUMN_JOURNAL, journal);
+        exportWriter.setString(COLUMN_NAME, pinnedSize.getKey());
+        exportWriter.setLong(COLUMN_PINNED_SIZE, pinnedSize.getValue());
+        exportWriter.endRecord();
+    }
+    private void exportJournalStatistic(JournalStatistic journalStatistic) throws OperationsException, IOException {
+        String directory = journalStatistic.getFile().getParent();
+        String journal = journalStatistic.getFile().getName();
+
+        exportDestinationStatistics(journalStatistic.getTopicsDestinationStatistics(), directory, journal);
+        exportDestinationStatistics(journalStatistic.getQueueDestinationStatistics(), directory, journal);
+        exportDestinationStatistics(journalStatistic.getOtherDestinationStatistics(), directory, journal);
+        for (CommandStatistic commandStatistic : journalStatistic.getCommandStatistics()) {
+            exportCommandStatistic(commandStatistic, "journal", directory, journal);
+        }
+    }
+    private void exportStoreStatistic(StoreStatistic storeStatistic, String directory) throws OperationsException, IOException {
+        for (CommandStatistic commandStatistic : storeStatistic.getCommandStatistics()) {
+            exportCommandStatistic(commandStatistic, "store", directory, null);
+        }
+        exportDestinationStatistics(storeStatistic.getTopicsDestinationStatistics(), directory, null);
+        exportDestinationStatistics(storeStatistic.getQueueDestinationStatistics(), directory, null);
+        exportDestinationStatistics(new DestinationStatistic[] {storeStatistic.getOtherDestinationStatistic()}, directory, null);
+
+        for (StoreStatistic.WindowStatistic windowStatistic : storeStatistic.getWindowStatistics()) {
+            for (CommandStatistic commandStatistic : windowStatistic.getCommandStatistics()) {
+                exportWriter.setString(COLUMN_LAST_JOURNAL, windowStatistic.getLastFile().getName());
+                exportWriter.setLong(COLUMN_WINDOW, windowStatistic.getIndex());
+                exportCommandStatistic(commandStatistic, "window", directory, windowStatistic.getFirstFile().getName());
+            }
+        }
+    }
+    private void exportDestinationStatistics(DestinationStatistic[] destinationStatistics, String directory, String journal) throws OperationsException, IOException {
+        //commands without destination are written without the destination columns
+        for (DestinationStatistic destinationStatistic : destinationStatistics) {
+            boolean hasDestination = destinationStatistic.hasDestinationId();
+            String destinationType = hasDestination ? destinationStatistic.getDestinationType().name() : null;
+            String destination = hasDestination ? getDestinationName(destinationStatistic.getDestinationId()) : null;
+            for (CommandStatistic commandStatistic : destinationStatistic.getCommandStatistics()) {
+                exportWriter.setString(COLUMN_DESTINATION_TYPE, destinationType);
+                exportWriter.setString(COLUMN_DESTINATION, destination);
+                exportCommandStatistic(commandStatistic, "destination", directory, journal);
+            }
+        }
+    }
+    private void exportCommandStatistic(CommandStatistic commandStatistic, String scope, String directory, String journal) throws IOException {
+        exportWriter.setString(COLUMN_SCOPE, scope);
+        exportWriter.setString(COLUMN_DIRECTORY, directory);
+        exportWriter.setString(COLUMN_JOURNAL, journal);
+        exportWriter.setString(COLUMN_TYPE, commandStatistic.hasReversCommand() ? "-" + commandStatistic.getCommandType() : commandStatistic.getCommandType().name());
+        exportWriter.setLong(COLUMN_COUNT, commandStatistic.getCount());
+        exportWriter.setLong(COLUMN_TOTAL_SIZE, commandStatistic.getTotalSize());
+        exportWriter.setLong(COLUMN_AVERAGE_SIZE, commandStatistic.getAvrgSize());
+        exportWriter.setLong(COLUMN_P50_SIZE, commandStatistic.getPercentileSize(50));
+        exportWriter.setLong(COLUMN_P99_SIZE, commandStatistic.getPercentileSize(99));
+        exportWriter.setLong(COLUMN_MAX_SIZE, commandStatistic.getLastBigSize());
+        exportWriter.setLong(COLUMN_LAST_SIZE, commandStatistic.getLastSize());
+        exportWriter.endRecord();
+    }
+    private ExportSchema createExportSchema() {
+        ExportSchema schema = new ExportSchema();
+        schema.addColumn("scope", ExportSchema.ColumnType.SYMBOL);
+        schema.addColumn("directory", ExportSchema.ColumnType.SYMBOL);
+        schema.addColumn("journal", ExportSchema.ColumnType.SYMBOL);
+        if(transactions) {
+            schema.addColumn("lastJournal", ExportSchema.ColumnType.SYMBOL);
+            schema.addColumn("state", ExportSchema.ColumnType.SYMBOL);
+            schema.addColumn("transactionId", ExportSchema.ColumnType.STRING);
+            schema.addColumn("records", ExportSchema.ColumnType.LONG);
+            schema.addColumn("size", ExportSchema.ColumnType.LONG);
+            schema.addColumn("lifetimeRecords", ExportSchema.ColumnType.LONG);
+            schema.addColumn("lifetimeSize", ExportSchema.ColumnType.LONG);
+        }
+        else if(liveness) {
+            schema.addColumn("length", ExportSchema.ColumnType.LONG);
+            schema.addColumn("liveSize", ExportSchema.ColumnType.LONG);
+            schema.addColumn("deadSize", ExportSchema.ColumnType.LONG);
+            schema.addColumn("livePercent", ExportSchema.ColumnType.LONG);
+            schema.addColumn("name", ExportSchema.ColumnType.SYMBOL);
+            schema.addColumn("pinnedSize", ExportSchema.ColumnType.LONG);
+        }
+        else {
+            schema.addColumn("lastJournal", ExportSchema.ColumnType.SYMBOL);
+            schema.addColumn("window", ExportSchema.ColumnType.LONG);
+            schema.addColumn("destinationType", ExportSchema.ColumnType.SYMBOL);
+            schema.addColumn("destination", ExportSchema.ColumnType.SYMBOL);
+            schema.addColumn("type", ExportSchema.ColumnType.SYMBOL);
+            schema.addColumn("count", ExportSchema.ColumnType.LONG);
+            schema.addColumn("totalSize", ExportSchema.ColumnType.LONG);
+            schema.addColumn("averageSize", ExportSchema.ColumnType.LONG);
+            schema.addColumn("p50Size", ExportSchema.ColumnType.LONG);
+            schema.addColumn("p99Size", ExportSchema.ColumnType.LONG);
+            schema.addColumn("maxSize", ExportSchema.ColumnType.LONG);
+            schema.addColumn("lastSize", ExportSchema.ColumnType.LONG);
+        }
+        return schema;
+    }
+    private static String getDestinationName(String destinationId) {
+        //the destination id is "<type number>:<name>"
+        return destinationId.substring(destinationId.indexOf(':') + 1);
+    }
+    private void showJournalLiveness(JournalLivenessStatistic livenessStatistic, int fileIndex) {
+        int livePercent = livenessStatistic.getLivePercent();
+        int liveBar = (livePercent * LIVENESS_BAR_SIZE + 50) / 100;
+        StringBuilder bar = new StringBuilder();
+        for(int i = 0; i < LIVENESS_BAR_SIZE; ++i) {
+            bar.append(i < liveBar ? '#' : '.');
+        }
+
+        System.out.printf("(%s) Journal: '%s' [%s] %s%% (Live size: %s, Dead size: %s).\r\n",
+                fileIndex,
+                livenessStatistic.getFile().getName(),
+                bar,
+                livePercent,
+                bytesToString(livenessStatistic.getLiveSize()),
+                bytesToString(livenessStatistic.getDeadSize()));
+
+        //destinations and subscriptions which pin the journal, the most pinned bytes first
+        for (Map.Entry<String, Long> destination : livenessStatistic.getTopDestinations(livenessTop)) {
+            System.out.printf("+ Destination: %s (Pinned: %s).\r\n", destination.getKey(), bytesToString(destination.getValue()));
+        }
+        if(livenessStatistic.getDestinationCount() > livenessTop) {
+            System.out.printf("+ Destinations: %s more.\r\n", livenessStatistic.getDestinationCount() - livenessTop);
+        }
+        for (Map.Entry<String, Long> subscription : livenessStatistic.getTopSubscriptions(livenessTop)) {
+            System.out.printf("+ Subscription: %s (Pinned: %s).\r\n", subscription.getKey(), bytesToString(subscription.getValue()));
+        }
+        if(livenessStatistic.getSubscriptionCount() > livenessTop) {
+            System.out.printf("+ Subscriptions: %s more.\r\n", livenessStatistic.getSubscriptionCount() - livenessTop);
+        }
+    }
+    private void showStoreStatistic(StoreStatistic storeStatistic) throws OperationsException {
+        System.out.printf("Store statistics:\r\n");
+        System.out.printf("- Journals: %s.\r\n", storeStatistic.getJournalCount());
+        System.out.printf("- Topics: %s.\r\n", storeStatistic.getTopicCount());
+        System.out.printf("- Queues: %s.\r\n", storeStatistic.getQueueCount());
+        System.out.println();
+        showRollupCommandStatistics(storeStatistic.getCommandStatistics());
+
+        showSeparator();
+        System.out.printf("Destination statistics:\r\n");
+        showRollupDestinationStatistics(storeStatistic.getTopicsDestinationStatistics());
+        showRollupDestinationStatistics(storeStatistic.getQueueDestinationStatistics());
+
+        CommandStatistic[] otherCommandStatistics = storeStatistic.getOtherDestinationStatistic().getCommandStatistics();
+        if(otherCommandStatistics.length != 0) {
+            System.out.println();
+            System.out.printf("Commands without destination:\r\n");
+            showRollupCommandStatistics(otherCommandStatistics);
+        }
+
+        StoreStatistic.WindowStatistic[] windowStatistics = storeStatistic.getWindowStatistics();
+        if(windowStatistics.length != 0) {
+            showSeparator();
+            System.out.printf("Window statistics (Journals per window: %s):\r\n", storeStatistic.getWindowSize());
+            for (StoreStatistic.WindowStatistic windowStatistic : windowStatistics) {
+                CommandStatistic[] commandStatistics = windowStatistic.getCommandStatistics();
+                System.out.printf("(%s) Journals: '%s' - '%s' (%s, %s, %s).\r\n",
+                        windowStatistic.getIndex(),
+                        windowStatistic.getFirstFile().getName(),
+                        windowStatistic.getLastFile().getName(),
+                        getRollupInfo("Adds", findCommandStatistic(commandStatistics, KahaEntryType.KAHA_ADD_MESSAGE_COMMAND)),
+                        getRollupInfo("Acks", findCommandStatistic(commandStatistics, KahaEntryType.KAHA_REMOVE_MESSAGE_COMMAND)),
+                        getRollupTotalInfo(commandStatistics));
+            }
+        }
+
+        showSeparator(2);
+    }
+    private void showRollupDestinationStatistics(DestinationStatistic[] destinationStatistics) throws OperationsException {
+        //adds and acks of a destination over the whole store, the throughput it had
+        for (DestinationStatistic destinationStatistic : destinationStatistics) {
+            CommandStatistic[] commandStatistics = destinationStatistic.getCommandStatistics();
+            System.out.printf("%s (%s, %s, %s).\r\n",
+                    getDestinationInfo(destinationStatistic.getDestinationType(), destinationStatistic.getDestinationId()),
+                    getRollupInfo("Adds", findCommandStatistic(commandStatistics, KahaEntryType.KAHA_ADD_MESSAGE_COMMAND)),
+                    getRollupInfo("Acks", findCommandStatistic(commandStatistics, KahaEntryType.KAHA_REMOVE_MESSAGE_COMMAND)),
+                    getRollupTotalInfo(commandStatistics));
+        }
+    }
+    private void showRollupCommandStatistics(CommandStatistic[] commandStatistics) {
+        for (CommandStatistic commandStatistic : commandStatistics) {
+            String message = commandStatistic.hasReversCommand() ? "-" : "+";
+            message += " CmdType: " + commandStatistic.getCommandType()
+                    + " (Count: " + commandStatistic.getCount()
+                    + ", TotalSize: " + bytesToString(commandStatistic.getTotalSize())
+                    + ", ~AvrgSize: " + bytesToString(commandStatistic.getAvrgSize())
+                    + ", ~P50Size: " + bytesToString(commandStatistic.getPercentileSize(50))
+                    + ", ~P99Size: " + bytesToString(commandStatistic.getPercentileSize(99))
+                    + ", MaxSize: " + bytesToString(commandStatistic.getLastBigSize())
+                    + ")";
+            System.out.println(message);
+        }
+        System.out.printf("All %s.\r\n", getRollupTotalInfo(commandStatistics, "commands"));
+    }
+    private String getRollupInfo(String name, CommandStatistic commandStatistic) {
+        if(commandStatistic == null) {
+            return name + ": 0";
+        }
+
+        return name + ": " + commandStatistic.getCount()
+                + " (TotalSize: " + bytesToString(commandStatistic.getTotalSize())
+                + ", ~P50Size: " + bytesToString(commandStatistic.getPercentileSize(50))
+                + ", ~P99Size: " + bytesToString(commandStatistic.getPercentileSize(99))
+                + ")";
+    }
+    private String getRollupTotalInfo(CommandStatistic[] commandStatistics) {
+        return getRollupTotalInfo(commandStatistics, "Commands");
+    }
+    private String getRollupTotalInfo(CommandStatistic[] commandStatistics, String name) {
+        int allCommand = 0;
+        long commandsTotalSize = 0;
+        for (CommandStatistic commandStatistic : commandStatistics) {
+            allCommand += commandStatistic.getCount();
+            commandsTotalSize += commandStatistic.getTotalSize();
+        }
+        return name + ": " + allCommand + " (Total size: " + bytesToString(commandsTotalSize) + ")";
+    }
+    private CommandStatistic findCommandStatistic(CommandStatistic[] commandStatistics, KahaEntryType commandType) {
+        for (CommandStatistic commandStatistic : commandStatistics) {
+            if(commandStatistic.getCommandType() == commandType && !commandStatistic.hasReversCommand()) {
+                return commandStatistic;
+            }
+        }
+        return null;
+    }
     private void showJournalStatistic(JournalStatistic journalStatistic, int fileIndex) throws OperationsException {
         System.out.printf("(%s) Journal: '%s'.\r\n", fileIndex, journalStatistic.getFile());
 
@@ -182,6 +711,57 @@ public final class KahaDBJournalsStatistics {
     }
     //endregion
     //-------------------------------------------------------------------------
+    public boolean isLiveness() {
+        return liveness;
+    }
+    public void setLiveness(boolean liveness) {
+        this.liveness = liveness;
+    }
+    public boolean isTransactions() {
+        return transactions;
+    }
+    public void setTransactions(boolean transactions) {
+        this.transactions = transactions;
+    }
+    public int getLivenessTop() {
+        return livenessTop;
+    }
+    public void setLivenessTop(int livenessTop) {
+        if(livenessTop < 0) {
+            throw new IndexOutOfBoundsException("livenessTop");
+        }
+
+        this.livenessTop = livenessTop;
+    }
+    public boolean isRollup() {
+        return rollup;
+    }
+    public void setRollup(boolean rollup) {
+        this.rollup = rollup;
+    }
+    public int getRollupWindow() {
+        return rollupWindow;
+    }
+    public void setRollupWindow(int rollupWindow) {
+        if(rollupWindow < 0) {
+            throw new IndexOutOfBoundsException("rollupWindow");
+        }
+
+        this.rollupWindow = rollupWindow;
+    }
+    public ExportFormat getExportFormat() {
+        return exportFormat;
+    }
+    public void setExportFormat(ExportFormat exportFormat) {
+        this.exportFormat = exportFormat;
+    }
+    public String getExportFilePath() {
+        return exportFilePath;
+    }
+    public void setExportFilePath(String exportFilePath) {
+        this.exportFilePath = exportFilePath;
+    }
+    //-------------------------------------------------------------------------
     public void showStatistic(String sourceDirPath, boolean useAnyKeyToContinue) throws NotDirectoryException {
         if(isNullOrEmpty(sourceDirPath)) {
             throw new NullPointerException("sourceDirPath");
@@ -193,7 +773,20 @@ public final class KahaDBJournalsStatistics {
         }
 
         try {
-            showStatistic(sourceDir, useAnyKeyToContinue);
+            if(exportFormat != null) {
+                //the rows go to the console when no file is given, without any other text
+                try (OutputStream output = isNullOrEmpty(exportFilePath) ? null : new FileOutputStream(exportFilePath);
+                     ExportWriter writer = ExportWriter.create(exportFormat, output == null ? System.out : output, createExportSchema())) {
+                    exportWriter = writer;
+                    showStatistic(sourceDir, useAnyKeyToContinue);
+                }
+                finally {
+                    exportWriter = null;
+                }
+            }
+            else {
+                showStatistic(sourceDir, useAnyKeyToContinue);
+            }
         }
         catch (Throwable throwable) {
             showException(throwable);
@@ -1,16 +1,34 @@
 package org.hill30.activemq.kahadb.statistic;
 
+import org.hill30.activemq.kahadb.utils.export.ExportFormat;
+
+import static org.hill30.activemq.Utils.*;
+
 public final class Run {
     public static void main(String[] args) throws Exception {
         if (args.length <= 0) {
-            System.out.println("usage KahaDBJournalsStatistic <journals directory>");
+            System.out.println("usage KahaDBJournalsStatistic <journals directory> [--liveness] [--transactions] [--top=<pinning destinations per journal>] [--rollup] [--window=<journals per window>] [--export=<ndjson|csv|columnar>] [--output=<export file>]");
             System.exit(1);
         }
         //---------------------------------------------------------------------
         String sourceDirPath = args[0];
         boolean useAnyKeyToContinue = false;
+        boolean liveness = hasArgument(args, "liveness");
+        boolean transactions = hasArgument(args, "transactions");
+        int livenessTop = getArgumentValue(args, "top", 5);
+        boolean rollup = hasArgument(args, "rollup");
+        int rollupWindow = getArgumentValue(args, "window", 0);
+        String export = getArgumentValue(args, "export", null);
+        String exportFilePath = getArgumentValue(args, "output", null);
         //---------------------------------------------------------------------
         KahaDBJournalsStatistics statistics = new KahaDBJournalsStatistics();
+        statistics.setLiveness(liveness);
+        statistics.setTransactions(transactions);
+        statistics.setLivenessTop(livenessTop);
+        statistics.setRollup(rollup);
+        statistics.setRollupWindow(rollupWindow);
+        statistics.setExportFormat(isNullOrEmpty(export) ? null : ExportFormat.parse(export));
+        statistics.setExportFilePath(exportFilePath);
         statistics.showStatistic(sourceDirPath, useAnyKeyToContinue);
         //---------------------------------------------------------------------
     }
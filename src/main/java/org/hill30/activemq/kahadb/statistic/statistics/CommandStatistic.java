@@ -11,6 +11,7 @@ public final class CommandStatistic {
     private long totalSize;
     private long lastBigSize;
     private long lastSize;
+    private final SizeHistogram sizeHistogram = new SizeHistogram();
     //endregion
     public CommandStatistic(KahaEntryType commandType, boolean reversCommand) {
         this.commandType = commandType;
@@ -40,6 +41,9 @@ public final class CommandStatistic {
     public long getAvrgSize() {
         return count == 0 ? 0 : totalSize / count;
     }
+    public long getPercentileSize(double percentile) {
+        return sizeHistogram.getPercentileSize(percentile);
+    }
     //-------------------------------------------------------------------------
     public void incrementSize(CommandStatistic commandStatistic) {
         if(commandStatistic == null) {
@@ -49,6 +53,7 @@ public final class CommandStatistic {
         count += commandStatistic.count;
         lastSize = commandStatistic.lastSize;
         totalSize += commandStatistic.totalSize;
+        sizeHistogram.add(commandStatistic.sizeHistogram);
 
         if(lastBigSize < commandStatistic.lastBigSize) {
             lastBigSize = commandStatistic.lastBigSize;
@@ -58,6 +63,7 @@ public final class CommandStatistic {
         ++count;
         lastSize = size;
         totalSize += size;
+        sizeHistogram.add(size);
 
         if(lastBigSize < lastSize) {
             lastBigSize = lastSize;
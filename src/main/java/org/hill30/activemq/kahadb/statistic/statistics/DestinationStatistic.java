@@ -4,8 +4,8 @@ import org.apache.activemq.store.kahadb.data.KahaDestination;
 import org.apache.activemq.store.kahadb.data.KahaEntryType;
 
 import javax.management.OperationsException;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.EnumMap;
 
 import static org.hill30.activemq.Utils.*;
 
@@ -14,7 +14,9 @@ public final class DestinationStatistic {
     private final KahaDestination.DestinationType destinationType;
     private final String destinationId;
     private boolean destinationIdAvailable;
-    private final LinkedList<CommandStatistic> commandStatistics = new LinkedList<>();
+    //commands by type, [0] for the command and [1] for the revers one, the list keeps the order they came in
+    private final EnumMap<KahaEntryType, CommandStatistic[]> commandStatisticsByType = new EnumMap<>(KahaEntryType.class);
+    private final ArrayList<CommandStatistic> commandStatistics = new ArrayList<>();
     //-------------------------------------------------------------------------
     private boolean removed;
     //endregion
@@ -73,19 +75,17 @@ public final class DestinationStatistic {
         }
     }
     public CommandStatistic getCommandStatistic(KahaEntryType commandType, boolean reversCommand) {
-        CommandStatistic commandStatistic = null;
-
-        final Iterator<CommandStatistic> iteratorCommandStatistics = commandStatistics.iterator();
-        while (iteratorCommandStatistics.hasNext()) {
-            CommandStatistic nextCommandStatistic = iteratorCommandStatistics.next();
-            if(nextCommandStatistic.getCommandType() == commandType && nextCommandStatistic.hasReversCommand() == reversCommand) {
-                commandStatistic = nextCommandStatistic;
-                break;
-            }
+        CommandStatistic[] typeCommandStatistics = commandStatisticsByType.get(commandType);
+        if(typeCommandStatistics == null) {
+            typeCommandStatistics = new CommandStatistic[2];
+            commandStatisticsByType.put(commandType, typeCommandStatistics);
         }
 
+        int index = reversCommand ? 1 : 0;
+        CommandStatistic commandStatistic = typeCommandStatistics[index];
         if(commandStatistic == null) {
             commandStatistic = new CommandStatistic(commandType, reversCommand);
+            typeCommandStatistics[index] = commandStatistic;
             commandStatistics.add(commandStatistic);
         }
 
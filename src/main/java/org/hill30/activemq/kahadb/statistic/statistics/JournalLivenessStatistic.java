@@ -0,0 +1,84 @@
+package org.hill30.activemq.kahadb.statistic.statistics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class JournalLivenessStatistic {
+    //region private
+    private final File file;
+    private final long length;
+    //-------------------------------------------------------------------------
+    private long liveSize;
+    private final HashMap<String, Long> destinationSizes = new HashMap<>();
+    private final HashMap<String, Long> subscriptionSizes = new HashMap<>();
+    //-------------------------------------------------------------------------
+    private static List<Map.Entry<String, Long>> getTop(HashMap<String, Long> sizes, int count) {
+        List<Map.Entry<String, Long>> top = new ArrayList<>(sizes.entrySet());
+        top.sort((entry1, entry2) -> Long.compare(entry2.getValue(), entry1.getValue()));
+        return count < top.size() ? top.subList(0, count) : top;
+    }
+    //endregion
+    public JournalLivenessStatistic(File file, long length) {
+        if(file == null) {
+            throw new NullPointerException("file");
+        }
+        if(length < 0) {
+            throw new IndexOutOfBoundsException("length");
+        }
+
+        this.file = file;
+        this.length = length;
+    }
+
+    //-------------------------------------------------------------------------
+    public File getFile() {
+        return file;
+    }
+    public long getLength() {
+        return length;
+    }
+    //-------------------------------------------------------------------------
+    public long getLiveSize() {
+        return liveSize;
+    }
+    public long getDeadSize() {
+        return Math.max(0, length - liveSize);
+    }
+    public int getLivePercent() {
+        return length == 0 ? 0 : (int)(liveSize * 100 / length);
+    }
+    //-------------------------------------------------------------------------
+    public int getDestinationCount() {
+        return destinationSizes.size();
+    }
+    public int getSubscriptionCount() {
+        return subscriptionSizes.size();
+    }
+    public List<Map.Entry<String, Long>> getTopDestinations(int count) {
+        return getTop(destinationSizes, count);
+    }
+    public List<Map.Entry<String, Long>> getTopSubscriptions(int count) {
+        return getTop(subscriptionSizes, count);
+    }
+    //-------------------------------------------------------------------------
+    public void addDestinationSize(String destination, long size) {
+        if(destination == null) {
+            throw new NullPointerException("destination");
+        }
+
+        //every live record belongs to one destination group, so they add up to the live size
+        destinationSizes.merge(destination, size, Long::sum);
+        liveSize += size;
+    }
+    public void addSubscriptionSize(String subscription, long size) {
+        if(subscription == null) {
+            throw new NullPointerException("subscription");
+        }
+
+        subscriptionSizes.merge(subscription, size, Long::sum);
+    }
+    //-------------------------------------------------------------------------
+}
@@ -2,13 +2,12 @@ package org.hill30.activemq.kahadb.statistic.statistics;
 
 import org.apache.activemq.store.kahadb.JournalCommand;
 import org.apache.activemq.store.kahadb.data.*;
-import org.apache.activemq.store.kahadb.disk.util.DataByteArrayInputStream;
 import org.apache.activemq.util.ByteSequence;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
 
 import static org.hill30.activemq.Utils.*;
 import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
@@ -16,9 +15,20 @@ import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
 public final class JournalStatistic {
     //region private
     private final File file;
-    private final LinkedList<DestinationStatistic> topicsDestinationStatistics = new LinkedList<>();
-    private final LinkedList<DestinationStatistic> queuesDestinationStatistics = new LinkedList<>();
-    private final LinkedList<DestinationStatistic> otherDestinationStatistics = new LinkedList<>();
+    private final ArrayList<DestinationStatistic> topicsDestinationStatistics = new ArrayList<>();
+    private final ArrayList<DestinationStatistic> queuesDestinationStatistics = new ArrayList<>();
+    private final ArrayList<DestinationStatistic> otherDestinationStatistics = new ArrayList<>();
+    //the destination which is not removed for every destination id, a removed one is replaced by the next command
+    private final HashMap<String, DestinationStatistic> topicsDestinationStatisticsById = new HashMap<>();
+    private final HashMap<String, DestinationStatistic> queuesDestinationStatisticsById = new HashMap<>();
+    //-------------------------------------------------------------------------
+    //totals are kept with every command, the getters do not walk the destinations
+    private final DestinationStatistic commandStatistics = new DestinationStatistic();
+    private int topicsMessagesCount;
+    private int queuesMessagesCount;
+    private int otherMessagesCount;
+    private int topicsSubscriptionsCount;
+    private int topicsUnsubscriptionsCount;
     //-------------------------------------------------------------------------
     private void addCommand(KahaEntryType commandType, JournalCommand<?> command, long size) {
         KahaDestination destination = getCommandDestination(commandType, command);
@@ -26,16 +36,29 @@ public final class JournalStatistic {
         DestinationStatistic destinationStatistic;
 
         if(destination == null) {
-            destinationStatistic = getDestinationStatistic(otherDestinationStatistics, destination);
+            destinationStatistic = getOtherDestinationStatistic();
+            ++otherMessagesCount;
+        }
+        else if(isDestinationTopic(destination)) {
+            destinationStatistic = getDestinationStatistic(topicsDestinationStatistics, topicsDestinationStatisticsById, destination);
+            ++topicsMessagesCount;
+
+            if(commandType == KahaEntryType.KAHA_SUBSCRIPTION_COMMAND) {
+                if(isReversCommand) {
+                    ++topicsUnsubscriptionsCount;
+                }
+                else {
+                    ++topicsSubscriptionsCount;
+                }
+            }
         }
         else {
-            destinationStatistic = isDestinationTopic(destination)
-                    ? getDestinationStatistic(topicsDestinationStatistics, destination)
-                    : getDestinationStatistic(queuesDestinationStatistics, destination);
+            destinationStatistic = getDestinationStatistic(queuesDestinationStatistics, queuesDestinationStatisticsById, destination);
+            ++queuesMessagesCount;
         }
 
-        CommandStatistic commandStatistic = destinationStatistic.getCommandStatistic(commandType, isReversCommand);
-        commandStatistic.incrementSize(size);
+        destinationStatistic.getCommandStatistic(commandType, isReversCommand).incrementSize(size);
+        commandStatistics.getCommandStatistic(commandType, isReversCommand).incrementSize(size);
 
         if(isRemoveDestination(commandType)) {
             destinationStatistic.setRemoved(true);
@@ -75,67 +98,23 @@ public final class JournalStatistic {
         return false;
     }
     //-------------------------------------------------------------------------
-    private DestinationStatistic getDestinationStatistic(LinkedList<DestinationStatistic> listDestinationStatistics, KahaDestination destination) {
-        DestinationStatistic destinationStatistic = null;
-        boolean isDestinationAvailable = destination != null;
-        String destinationId = isDestinationAvailable ? getDestinationId(destination) : "";
+    private DestinationStatistic getDestinationStatistic(ArrayList<DestinationStatistic> listDestinationStatistics, HashMap<String, DestinationStatistic> mapDestinationStatistics, KahaDestination destination) {
+        String destinationId = getDestinationId(destination);
+        DestinationStatistic destinationStatistic = mapDestinationStatistics.get(destinationId);
 
-        final Iterator<DestinationStatistic> iteratorDestinationStatistics = listDestinationStatistics.iterator();
-        while (iteratorDestinationStatistics.hasNext()) {
-            DestinationStatistic nextDestinationStatistic = iteratorDestinationStatistics.next();
-            if(isDestinationAvailable) {
-                if(nextDestinationStatistic.hasDestinationId()) {
-                    try {
-                        if (nextDestinationStatistic.getDestinationId().equals(destinationId) && !nextDestinationStatistic.hasRemoved()) {
-                            destinationStatistic = nextDestinationStatistic;
-                            break;
-                        }
-                    } catch (Throwable throwable) {
-                        showException(throwable);
-                    }
-                }
-            }
-            else {
-                if(!nextDestinationStatistic.hasDestinationId()) {
-                    destinationStatistic = nextDestinationStatistic;
-                    break;
-                }
-            }
-
-
-        }
-
-        if(destinationStatistic == null) {
-            destinationStatistic = isDestinationAvailable ? new DestinationStatistic(destinationId, destination.getType()) : new DestinationStatistic();
+        if(destinationStatistic == null || destinationStatistic.hasRemoved()) {
+            destinationStatistic = new DestinationStatistic(destinationId, destination.getType());
+            mapDestinationStatistics.put(destinationId, destinationStatistic);
             listDestinationStatistics.add(destinationStatistic);
         }
 
         return destinationStatistic;
     }
-    //-------------------------------------------------------------------------
-    private void addCommandStatistics(LinkedList<DestinationStatistic> listSourceDestinationStatistics, DestinationStatistic target) {
-        listSourceDestinationStatistics.forEach(target::addCommandStatistic);
-    }
-    //-------------------------------------------------------------------------
-    private int getMessagesCount(LinkedList<DestinationStatistic> listDestinationStatistics) {
-        int messagesCount = 0;
-        for (DestinationStatistic destinationStatistic : listDestinationStatistics) {
-            for (CommandStatistic commandStatistic : destinationStatistic.getCommandStatistics()) {
-                messagesCount += commandStatistic.getCount();
-            }
-        }
-        return messagesCount;
-    }
-    private int getMessagesCount(LinkedList<DestinationStatistic> listDestinationStatistics, KahaEntryType commandType, boolean reversCommand) {
-        int messagesCount = 0;
-        for (DestinationStatistic destinationStatistic : listDestinationStatistics) {
-            for (CommandStatistic commandStatistic : destinationStatistic.getCommandStatistics()) {
-                if(commandStatistic.getCommandType() == commandType && commandStatistic.hasReversCommand() == reversCommand) {
-                    messagesCount += commandStatistic.getCount();
-                }
-            }
+    private DestinationStatistic getOtherDestinationStatistic() {
+        if(otherDestinationStatistics.isEmpty()) {
+            otherDestinationStatistics.add(new DestinationStatistic());
         }
-        return messagesCount;
+        return otherDestinationStatistics.get(0);
     }
     //endregion
     public JournalStatistic(File file) {
@@ -162,20 +141,20 @@ public final class JournalStatistic {
     }
     //-------------------------------------------------------------------------
     public int getTopicsMessagesCount() {
-        return getMessagesCount(topicsDestinationStatistics);
+        return topicsMessagesCount;
     }
     public int getQueuesMessagesCount() {
-        return getMessagesCount(queuesDestinationStatistics);
+        return queuesMessagesCount;
     }
     public int getOtherMessagesCount() {
-        return getMessagesCount(otherDestinationStatistics);
+        return otherMessagesCount;
     }
     //-------------------------------------------------------------------------
     public int getTopicsSubscriptionsCount() {
-        return getMessagesCount(topicsDestinationStatistics, KahaEntryType.KAHA_SUBSCRIPTION_COMMAND, false);
+        return topicsSubscriptionsCount;
     }
     public int getTopicsUnsubscriptionsCount() {
-        return getMessagesCount(topicsDestinationStatistics, KahaEntryType.KAHA_SUBSCRIPTION_COMMAND, true);
+        return topicsUnsubscriptionsCount;
     }
     //-------------------------------------------------------------------------
     public DestinationStatistic[] getTopicsDestinationStatistics() {
@@ -192,13 +171,10 @@ public final class JournalStatistic {
     }
     //-------------------------------------------------------------------------
     public CommandStatistic[] getCommandStatistics() {
-        DestinationStatistic destinationStatistic = new DestinationStatistic();
-
-        addCommandStatistics(topicsDestinationStatistics, destinationStatistic);
-        addCommandStatistics(queuesDestinationStatistics, destinationStatistic);
-        addCommandStatistics(otherDestinationStatistics, destinationStatistic);
-
-        return destinationStatistic.getCommandStatistics();
+        return commandStatistics.getCommandStatistics();
+    }
+    DestinationStatistic getMergedStatistic() {
+        return commandStatistics;
     }
     //-------------------------------------------------------------------------
     public void addSequence(ByteSequence sequence, long size) throws IOException {
@@ -209,13 +185,10 @@ public final class JournalStatistic {
             throw new IndexOutOfBoundsException("size");
         }
 
-        DataByteArrayInputStream sequenceInputStream = new DataByteArrayInputStream(sequence);
-        KahaEntryType commandType = KahaEntryType.valueOf(sequenceInputStream.readByte());
-
-        JournalCommand<?> command = (JournalCommand<?>)commandType.createMessage();
-        command.mergeFramed(sequenceInputStream);
+        //the statistics need the destination of a command, never its message body
+        JournalCommand<?> command = readCommandHeader(sequence);
 
-        addCommand(commandType, command, size);
+        addCommand(command.type(), command, size);
     }
     //-------------------------------------------------------------------------
 }
@@ -0,0 +1,89 @@
+package org.hill30.activemq.kahadb.statistic.statistics;
+
+public final class SizeHistogram {
+    //region private
+    //16 buckets for every power of two, so a percentile is within 1/16 of the real size
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (31 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+    //-------------------------------------------------------------------------
+    private long[] counts;
+    private long count;
+    private long minSize;
+    private long maxSize;
+    //-------------------------------------------------------------------------
+    private static int getBucket(int size) {
+        if(size < SUB_BUCKET_COUNT) {
+            return size;
+        }
+
+        int exponent = 31 - Integer.numberOfLeadingZeros(size);
+        int subBucket = (size >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+    private static long getBucketSize(int bucket) {
+        if(bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+
+        //the middle of the bucket
+        int exponent = bucket / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long lowSize = (long)(SUB_BUCKET_COUNT + bucket % SUB_BUCKET_COUNT) << (exponent - SUB_BUCKET_BITS);
+        return lowSize + ((1L << (exponent - SUB_BUCKET_BITS)) >> 1);
+    }
+    //endregion
+    //-------------------------------------------------------------------------
+    public long getCount() {
+        return count;
+    }
+    public long getPercentileSize(double percentile) {
+        if(percentile < 0 || percentile > 100) {
+            throw new IndexOutOfBoundsException("percentile");
+        }
+        if(count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long)Math.ceil(count * percentile / 100));
+        long seen = 0;
+        int bucket = 0;
+        while (bucket < counts.length - 1 && (seen += counts[bucket]) < rank) {
+            ++bucket;
+        }
+        //the middle of the first and the last bucket can be out of the real sizes
+        return Math.max(minSize, Math.min(maxSize, getBucketSize(bucket)));
+    }
+    //-------------------------------------------------------------------------
+    public void add(long size) {
+        if(size < 0) {
+            throw new IndexOutOfBoundsException("size");
+        }
+
+        if(counts == null) {
+            counts = new long[BUCKET_COUNT];
+        }
+        ++counts[getBucket((int)Math.min(size, Integer.MAX_VALUE))];
+        minSize = count == 0 ? size : Math.min(minSize, size);
+        maxSize = Math.max(maxSize, size);
+        ++count;
+    }
+    public void add(SizeHistogram histogram) {
+        if(histogram == null) {
+            throw new NullPointerException("histogram");
+        }
+        if(histogram.counts == null) {
+            return;
+        }
+
+        if(counts == null) {
+            counts = new long[BUCKET_COUNT];
+        }
+        for(int bucket = 0; bucket < BUCKET_COUNT; ++bucket) {
+            counts[bucket] += histogram.counts[bucket];
+        }
+        minSize = count == 0 ? histogram.minSize : Math.min(minSize, histogram.minSize);
+        maxSize = Math.max(maxSize, histogram.maxSize);
+        count += histogram.count;
+    }
+    //-------------------------------------------------------------------------
+}
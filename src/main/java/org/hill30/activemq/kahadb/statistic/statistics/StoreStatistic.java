@@ -0,0 +1,140 @@
+package org.hill30.activemq.kahadb.statistic.statistics;
+
+import javax.management.OperationsException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+public final class StoreStatistic {
+    //region private
+    private final int windowSize;
+    //-------------------------------------------------------------------------
+    private final DestinationStatistic commandStatistics = new DestinationStatistic();
+    private final LinkedHashMap<String, DestinationStatistic> topicsDestinationStatistics = new LinkedHashMap<>();
+    private final LinkedHashMap<String, DestinationStatistic> queuesDestinationStatistics = new LinkedHashMap<>();
+    private final DestinationStatistic otherDestinationStatistic = new DestinationStatistic();
+    private final ArrayList<WindowStatistic> windowStatistics = new ArrayList<>();
+    private int journalCount;
+    //-------------------------------------------------------------------------
+    private static void addDestinationStatistics(LinkedHashMap<String, DestinationStatistic> mapDestinationStatistics, DestinationStatistic[] destinationStatistics) throws OperationsException {
+        //a destination removed and added again is one destination for the store
+        for (DestinationStatistic destinationStatistic : destinationStatistics) {
+            DestinationStatistic storeDestinationStatistic = mapDestinationStatistics.get(destinationStatistic.getDestinationId());
+            if(storeDestinationStatistic == null) {
+                storeDestinationStatistic = new DestinationStatistic(destinationStatistic.getDestinationId(), destinationStatistic.getDestinationType());
+                mapDestinationStatistics.put(destinationStatistic.getDestinationId(), storeDestinationStatistic);
+            }
+            storeDestinationStatistic.addCommandStatistic(destinationStatistic);
+        }
+    }
+    private static DestinationStatistic[] toArray(LinkedHashMap<String, DestinationStatistic> mapDestinationStatistics) {
+        DestinationStatistic[] arrayDestinationStatistics = new DestinationStatistic[mapDestinationStatistics.size()];
+        return mapDestinationStatistics.values().toArray(arrayDestinationStatistics);
+    }
+    //endregion
+    public StoreStatistic(int windowSize) {
+        if(windowSize < 0) {
+            throw new IndexOutOfBoundsException("windowSize");
+        }
+
+        this.windowSize = windowSize;
+    }
+
+    //-------------------------------------------------------------------------
+    public int getWindowSize() {
+        return windowSize;
+    }
+    public int getJournalCount() {
+        return journalCount;
+    }
+    //-------------------------------------------------------------------------
+    public int getTopicCount() {
+        return topicsDestinationStatistics.size();
+    }
+    public int getQueueCount() {
+        return queuesDestinationStatistics.size();
+    }
+    public DestinationStatistic[] getTopicsDestinationStatistics() {
+        return toArray(topicsDestinationStatistics);
+    }
+    public DestinationStatistic[] getQueueDestinationStatistics() {
+        return toArray(queuesDestinationStatistics);
+    }
+    public DestinationStatistic getOtherDestinationStatistic() {
+        return otherDestinationStatistic;
+    }
+    public CommandStatistic[] getCommandStatistics() {
+        return commandStatistics.getCommandStatistics();
+    }
+    public WindowStatistic[] getWindowStatistics() {
+        WindowStatistic[] arrayWindowStatistics = new WindowStatistic[windowStatistics.size()];
+        return windowStatistics.toArray(arrayWindowStatistics);
+    }
+    //-------------------------------------------------------------------------
+    public void addJournalStatistic(JournalStatistic journalStatistic) throws OperationsException {
+        if(journalStatistic == null) {
+            throw new NullPointerException("journalStatistic");
+        }
+
+        ++journalCount;
+
+        //the journal statistics are merged, so the store needs no more memory than its destinations
+        DestinationStatistic journalCommandStatistics = journalStatistic.getMergedStatistic();
+        commandStatistics.addCommandStatistic(journalCommandStatistics);
+
+        addDestinationStatistics(topicsDestinationStatistics, journalStatistic.getTopicsDestinationStatistics());
+        addDestinationStatistics(queuesDestinationStatistics, journalStatistic.getQueueDestinationStatistics());
+        for (DestinationStatistic destinationStatistic : journalStatistic.getOtherDestinationStatistics()) {
+            otherDestinationStatistic.addCommandStatistic(destinationStatistic);
+        }
+
+        if(windowSize > 0) {
+            WindowStatistic windowStatistic = windowStatistics.isEmpty() ? null : windowStatistics.get(windowStatistics.size() - 1);
+            if(windowStatistic == null || windowStatistic.getJournalCount() == windowSize) {
+                windowStatistic = new WindowStatistic(windowStatistics.size() + 1, journalStatistic.getFile());
+                windowStatistics.add(windowStatistic);
+            }
+            windowStatistic.addJournalStatistic(journalStatistic.getFile(), journalCommandStatistics);
+        }
+    }
+    //-------------------------------------------------------------------------
+    public static final class WindowStatistic {
+        //region private
+        private final int index;
+        private final File firstFile;
+        private File lastFile;
+        private int journalCount;
+        private final DestinationStatistic commandStatistics = new DestinationStatistic();
+        //-------------------------------------------------------------------------
+        private void addJournalStatistic(File file, DestinationStatistic journalCommandStatistics) {
+            lastFile = file;
+            ++journalCount;
+            commandStatistics.addCommandStatistic(journalCommandStatistics);
+        }
+        //endregion
+        WindowStatistic(int index, File firstFile) {
+            this.index = index;
+            this.firstFile = firstFile;
+            this.lastFile = firstFile;
+        }
+
+        //---------------------------------------------------------------------
+        public int getIndex() {
+            return index;
+        }
+        public File getFirstFile() {
+            return firstFile;
+        }
+        public File getLastFile() {
+            return lastFile;
+        }
+        public int getJournalCount() {
+            return journalCount;
+        }
+        public CommandStatistic[] getCommandStatistics() {
+            return commandStatistics.getCommandStatistics();
+        }
+        //---------------------------------------------------------------------
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,365 @@
+package org.hill30.activemq.kahadb.statistic.statistics;
+
+import org.hill30.activemq.kahadb.utils.KahaDBTransactionIdConversion;
+
+import org.apache.activemq.store.kahadb.data.KahaEntryType;
+import org.apache.activemq.store.kahadb.data.KahaTransactionInfo;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.apache.activemq.util.ByteSequence;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+
+public final class TransactionStatistic {
+    //region private
+    private static final int INITIAL_CAPACITY = 1024;
+    //-------------------------------------------------------------------------
+    //the open transactions are a table of primitive columns, a slot is found by the hashed transaction id,
+    //two ids of the same 64 bit hash would be counted as one transaction
+    private long[] keys;
+    private byte[] states;
+    private int[] firstDataFileIds;
+    private int[] firstOffsets;
+    private int[] lastDataFileIds;
+    private long[] firstRecords;
+    private long[] firstPositions;
+    private int[] recordCounts;
+    private long[] sizes;
+    private int openCount;
+    private int mask;
+    //-------------------------------------------------------------------------
+    private final int longestCount;
+    private final List<TransactionLifetime> longestTransactions = new ArrayList<>();
+    private final SizeHistogram lifetimeRecords = new SizeHistogram();
+    private final SizeHistogram lifetimeSizes = new SizeHistogram();
+    private long committedCount;
+    private long rolledBackCount;
+    //-------------------------------------------------------------------------
+    private long recordCount;
+    private long position;
+    //-------------------------------------------------------------------------
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        states = new byte[capacity];
+        firstDataFileIds = new int[capacity];
+        firstOffsets = new int[capacity];
+        lastDataFileIds = new int[capacity];
+        firstRecords = new long[capacity];
+        firstPositions = new long[capacity];
+        recordCounts = new int[capacity];
+        sizes = new long[capacity];
+        mask = capacity - 1;
+    }
+    private void grow() {
+        long[] oldKeys = keys;
+        byte[] oldStates = states;
+        int[] oldFirstDataFileIds = firstDataFileIds;
+        int[] oldFirstOffsets = firstOffsets;
+        int[] oldLastDataFileIds = lastDataFileIds;
+        long[] oldFirstRecords = firstRecords;
+        long[] oldFirstPositions = firstPositions;
+        int[] oldRecordCounts = recordCounts;
+        long[] oldSizes = sizes;
+
+        allocate(oldKeys.length << 1);
+        for(int oldSlot = 0; oldSlot < oldKeys.length; ++oldSlot) {
+            if(oldStates[oldSlot] != TransactionLifetime.STATE_NONE) {
+                int slot = findSlot(oldKeys[oldSlot]);
+                keys[slot] = oldKeys[oldSlot];
+                states[slot] = oldStates[oldSlot];
+                firstDataFileIds[slot] = oldFirstDataFileIds[oldSlot];
+                firstOffsets[slot] = oldFirstOffsets[oldSlot];
+                lastDataFileIds[slot] = oldLastDataFileIds[oldSlot];
+                firstRecords[slot] = oldFirstRecords[oldSlot];
+                firstPositions[slot] = oldFirstPositions[oldSlot];
+                recordCounts[slot] = oldRecordCounts[oldSlot];
+                sizes[slot] = oldSizes[oldSlot];
+            }
+        }
+    }
+    private int findSlot(long key) {
+        //linear probing, the slot of the key or the empty slot it would be put in
+        int slot = (int)key & mask;
+        while (states[slot] != TransactionLifetime.STATE_NONE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    private int getOrAddSlot(long key, Location location) {
+        int slot = findSlot(key);
+        if(states[slot] != TransactionLifetime.STATE_NONE) {
+            return slot;
+        }
+
+        //the table is kept at most half full
+        if((openCount + 1) << 1 > keys.length) {
+            grow();
+            slot = findSlot(key);
+        }
+        keys[slot] = key;
+        states[slot] = TransactionLifetime.STATE_INFLIGHT;
+        firstDataFileIds[slot] = location.getDataFileId();
+        firstOffsets[slot] = location.getOffset();
+        lastDataFileIds[slot] = location.getDataFileId();
+        firstRecords[slot] = recordCount;
+        firstPositions[slot] = position;
+        recordCounts[slot] = 0;
+        sizes[slot] = 0;
+        ++openCount;
+        return slot;
+    }
+    private void removeSlot(int slot) {
+        //the following slots of the probe run are shifted back, so no key is cut off from its home slot
+        states[slot] = TransactionLifetime.STATE_NONE;
+        --openCount;
+        int next = (slot + 1) & mask;
+        while (states[next] != TransactionLifetime.STATE_NONE) {
+            int home = (int)keys[next] & mask;
+            boolean shift = slot <= next ? (home <= slot || home > next) : (home <= slot && home > next);
+            if(shift) {
+                keys[slot] = keys[next];
+                states[slot] = states[next];
+                firstDataFileIds[slot] = firstDataFileIds[next];
+                firstOffsets[slot] = firstOffsets[next];
+                lastDataFileIds[slot] = lastDataFileIds[next];
+                firstRecords[slot] = firstRecords[next];
+                firstPositions[slot] = firstPositions[next];
+                recordCounts[slot] = recordCounts[next];
+                sizes[slot] = sizes[next];
+                states[next] = TransactionLifetime.STATE_NONE;
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+    //-------------------------------------------------------------------------
+    private void addOperation(KahaTransactionInfo transactionInfo, Location location) {
+        int slot = getOrAddSlot(KahaDBTransactionIdConversion.hash(transactionInfo), location);
+        addRecord(slot, location);
+    }
+    private void addPrepare(KahaTransactionInfo transactionInfo, Location location) {
+        int slot = getOrAddSlot(KahaDBTransactionIdConversion.hash(transactionInfo), location);
+        states[slot] = TransactionLifetime.STATE_PREPARED;
+        addRecord(slot, location);
+    }
+    private void addOutcome(KahaTransactionInfo transactionInfo, Location location, byte state) {
+        //an outcome without operations is a transaction of its own record
+        int slot = getOrAddSlot(KahaDBTransactionIdConversion.hash(transactionInfo), location);
+        addRecord(slot, location);
+
+        long endRecord = recordCount + 1;
+        long endPosition = position + location.getSize();
+        long lifetimeSize = endPosition - firstPositions[slot];
+        lifetimeRecords.add(endRecord - firstRecords[slot]);
+        lifetimeSizes.add(lifetimeSize);
+        if(isLongestTransaction(lifetimeSize)) {
+            addLongestTransaction(getLifetime(slot, state, endRecord, endPosition));
+        }
+        removeSlot(slot);
+    }
+    private void addRecord(int slot, Location location) {
+        lastDataFileIds[slot] = location.getDataFileId();
+        ++recordCounts[slot];
+        sizes[slot] += location.getSize();
+    }
+    private boolean isLongestTransaction(long lifetimeSize) {
+        //a short sorted list, the longest transactions by the journal bytes written during them
+        int count = longestTransactions.size();
+        return count < longestCount || (count > 0 && longestTransactions.get(count - 1).getLifetimeSize() < lifetimeSize);
+    }
+    private void addLongestTransaction(TransactionLifetime lifetime) {
+        int index = longestTransactions.size();
+        while (index > 0 && longestTransactions.get(index - 1).getLifetimeSize() < lifetime.getLifetimeSize()) {
+            --index;
+        }
+        longestTransactions.add(index, lifetime);
+        if(longestTransactions.size() > longestCount) {
+            longestTransactions.remove(longestCount);
+        }
+    }
+    private TransactionLifetime getLifetime(int slot, byte state, long endRecord, long endPosition) {
+        return new TransactionLifetime(state,
+                firstDataFileIds[slot], firstOffsets[slot], lastDataFileIds[slot],
+                recordCounts[slot], sizes[slot],
+                endRecord - firstRecords[slot], endPosition - firstPositions[slot]);
+    }
+    //endregion
+    public TransactionStatistic(int longestCount) {
+        if(longestCount < 0) {
+            throw new IndexOutOfBoundsException("longestCount");
+        }
+
+        this.longestCount = longestCount;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    //-------------------------------------------------------------------------
+    public long getRecordCount() {
+        return recordCount;
+    }
+    public long getSize() {
+        return position;
+    }
+    public long getCommittedCount() {
+        return committedCount;
+    }
+    public long getRolledBackCount() {
+        return rolledBackCount;
+    }
+    public SizeHistogram getLifetimeRecords() {
+        return lifetimeRecords;
+    }
+    public SizeHistogram getLifetimeSizes() {
+        return lifetimeSizes;
+    }
+    public List<TransactionLifetime> getLongestTransactions() {
+        return longestTransactions;
+    }
+    public List<TransactionLifetime> getOpenTransactions() {
+        //transactions without outcome at the end of the journals, the oldest first
+        List<TransactionLifetime> openTransactions = new ArrayList<>(openCount);
+        for(int slot = 0; slot < keys.length; ++slot) {
+            if(states[slot] != TransactionLifetime.STATE_NONE) {
+                openTransactions.add(getLifetime(slot, states[slot], recordCount, position));
+            }
+        }
+        openTransactions.sort((first, second) -> first.getFirstDataFileId() != second.getFirstDataFileId()
+                ? Integer.compare(first.getFirstDataFileId(), second.getFirstDataFileId())
+                : Integer.compare(first.getFirstOffset(), second.getFirstOffset()));
+        return openTransactions;
+    }
+    //-------------------------------------------------------------------------
+    public void addSequence(ByteSequence sequence, Location location) throws IOException {
+        if(sequence == null) {
+            throw new NullPointerException("sequence");
+        }
+        if(location == null) {
+            throw new NullPointerException("location");
+        }
+
+        //only the commands which can have a transaction are decoded, and only their headers
+        KahaEntryType commandType = readCommandType(sequence);
+        switch (commandType) {
+            case KAHA_ADD_MESSAGE_COMMAND:
+            case KAHA_UPDATE_MESSAGE_COMMAND:
+            case KAHA_REMOVE_MESSAGE_COMMAND:
+            case KAHA_PREPARE_COMMAND:
+            case KAHA_COMMIT_COMMAND:
+            case KAHA_ROLLBACK_COMMAND: {
+                KahaTransactionInfo transactionInfo = getCommandTransactionInfo(readCommandHeader(sequence));
+                if(transactionInfo == null) {
+                    break;
+                }
+
+                if(commandType == KahaEntryType.KAHA_PREPARE_COMMAND) {
+                    addPrepare(transactionInfo, location);
+                }
+                else if(commandType == KahaEntryType.KAHA_COMMIT_COMMAND) {
+                    addOutcome(transactionInfo, location, TransactionLifetime.STATE_COMMITTED);
+                    ++committedCount;
+                }
+                else if(commandType == KahaEntryType.KAHA_ROLLBACK_COMMAND) {
+                    addOutcome(transactionInfo, location, TransactionLifetime.STATE_ROLLED_BACK);
+                    ++rolledBackCount;
+                }
+                else {
+                    addOperation(transactionInfo, location);
+                }
+                break;
+            }
+            default: {
+                break;
+            }
+        }
+
+        ++recordCount;
+        position += location.getSize();
+    }
+    //-------------------------------------------------------------------------
+    public static final class TransactionLifetime {
+        //region private
+        private static final byte STATE_NONE = 0;
+        private static final byte STATE_INFLIGHT = 1;
+        private static final byte STATE_PREPARED = 2;
+        private static final byte STATE_COMMITTED = 3;
+        private static final byte STATE_ROLLED_BACK = 4;
+        //---------------------------------------------------------------------
+        private final byte state;
+        private final int firstDataFileId;
+        private final int firstOffset;
+        private final int lastDataFileId;
+        private final int recordCount;
+        private final long size;
+        private final long lifetimeRecords;
+        private final long lifetimeSize;
+        //endregion
+        TransactionLifetime(byte state, int firstDataFileId, int firstOffset, int lastDataFileId, int recordCount, long size, long lifetimeRecords, long lifetimeSize) {
+            this.state = state;
+            this.firstDataFileId = firstDataFileId;
+            this.firstOffset = firstOffset;
+            this.lastDataFileId = lastDataFileId;
+            this.recordCount = recordCount;
+            this.size = size;
+            this.lifetimeRecords = lifetimeRecords;
+            this.lifetimeSize = lifetimeSize;
+        }
+
+        //---------------------------------------------------------------------
+        public boolean isPrepared() {
+            return state == STATE_PREPARED;
+        }
+        public boolean isCommitted() {
+            return state == STATE_COMMITTED;
+        }
+        public boolean isRolledBack() {
+            return state == STATE_ROLLED_BACK;
+        }
+        public String getStateName() {
+            switch (state) {
+                case STATE_INFLIGHT: {
+                    return "INFLIGHT";
+                }
+                case STATE_PREPARED: {
+                    return "PREPARED";
+                }
+                case STATE_COMMITTED: {
+                    return "COMMITTED";
+                }
+                default: {
+                    return "ROLLED_BACK";
+                }
+            }
+        }
+        //---------------------------------------------------------------------
+        public Location getFirstLocation() {
+            return new Location(firstDataFileId, firstOffset);
+        }
+        public int getFirstDataFileId() {
+            return firstDataFileId;
+        }
+        public int getFirstOffset() {
+            return firstOffset;
+        }
+        public int getLastDataFileId() {
+            return lastDataFileId;
+        }
+        //---------------------------------------------------------------------
+        public int getRecordCount() {
+            return recordCount;
+        }
+        public long getSize() {
+            return size;
+        }
+        public long getLifetimeRecords() {
+            return lifetimeRecords;
+        }
+        public long getLifetimeSize() {
+            return lifetimeSize;
+        }
+        //---------------------------------------------------------------------
+    }
+    //-------------------------------------------------------------------------
+}
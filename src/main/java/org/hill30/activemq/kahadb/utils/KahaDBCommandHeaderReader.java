@@ -0,0 +1,173 @@
+package org.hill30.activemq.kahadb.utils;
+
+import org.apache.activemq.protobuf.Buffer;
+import org.apache.activemq.store.kahadb.JournalCommand;
+import org.apache.activemq.store.kahadb.data.*;
+import org.apache.activemq.util.ByteSequence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+final class KahaDBCommandHeaderReader {
+    //region private
+    private static final int WIRETYPE_VARINT = 0;
+    private static final int WIRETYPE_FIXED64 = 1;
+    private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+    private static final int WIRETYPE_FIXED32 = 5;
+    //-------------------------------------------------------------------------
+    //KahaAddMessageCommand fields: transaction_info = 1, destination = 2, messageId = 3, message = 4, priority = 5, prioritySupported = 6
+    private static final int ADD_TRANSACTION_INFO_TAG = (1 << 3) | WIRETYPE_LENGTH_DELIMITED;
+    private static final int ADD_DESTINATION_TAG = (2 << 3) | WIRETYPE_LENGTH_DELIMITED;
+    private static final int ADD_MESSAGE_ID_TAG = (3 << 3) | WIRETYPE_LENGTH_DELIMITED;
+    private static final int ADD_PRIORITY_TAG = (5 << 3) | WIRETYPE_VARINT;
+    private static final int ADD_PRIORITY_SUPPORTED_TAG = (6 << 3) | WIRETYPE_VARINT;
+    //KahaUpdateMessageCommand fields: message = 1
+    private static final int UPDATE_MESSAGE_TAG = (1 << 3) | WIRETYPE_LENGTH_DELIMITED;
+    //-------------------------------------------------------------------------
+    private final byte[] data;
+    private int position;
+    //-------------------------------------------------------------------------
+    private long readVarint(int limit) throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            if(position >= limit) {
+                throw new EOFException();
+            }
+            byte b = data[position++];
+            value |= (long)(b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint.");
+    }
+    private int readLength(int limit) throws IOException {
+        long length = readVarint(limit);
+        if(length < 0 || position + length > limit) {
+            throw new EOFException();
+        }
+        return (int)length;
+    }
+    private void skipField(int tag, int limit) throws IOException {
+        switch (tag & 7) {
+            case WIRETYPE_VARINT: {
+                readVarint(limit);
+                break;
+            }
+            case WIRETYPE_FIXED64: {
+                skip(8, limit);
+                break;
+            }
+            case WIRETYPE_LENGTH_DELIMITED: {
+                skip(readLength(limit), limit);
+                break;
+            }
+            case WIRETYPE_FIXED32: {
+                skip(4, limit);
+                break;
+            }
+            default: {
+                throw new IOException("Unsupported wire type: " + (tag & 7) + ".");
+            }
+        }
+    }
+    private void skip(int count, int limit) throws IOException {
+        if(position + count > limit) {
+            throw new EOFException();
+        }
+        position += count;
+    }
+    //-------------------------------------------------------------------------
+    private KahaAddMessageCommand readAddMessageCommand(int limit) throws IOException {
+        KahaAddMessageCommand command = new KahaAddMessageCommand();
+        while (position < limit) {
+            int tag = (int)readVarint(limit);
+            switch (tag) {
+                case ADD_TRANSACTION_INFO_TAG: {
+                    int length = readLength(limit);
+                    command.setTransactionInfo(new KahaTransactionInfo().mergeUnframed(new Buffer(data, position, length)));
+                    position += length;
+                    break;
+                }
+                case ADD_DESTINATION_TAG: {
+                    int length = readLength(limit);
+                    command.setDestination(new KahaDestination().mergeUnframed(new Buffer(data, position, length)));
+                    position += length;
+                    break;
+                }
+                case ADD_MESSAGE_ID_TAG: {
+                    int length = readLength(limit);
+                    command.setMessageId(new String(data, position, length, StandardCharsets.UTF_8));
+                    position += length;
+                    break;
+                }
+                case ADD_PRIORITY_TAG: {
+                    command.setPriority((int)readVarint(limit));
+                    break;
+                }
+                case ADD_PRIORITY_SUPPORTED_TAG: {
+                    command.setPrioritySupported(readVarint(limit) != 0);
+                    break;
+                }
+                default: {
+                    //the message body and anything unknown is stepped over by its length
+                    skipField(tag, limit);
+                    break;
+                }
+            }
+        }
+        return command;
+    }
+    private KahaUpdateMessageCommand readUpdateMessageCommand(int limit) throws IOException {
+        KahaUpdateMessageCommand command = new KahaUpdateMessageCommand();
+        while (position < limit) {
+            int tag = (int)readVarint(limit);
+            if(tag == UPDATE_MESSAGE_TAG) {
+                int length = readLength(limit);
+                int messageLimit = position + length;
+                command.setMessage(readAddMessageCommand(messageLimit));
+            }
+            else {
+                skipField(tag, limit);
+            }
+        }
+        return command;
+    }
+    //endregion
+    private KahaDBCommandHeaderReader(byte[] data, int position) {
+        this.data = data;
+        this.position = position;
+    }
+
+    //-------------------------------------------------------------------------
+    static KahaEntryType readCommandType(ByteSequence sequence) {
+        return KahaEntryType.valueOf(sequence.getData()[sequence.getOffset()]);
+    }
+    static JournalCommand<?> readCommandHeader(ByteSequence sequence) throws IOException {
+        KahaEntryType commandType = readCommandType(sequence);
+        switch (commandType) {
+            case KAHA_ADD_MESSAGE_COMMAND:
+            case KAHA_UPDATE_MESSAGE_COMMAND: {
+                //the fields are read in place, the message body is neither allocated nor copied
+                KahaDBCommandHeaderReader reader = new KahaDBCommandHeaderReader(sequence.getData(), sequence.getOffset() + 1);
+                int end = sequence.getOffset() + sequence.getLength();
+                int length = reader.readLength(end);
+                int limit = reader.position + length;
+                return commandType == KahaEntryType.KAHA_ADD_MESSAGE_COMMAND
+                        ? reader.readAddMessageCommand(limit)
+                        : reader.readUpdateMessageCommand(limit);
+            }
+            case KAHA_ACK_MESSAGE_FILE_MAP_COMMAND:
+            case KAHA_PRODUCER_AUDIT_COMMAND: {
+                //serialized java objects, only their type is a header
+                return (JournalCommand<?>)commandType.createMessage();
+            }
+            default: {
+                //the other commands are ids only, they are decoded as they are
+                return KahaDBUtils.readCommand(sequence);
+            }
+        }
+    }
+    //-------------------------------------------------------------------------
+}
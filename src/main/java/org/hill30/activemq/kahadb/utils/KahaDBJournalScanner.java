@@ -0,0 +1,187 @@
+package org.hill30.activemq.kahadb.utils;
+
+import org.apache.activemq.store.kahadb.data.KahaEntryType;
+import org.apache.activemq.store.kahadb.disk.journal.DataFile;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.apache.activemq.util.ByteSequence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+
+public final class KahaDBJournalScanner {
+    //region private
+    private final Iterator<DataFile> dataFiles;
+    private final int startDataFileId;
+    private final int startOffset;
+    //-------------------------------------------------------------------------
+    private DataFile dataFile;
+    private MappedByteBuffer data;
+    private int dataLength;
+    private int offset;
+    //-------------------------------------------------------------------------
+    private Location location;
+    private ByteSequence sequence;
+    //-------------------------------------------------------------------------
+    private boolean nextDataFile() throws IOException {
+        data = null;
+        dataLength = 0;
+        offset = 0;
+
+        if(!dataFiles.hasNext()) {
+            dataFile = null;
+            return false;
+        }
+
+        dataFile = dataFiles.next();
+        if(dataFile.getDataFileId() == startDataFileId) {
+            offset = startOffset;
+        }
+        try (FileChannel channel = FileChannel.open(dataFile.getFile().toPath(), StandardOpenOption.READ)) {
+            //record heads are read from the mapped file, a record is copied only when its sequence is asked for
+            dataLength = (int)Math.min(dataFile.getLength(), channel.size());
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataLength);
+        }
+        return true;
+    }
+    private boolean nextRecord() {
+        while (offset + Journal.RECORD_HEAD_SPACE <= dataLength) {
+            int size = data.getInt(offset);
+            byte type = data.get(offset + 4);
+
+            //an empty record is the end of the written data, like in Journal.getNextLocation
+            if(type == 0 || size < Journal.RECORD_HEAD_SPACE || offset + size > dataLength) {
+                return false;
+            }
+
+            int recordOffset = offset;
+            offset += size;
+
+            //batch control records are skipped, the batch records follow them
+            if(type == Journal.USER_RECORD_TYPE) {
+                location = new Location(dataFile.getDataFileId(), recordOffset);
+                location.setSize(size);
+                location.setType(type);
+                return true;
+            }
+        }
+        return false;
+    }
+    //-------------------------------------------------------------------------
+    private static List<DataFile> getDataFiles(Journal journal) {
+        if(journal == null) {
+            throw new NullPointerException("journal");
+        }
+
+        return new ArrayList<>(new TreeMap<>(journal.getFileMap()).values());
+    }
+    //endregion
+    public KahaDBJournalScanner(Journal journal) {
+        this.dataFiles = getDataFiles(journal).iterator();
+        this.startDataFileId = -1;
+        this.startOffset = 0;
+    }
+    public KahaDBJournalScanner(Journal journal, int firstDataFileId, int lastDataFileId) {
+        if(journal == null) {
+            throw new NullPointerException("journal");
+        }
+
+        this.dataFiles = new ArrayList<>(new TreeMap<>(journal.getFileMap()).subMap(firstDataFileId, true, lastDataFileId, true).values()).iterator();
+        this.startDataFileId = -1;
+        this.startOffset = 0;
+    }
+    public KahaDBJournalScanner(Journal journal, Location start) {
+        if(journal == null) {
+            throw new NullPointerException("journal");
+        }
+        if(start == null) {
+            throw new NullPointerException("start");
+        }
+        if(start.getOffset() < 0) {
+            throw new IndexOutOfBoundsException("start");
+        }
+
+        //the start offset must be a record boundary of the first data file
+        this.dataFiles = new ArrayList<>(new TreeMap<>(journal.getFileMap()).tailMap(start.getDataFileId(), true).values()).iterator();
+        this.startDataFileId = start.getDataFileId();
+        this.startOffset = start.getOffset();
+    }
+    public KahaDBJournalScanner(Journal journal, int dataFileId) {
+        if(journal == null) {
+            throw new NullPointerException("journal");
+        }
+
+        DataFile dataFile = journal.getFileMap().get(dataFileId);
+        if(dataFile == null) {
+            throw new IndexOutOfBoundsException("dataFileId");
+        }
+        this.dataFiles = Collections.singletonList(dataFile).iterator();
+        this.startDataFileId = -1;
+        this.startOffset = 0;
+    }
+    public KahaDBJournalScanner(DataFile dataFile, int startOffset) {
+        if(dataFile == null) {
+            throw new NullPointerException("dataFile");
+        }
+        if(startOffset < 0) {
+            throw new IndexOutOfBoundsException("startOffset");
+        }
+
+        //the start offset must be a record boundary of the data file
+        this.dataFiles = Collections.singletonList(dataFile).iterator();
+        this.startDataFileId = dataFile.getDataFileId();
+        this.startOffset = startOffset;
+    }
+
+    //-------------------------------------------------------------------------
+    public boolean next() throws IOException {
+        location = null;
+        sequence = null;
+
+        if(dataFile == null && !nextDataFile()) {
+            return false;
+        }
+        while (!nextRecord()) {
+            if(!nextDataFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    //-------------------------------------------------------------------------
+    public File getFile() {
+        return dataFile == null ? null : dataFile.getFile();
+    }
+    public Location getLocation() {
+        return location;
+    }
+    public KahaEntryType getCommandType() {
+        if(location == null) {
+            return null;
+        }
+
+        //the type is the first byte of the record data, nothing is copied
+        return KahaEntryType.valueOf(data.get(location.getOffset() + Journal.RECORD_HEAD_SPACE));
+    }
+    public ByteSequence getSequence() {
+        if(sequence == null && location != null) {
+            //each sequence has its own array, decoded commands can keep slices of it
+            byte[] record = new byte[location.getSize() - Journal.RECORD_HEAD_SPACE];
+            ByteBuffer buffer = data.duplicate();
+            buffer.position(location.getOffset() + Journal.RECORD_HEAD_SPACE);
+            buffer.get(record);
+            sequence = new ByteSequence(record);
+        }
+        return sequence;
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,76 @@
+package org.hill30.activemq.kahadb.utils;
+
+public final class KahaDBMessageKey {
+    //region private
+    private final int producerId;
+    private final long sequenceId;
+    private final int hash;
+    //endregion
+    public KahaDBMessageKey(int producerId, long sequenceId) {
+        if(producerId < 0) {
+            throw new IndexOutOfBoundsException("producerId");
+        }
+
+        this.producerId = producerId;
+        this.sequenceId = sequenceId;
+        this.hash = hash(producerId, sequenceId);
+    }
+
+    //-------------------------------------------------------------------------
+    public int getProducerId() {
+        return producerId;
+    }
+    public long getSequenceId() {
+        return sequenceId;
+    }
+    //-------------------------------------------------------------------------
+    public boolean equals(int producerId, long sequenceId) {
+        return this.producerId == producerId && this.sequenceId == sequenceId;
+    }
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof KahaDBMessageKey)) {
+            return false;
+        }
+
+        KahaDBMessageKey other = (KahaDBMessageKey)o;
+        return equals(other.producerId, other.sequenceId);
+    }
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+    @Override
+    public String toString() {
+        return producerId + ":" + sequenceId;
+    }
+    //-------------------------------------------------------------------------
+    public static int hash(int producerId, long sequenceId) {
+        return 31 * producerId + (int)(sequenceId ^ (sequenceId >>> 32));
+    }
+    //-------------------------------------------------------------------------
+    static long parseSequenceId(String messageId, int offset) {
+        int length = messageId.length();
+        if(offset >= length || length - offset > 18) {
+            return -1;
+        }
+        //a zero padded sequence would not map back to the same message id
+        if(messageId.charAt(offset) == '0' && length - offset > 1) {
+            return -1;
+        }
+
+        long sequenceId = 0;
+        for(int i = offset; i < length; ++i) {
+            char c = messageId.charAt(i);
+            if(c < '0' || c > '9') {
+                return -1;
+            }
+            sequenceId = sequenceId * 10 + (c - '0');
+        }
+        return sequenceId;
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,164 @@
+package org.hill30.activemq.kahadb.utils;
+
+import org.apache.activemq.store.kahadb.data.KahaDestination;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class KahaDBSymbolTable {
+    //region private
+    private final HashMap<String, Integer> symbols = new HashMap<>();
+    private final EnumMap<KahaDestination.DestinationType, HashMap<String, Integer>> destinationSymbols = new EnumMap<>(KahaDestination.DestinationType.class);
+    private final ArrayList<String> names = new ArrayList<>();
+    //-------------------------------------------------------------------------
+    private int addName(String name) {
+        names.add(name);
+        return names.size() - 1;
+    }
+    private HashMap<String, Integer> getDestinationSymbols(KahaDestination.DestinationType destinationType) {
+        HashMap<String, Integer> typeSymbols = destinationSymbols.get(destinationType);
+        if(typeSymbols == null) {
+            typeSymbols = new HashMap<>();
+            destinationSymbols.put(destinationType, typeSymbols);
+        }
+        return typeSymbols;
+    }
+    private KahaDBMessageKey getMessageKey(String messageId, boolean intern) {
+        if(messageId == null) {
+            return null;
+        }
+
+        //ActiveMQ message ids are "<producerId>:<producerSequenceId>"
+        int separator = messageId.lastIndexOf(':');
+        long sequenceId = separator < 0 ? -1 : KahaDBMessageKey.parseSequenceId(messageId, separator + 1);
+
+        String producerId = sequenceId < 0 ? messageId : messageId.substring(0, separator);
+        int producerSymbol = intern ? intern(producerId) : getSymbol(producerId);
+
+        return producerSymbol < 0 ? null : new KahaDBMessageKey(producerSymbol, sequenceId);
+    }
+    //endregion
+    //-------------------------------------------------------------------------
+    public int size() {
+        return names.size();
+    }
+    public String getName(int symbol) {
+        if(symbol < 0 || symbol >= names.size()) {
+            throw new IndexOutOfBoundsException("symbol");
+        }
+
+        return names.get(symbol);
+    }
+    //-------------------------------------------------------------------------
+    public int intern(String name) {
+        if(name == null) {
+            throw new NullPointerException("name");
+        }
+
+        Integer symbol = symbols.get(name);
+        if(symbol == null) {
+            symbol = addName(name);
+            symbols.put(name, symbol);
+        }
+        return symbol;
+    }
+    public int getSymbol(String name) {
+        Integer symbol = name == null ? null : symbols.get(name);
+        return symbol == null ? -1 : symbol;
+    }
+    //-------------------------------------------------------------------------
+    public int intern(KahaDestination destination) {
+        if(destination == null) {
+            throw new NullPointerException("destination");
+        }
+
+        HashMap<String, Integer> typeSymbols = getDestinationSymbols(destination.getType());
+        Integer symbol = typeSymbols.get(destination.getName());
+        if(symbol == null) {
+            symbol = addName(KahaDBUtils.getDestinationId(destination));
+            typeSymbols.put(destination.getName(), symbol);
+        }
+        return symbol;
+    }
+    public int getSymbol(KahaDestination destination) {
+        if(destination == null) {
+            return -1;
+        }
+
+        HashMap<String, Integer> typeSymbols = destinationSymbols.get(destination.getType());
+        Integer symbol = typeSymbols == null ? null : typeSymbols.get(destination.getName());
+        return symbol == null ? -1 : symbol;
+    }
+    //-------------------------------------------------------------------------
+    public KahaDBMessageKey internMessageKey(String messageId) {
+        return getMessageKey(messageId, true);
+    }
+    public KahaDBMessageKey getMessageKey(String messageId) {
+        return getMessageKey(messageId, false);
+    }
+    public String getMessageId(KahaDBMessageKey messageKey) {
+        if(messageKey == null) {
+            throw new NullPointerException("messageKey");
+        }
+
+        String producerId = getName(messageKey.getProducerId());
+        return messageKey.getSequenceId() < 0 ? producerId : producerId + ":" + messageKey.getSequenceId();
+    }
+    //-------------------------------------------------------------------------
+    public void write(DataOutput output) throws IOException {
+        if(output == null) {
+            throw new NullPointerException("output");
+        }
+
+        //destination symbols are written with their type and name, other symbols with their name
+        KahaDestination.DestinationType[] destinationTypes = new KahaDestination.DestinationType[names.size()];
+        String[] destinationNames = new String[names.size()];
+        for (Map.Entry<KahaDestination.DestinationType, HashMap<String, Integer>> typeSymbols : destinationSymbols.entrySet()) {
+            for (Map.Entry<String, Integer> symbol : typeSymbols.getValue().entrySet()) {
+                destinationTypes[symbol.getValue()] = typeSymbols.getKey();
+                destinationNames[symbol.getValue()] = symbol.getKey();
+            }
+        }
+
+        output.writeInt(names.size());
+        for(int symbol = 0; symbol < names.size(); ++symbol) {
+            if(destinationTypes[symbol] != null) {
+                output.writeInt(destinationTypes[symbol].getNumber());
+                output.writeUTF(destinationNames[symbol]);
+            }
+            else {
+                output.writeInt(-1);
+                output.writeUTF(names.get(symbol));
+            }
+        }
+    }
+    public static KahaDBSymbolTable read(DataInput input) throws IOException {
+        if(input == null) {
+            throw new NullPointerException("input");
+        }
+
+        KahaDBSymbolTable symbolTable = new KahaDBSymbolTable();
+
+        int size = input.readInt();
+        for(int symbol = 0; symbol < size; ++symbol) {
+            int destinationType = input.readInt();
+            String name = input.readUTF();
+            if(destinationType < 0) {
+                symbolTable.symbols.put(name, symbolTable.addName(name));
+            }
+            else {
+                KahaDestination destination = new KahaDestination();
+                destination.setType(KahaDestination.DestinationType.valueOf(destinationType));
+                destination.setName(name);
+                symbolTable.intern(destination);
+            }
+        }
+        return symbolTable;
+    }
+    //-------------------------------------------------------------------------
+}
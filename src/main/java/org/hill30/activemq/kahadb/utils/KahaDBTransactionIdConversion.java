@@ -10,6 +10,42 @@ import org.apache.activemq.store.kahadb.data.KahaTransactionInfo;
 import org.apache.activemq.store.kahadb.data.KahaXATransactionId;
 
 public final class KahaDBTransactionIdConversion {
+    //region private
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final long LOCAL_TRANSACTION_TAG = 1;
+    private static final long XA_TRANSACTION_TAG = 2;
+    //-------------------------------------------------------------------------
+    private static long hashLong(long hash, long value) {
+        for(int shift = 0; shift < 64; shift += 8) {
+            hash = (hash ^ ((value >>> shift) & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+    private static long hashBuffer(long hash, Buffer buffer) {
+        //the length separates the global id from the branch qualifier
+        if(buffer == null) {
+            return hashLong(hash, -1);
+        }
+
+        byte[] data = buffer.getData();
+        int end = buffer.getOffset() + buffer.getLength();
+        hash = hashLong(hash, buffer.getLength());
+        for(int i = buffer.getOffset(); i < end; ++i) {
+            hash = (hash ^ (data[i] & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+    private static long mix(long hash) {
+        //the murmur3 finalizer, the low bits are used as hash table slots
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+    //endregion
     //-------------------------------------------------------------------------
     public static KahaTransactionInfo convertToLocal(TransactionId tx) {
         if(tx == null) {
@@ -64,5 +100,46 @@ public final class KahaDBTransactionIdConversion {
             return rc;
         }
     }
+    public static StringBuilder append(StringBuilder target, KahaTransactionInfo transactionInfo) {
+        if(target == null) {
+            throw new NullPointerException("target");
+        }
+        if(transactionInfo == null) {
+            throw new NullPointerException("transactionInfo");
+        }
+
+        if(!transactionInfo.hasLocalTransactionId()) {
+            return target.append(convert(transactionInfo));
+        }
+
+        //the same text as LocalTransactionId, without building it and its ConnectionId
+        KahaLocalTransactionId tx = transactionInfo.getLocalTransactionId();
+        return target.append("TX:").append(tx.getConnectionId()).append(':').append(tx.getTransactionId());
+    }
+    //-------------------------------------------------------------------------
+    public static long hash(KahaTransactionInfo transactionInfo) {
+        if(transactionInfo == null) {
+            throw new NullPointerException("transactionInfo");
+        }
+
+        //64 bit FNV-1a of the id fields as they are decoded, no TransactionId is built
+        long hash = FNV_OFFSET_BASIS;
+        if (transactionInfo.hasLocalTransactionId()) {
+            KahaLocalTransactionId tx = transactionInfo.getLocalTransactionId();
+            hash = hashLong(hash, LOCAL_TRANSACTION_TAG);
+            String connectionId = tx.getConnectionId();
+            for(int i = 0; i < connectionId.length(); ++i) {
+                hash = (hash ^ connectionId.charAt(i)) * FNV_PRIME;
+            }
+            hash = hashLong(hash, tx.getTransactionId());
+        } else {
+            KahaXATransactionId tx = transactionInfo.getXaTransactionId();
+            hash = hashLong(hash, XA_TRANSACTION_TAG);
+            hash = hashLong(hash, tx.getFormatId());
+            hash = hashBuffer(hash, tx.getGlobalTransactionId());
+            hash = hashBuffer(hash, tx.getBranchQualifier());
+        }
+        return mix(hash);
+    }
     //-------------------------------------------------------------------------
 }
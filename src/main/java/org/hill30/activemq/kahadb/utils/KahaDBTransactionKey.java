@@ -0,0 +1,134 @@
+package org.hill30.activemq.kahadb.utils;
+
+import org.apache.activemq.command.TransactionId;
+import org.apache.activemq.protobuf.Buffer;
+import org.apache.activemq.store.kahadb.data.KahaLocalTransactionId;
+import org.apache.activemq.store.kahadb.data.KahaTransactionInfo;
+import org.apache.activemq.store.kahadb.data.KahaXATransactionId;
+
+import java.util.Objects;
+
+public final class KahaDBTransactionKey {
+    //region private
+    //a local transaction has the connection id, a XA transaction the format id and the buffers
+    private final String connectionId;
+    private final long transactionId;
+    private final int formatId;
+    private final Buffer globalTransactionId;
+    private final Buffer branchQualifier;
+    private final int hash;
+    //-------------------------------------------------------------------------
+    private static boolean isCompact(Buffer buffer) {
+        return buffer == null || (buffer.offset == 0 && buffer.length == buffer.data.length);
+    }
+    //endregion
+    public KahaDBTransactionKey(KahaTransactionInfo transactionInfo) {
+        if(transactionInfo == null) {
+            throw new NullPointerException("transactionInfo");
+        }
+
+        //the decoded fields are kept as they are, the XA buffers stay slices of the decoded record until compact()
+        if (transactionInfo.hasLocalTransactionId()) {
+            KahaLocalTransactionId tx = transactionInfo.getLocalTransactionId();
+            this.connectionId = tx.getConnectionId();
+            this.transactionId = tx.getTransactionId();
+            this.formatId = 0;
+            this.globalTransactionId = null;
+            this.branchQualifier = null;
+        } else {
+            KahaXATransactionId tx = transactionInfo.getXaTransactionId();
+            this.connectionId = null;
+            this.transactionId = 0;
+            this.formatId = tx.getFormatId();
+            this.globalTransactionId = tx.getGlobalTransactionId();
+            this.branchQualifier = tx.getBranchQualifier();
+        }
+        long transactionHash = KahaDBTransactionIdConversion.hash(transactionInfo);
+        this.hash = (int)(transactionHash ^ (transactionHash >>> 32));
+    }
+    private KahaDBTransactionKey(KahaDBTransactionKey key, Buffer globalTransactionId, Buffer branchQualifier) {
+        this.connectionId = key.connectionId;
+        this.transactionId = key.transactionId;
+        this.formatId = key.formatId;
+        this.globalTransactionId = globalTransactionId;
+        this.branchQualifier = branchQualifier;
+        this.hash = key.hash;
+    }
+
+    //-------------------------------------------------------------------------
+    public boolean isLocalTransaction() {
+        return connectionId != null;
+    }
+    public String getConnectionId() {
+        return connectionId;
+    }
+    public long getTransactionId() {
+        return transactionId;
+    }
+    public int getFormatId() {
+        return formatId;
+    }
+    public Buffer getGlobalTransactionId() {
+        return globalTransactionId;
+    }
+    public Buffer getBranchQualifier() {
+        return branchQualifier;
+    }
+    //-------------------------------------------------------------------------
+    public KahaDBTransactionKey compact() {
+        //a lookup key can stay on the slices, a stored key gets its own exact-size XA buffers
+        if(isLocalTransaction() || (isCompact(globalTransactionId) && isCompact(branchQualifier))) {
+            return this;
+        }
+        return new KahaDBTransactionKey(this, globalTransactionId.compact(), branchQualifier.compact());
+    }
+    //-------------------------------------------------------------------------
+    public KahaTransactionInfo toTransactionInfo() {
+        KahaTransactionInfo transactionInfo = new KahaTransactionInfo();
+        if(isLocalTransaction()) {
+            KahaLocalTransactionId tx = new KahaLocalTransactionId();
+            tx.setConnectionId(connectionId);
+            tx.setTransactionId(transactionId);
+            transactionInfo.setLocalTransactionId(tx);
+        } else {
+            KahaXATransactionId tx = new KahaXATransactionId();
+            tx.setFormatId(formatId);
+            tx.setGlobalTransactionId(globalTransactionId);
+            tx.setBranchQualifier(branchQualifier);
+            transactionInfo.setXaTransactionId(tx);
+        }
+        return transactionInfo;
+    }
+    public TransactionId toTransactionId() {
+        //for display only, the key itself never needs the ActiveMQ id
+        return KahaDBTransactionIdConversion.convert(toTransactionInfo());
+    }
+    //-------------------------------------------------------------------------
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof KahaDBTransactionKey)) {
+            return false;
+        }
+
+        KahaDBTransactionKey other = (KahaDBTransactionKey)o;
+        return hash == other.hash
+                && transactionId == other.transactionId
+                && formatId == other.formatId
+                && Objects.equals(connectionId, other.connectionId)
+                && Objects.equals(globalTransactionId, other.globalTransactionId)
+                && Objects.equals(branchQualifier, other.branchQualifier);
+    }
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+    @Override
+    public String toString() {
+        //the same text as the ActiveMQ transaction id
+        return KahaDBTransactionIdConversion.append(new StringBuilder(), toTransactionInfo()).toString();
+    }
+    //-------------------------------------------------------------------------
+}
@@ -1,15 +1,27 @@
 package org.hill30.activemq.kahadb.utils;
 
-import org.apache.activemq.store.kahadb.data.KahaDestination;
+import org.apache.activemq.store.kahadb.JournalCommand;
+import org.apache.activemq.store.kahadb.data.*;
 import org.apache.activemq.store.kahadb.disk.journal.Journal;
 import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.apache.activemq.store.kahadb.disk.util.DataByteArrayInputStream;
+import org.apache.activemq.util.ByteSequence;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 
 public final class KahaDBUtils {
+    //region private
+    private static final int HASH_BLOCK_SIZE = 8 * 1024 * 1024;
+    //endregion
     //-------------------------------------------------------------------------
     public static Journal createJournal(File directory) {
         int journalSize = getJournalSize(directory);
@@ -51,6 +63,75 @@ public final class KahaDBUtils {
         return journalSize;
     }
     //-------------------------------------------------------------------------
+    public static JournalCommand<?> readCommand(ByteSequence sequence) throws IOException {
+        if(sequence == null) {
+            throw new NullPointerException("sequence");
+        }
+
+        DataByteArrayInputStream sequenceInputStream = createInputStream(sequence);
+        KahaEntryType commandType = KahaEntryType.valueOf(sequenceInputStream.readByte());
+
+        JournalCommand<?> command = (JournalCommand<?>)commandType.createMessage();
+        command.mergeFramed(sequenceInputStream);
+        return command;
+    }
+    public static JournalCommand<?> readCommandHeader(ByteSequence sequence) throws IOException {
+        if(sequence == null) {
+            throw new NullPointerException("sequence");
+        }
+
+        //ids, destinations and transactions without the message bodies, for scans which never read them
+        return KahaDBCommandHeaderReader.readCommandHeader(sequence);
+    }
+    public static KahaEntryType readCommandType(ByteSequence sequence) {
+        if(sequence == null) {
+            throw new NullPointerException("sequence");
+        }
+
+        return KahaDBCommandHeaderReader.readCommandType(sequence);
+    }
+    public static DataByteArrayInputStream createInputStream(ByteSequence sequence) {
+        if(sequence == null) {
+            throw new NullPointerException("sequence");
+        }
+
+        //the stream takes the sequence length as its end position, slices with an offset need the real end
+        DataByteArrayInputStream sequenceInputStream = new DataByteArrayInputStream(sequence);
+        sequenceInputStream.setLength(sequence.getOffset() + sequence.getLength());
+        return sequenceInputStream;
+    }
+    //-------------------------------------------------------------------------
+    public static void writeLocation(DataOutput output, Location location) throws IOException {
+        output.writeInt(location.getDataFileId());
+        output.writeInt(location.getOffset());
+        output.writeInt(location.getSize());
+    }
+    public static Location readLocation(DataInput input) throws IOException {
+        Location location = new Location(input.readInt(), input.readInt());
+        location.setSize(input.readInt());
+        location.setType(Journal.USER_RECORD_TYPE);
+        return location;
+    }
+    //-------------------------------------------------------------------------
+    public static long getHash(File file, long length) throws IOException {
+        if(file == null) {
+            throw new NullPointerException("file");
+        }
+        if(length < 0) {
+            throw new IndexOutOfBoundsException("length");
+        }
+
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long hashLength = Math.min(length, channel.size());
+            for(long position = 0; position < hashLength; position += HASH_BLOCK_SIZE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(HASH_BLOCK_SIZE, hashLength - position));
+                crc.update(buffer);
+            }
+        }
+        return crc.getValue();
+    }
+    //-------------------------------------------------------------------------
     public static String bytesToString(long sizeInBytes) {
         final double SPACE_KB = 1024;
         final double SPACE_MB = 1024 * SPACE_KB;
@@ -87,6 +168,90 @@ public final class KahaDBUtils {
         return destination.getType().getNumber() + ":" + destination.getName();
     }
     //-------------------------------------------------------------------------
+    public static KahaDestination getCommandDestination(JournalCommand<?> command) {
+        switch (command.type()) {
+            case KAHA_ADD_MESSAGE_COMMAND: {
+                return ((KahaAddMessageCommand)command).getDestination();
+            }
+            case KAHA_UPDATE_MESSAGE_COMMAND: {
+                return ((KahaUpdateMessageCommand)command).getMessage().getDestination();
+            }
+            case KAHA_REMOVE_MESSAGE_COMMAND: {
+                return ((KahaRemoveMessageCommand)command).getDestination();
+            }
+            case KAHA_REMOVE_DESTINATION_COMMAND: {
+                return ((KahaRemoveDestinationCommand)command).getDestination();
+            }
+            case KAHA_SUBSCRIPTION_COMMAND: {
+                return ((KahaSubscriptionCommand)command).getDestination();
+            }
+            default: {
+                return null;
+            }
+        }
+    }
+    public static String getCommandMessageId(JournalCommand<?> command) {
+        switch (command.type()) {
+            case KAHA_ADD_MESSAGE_COMMAND: {
+                return ((KahaAddMessageCommand)command).getMessageId();
+            }
+            case KAHA_UPDATE_MESSAGE_COMMAND: {
+                return ((KahaUpdateMessageCommand)command).getMessage().getMessageId();
+            }
+            case KAHA_REMOVE_MESSAGE_COMMAND: {
+                return ((KahaRemoveMessageCommand)command).getMessageId();
+            }
+            default: {
+                return null;
+            }
+        }
+    }
+    public static KahaTransactionInfo getCommandTransactionInfo(JournalCommand<?> command) {
+        switch (command.type()) {
+            case KAHA_ADD_MESSAGE_COMMAND: {
+                KahaAddMessageCommand addMessageCommand = (KahaAddMessageCommand)command;
+                return addMessageCommand.hasTransactionInfo() ? addMessageCommand.getTransactionInfo() : null;
+            }
+            case KAHA_UPDATE_MESSAGE_COMMAND: {
+                KahaAddMessageCommand addMessageCommand = ((KahaUpdateMessageCommand)command).getMessage();
+                return addMessageCommand.hasTransactionInfo() ? addMessageCommand.getTransactionInfo() : null;
+            }
+            case KAHA_REMOVE_MESSAGE_COMMAND: {
+                KahaRemoveMessageCommand removeMessageCommand = (KahaRemoveMessageCommand)command;
+                return removeMessageCommand.hasTransactionInfo() ? removeMessageCommand.getTransactionInfo() : null;
+            }
+            case KAHA_COMMIT_COMMAND: {
+                KahaCommitCommand commitCommand = (KahaCommitCommand)command;
+                return commitCommand.hasTransactionInfo() ? commitCommand.getTransactionInfo() : null;
+            }
+            case KAHA_PREPARE_COMMAND: {
+                KahaPrepareCommand prepareCommand = (KahaPrepareCommand)command;
+                return prepareCommand.hasTransactionInfo() ? prepareCommand.getTransactionInfo() : null;
+            }
+            case KAHA_ROLLBACK_COMMAND: {
+                KahaRollbackCommand rollbackCommand = (KahaRollbackCommand)command;
+                return rollbackCommand.hasTransactionInfo() ? rollbackCommand.getTransactionInfo() : null;
+            }
+            default: {
+                return null;
+            }
+        }
+    }
+    public static String getCommandSubscriptionKey(JournalCommand<?> command) {
+        switch (command.type()) {
+            case KAHA_REMOVE_MESSAGE_COMMAND: {
+                KahaRemoveMessageCommand removeMessageCommand = (KahaRemoveMessageCommand)command;
+                return removeMessageCommand.hasSubscriptionKey() ? removeMessageCommand.getSubscriptionKey() : null;
+            }
+            case KAHA_SUBSCRIPTION_COMMAND: {
+                return ((KahaSubscriptionCommand)command).getSubscriptionKey();
+            }
+            default: {
+                return null;
+            }
+        }
+    }
+    //-------------------------------------------------------------------------
     public static boolean isDestinationTopic(KahaDestination destination) {
         return destination.getType() == KahaDestination.DestinationType.TOPIC;
     }
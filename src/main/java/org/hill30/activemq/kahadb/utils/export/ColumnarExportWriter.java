@@ -0,0 +1,124 @@
+package org.hill30.activemq.kahadb.utils.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+//header: "KDBC", version byte, column count, then type byte and name of every column
+//block: record count, then byte length and values of every column; a block of 0 records ends the stream
+//LONG: 0 is absent, else zigzag of the difference to the previous value of the block + 1
+//SYMBOL: 0 is absent, else index + 1 in the stream dictionary; the next index defines the symbol inline
+//STRING: 0 is absent, else byte length + 1 and the UTF-8 bytes
+//all numbers are unsigned varints
+final class ColumnarExportWriter extends ExportWriter {
+    //region private
+    private static final byte[] MAGIC = {'K', 'D', 'B', 'C'};
+    private static final int VERSION = 1;
+    private static final int BLOCK_SIZE = 4096;
+    //-------------------------------------------------------------------------
+    private final ExportBuffer buffer = new ExportBuffer(FLUSH_SIZE + 4096);
+    private final ExportBuffer[] columns;
+    private final long[] lastValues;
+    private final List<HashMap<String, Integer>> dictionaries;
+    private int blockCount;
+    //-------------------------------------------------------------------------
+    private void writeSymbol(ExportBuffer column, HashMap<String, Integer> dictionary, CharSequence value) {
+        //symbols are short-lived strings of the commands, they are only copied when they are new
+        String symbol = value.toString();
+        Integer index = dictionary.get(symbol);
+        if(index != null) {
+            column.writeVarLong(index + 1);
+            return;
+        }
+
+        dictionary.put(symbol, dictionary.size());
+        column.writeVarLong(dictionary.size());
+        column.writeVarLong(ExportBuffer.getUtf8Length(symbol));
+        column.writeUtf8(symbol);
+    }
+    private void writeBlock() throws IOException {
+        buffer.writeVarLong(blockCount);
+        for(int column = 0; column < columns.length; ++column) {
+            buffer.writeVarLong(columns[column].length());
+            columns[column].writeTo(buffer);
+            columns[column].reset();
+            lastValues[column] = 0;
+        }
+        blockCount = 0;
+
+        buffer.writeTo(getOutput());
+        buffer.reset();
+    }
+    //endregion
+    ColumnarExportWriter(OutputStream output, ExportSchema schema) {
+        super(output, schema);
+
+        columns = new ExportBuffer[schema.size()];
+        lastValues = new long[schema.size()];
+        dictionaries = new ArrayList<>(schema.size());
+        for(int column = 0; column < schema.size(); ++column) {
+            columns[column] = new ExportBuffer(BLOCK_SIZE * 4);
+            dictionaries.add(schema.getType(column) == ExportSchema.ColumnType.SYMBOL ? new HashMap<>() : null);
+        }
+
+        buffer.writeBytes(MAGIC);
+        buffer.writeByte(VERSION);
+        buffer.writeVarLong(schema.size());
+        for(int column = 0; column < schema.size(); ++column) {
+            String name = schema.getName(column);
+            buffer.writeByte(schema.getType(column).ordinal());
+            buffer.writeVarLong(ExportBuffer.getUtf8Length(name));
+            buffer.writeUtf8(name);
+        }
+    }
+
+    //-------------------------------------------------------------------------
+    @Override
+    protected void writeRecord() throws IOException {
+        ExportSchema schema = getSchema();
+        for(int column = 0; column < columns.length; ++column) {
+            ExportBuffer columnBuffer = columns[column];
+            if(!isPresent(column)) {
+                columnBuffer.writeByte(0);
+                continue;
+            }
+
+            switch (schema.getType(column)) {
+                case LONG: {
+                    //offsets and sizes grow slowly inside a block, their differences are one or two bytes
+                    long value = getLong(column);
+                    long delta = value - lastValues[column];
+                    lastValues[column] = value;
+                    columnBuffer.writeVarLong(((delta << 1) ^ (delta >> 63)) + 1);
+                    break;
+                }
+                case SYMBOL: {
+                    writeSymbol(columnBuffer, dictionaries.get(column), getString(column));
+                    break;
+                }
+                default: {
+                    CharSequence value = getString(column);
+                    columnBuffer.writeVarLong(ExportBuffer.getUtf8Length(value) + 1);
+                    columnBuffer.writeUtf8(value);
+                    break;
+                }
+            }
+        }
+
+        if(++blockCount == BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+    @Override
+    protected void finish() throws IOException {
+        if(blockCount != 0) {
+            writeBlock();
+        }
+        buffer.writeVarLong(0);
+        buffer.writeTo(getOutput());
+        buffer.reset();
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,57 @@
+package org.hill30.activemq.kahadb.utils.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+final class CsvExportWriter extends ExportWriter {
+    //region private
+    private final ExportBuffer buffer = new ExportBuffer(FLUSH_SIZE + 4096);
+    //endregion
+    CsvExportWriter(OutputStream output, ExportSchema schema) {
+        super(output, schema);
+
+        for(int column = 0; column < schema.size(); ++column) {
+            if(column != 0) {
+                buffer.writeByte(',');
+            }
+            buffer.writeCsvString(schema.getName(column));
+        }
+        buffer.writeByte('\r');
+        buffer.writeByte('\n');
+    }
+
+    //-------------------------------------------------------------------------
+    @Override
+    protected void writeRecord() throws IOException {
+        ExportSchema schema = getSchema();
+        for(int column = 0; column < schema.size(); ++column) {
+            if(column != 0) {
+                buffer.writeByte(',');
+            }
+            if(!isPresent(column)) {
+                continue;
+            }
+
+            if(schema.getType(column) == ExportSchema.ColumnType.LONG) {
+                buffer.writeDecimal(getLong(column));
+            }
+            else {
+                buffer.writeCsvString(getString(column));
+            }
+        }
+        //RFC 4180 line breaks
+        buffer.writeByte('\r');
+        buffer.writeByte('\n');
+
+        if(buffer.length() >= FLUSH_SIZE) {
+            buffer.writeTo(getOutput());
+            buffer.reset();
+        }
+    }
+    @Override
+    protected void finish() throws IOException {
+        buffer.writeTo(getOutput());
+        buffer.reset();
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,201 @@
+package org.hill30.activemq.kahadb.utils.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+final class ExportBuffer {
+    //region private
+    private static final byte[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    //-------------------------------------------------------------------------
+    private byte[] data;
+    private int length;
+    private final byte[] digits = new byte[20];
+    //-------------------------------------------------------------------------
+    private void ensureCapacity(int capacity) {
+        if(capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length << 1));
+        }
+    }
+    private void writeUtf8(char value) {
+        if(value < 0x80) {
+            data[length++] = (byte)value;
+        }
+        else if(value < 0x800) {
+            data[length++] = (byte)(0xC0 | (value >> 6));
+            data[length++] = (byte)(0x80 | (value & 0x3F));
+        }
+        else {
+            data[length++] = (byte)(0xE0 | (value >> 12));
+            data[length++] = (byte)(0x80 | ((value >> 6) & 0x3F));
+            data[length++] = (byte)(0x80 | (value & 0x3F));
+        }
+    }
+    private void writeCodePoint(int codePoint) {
+        data[length++] = (byte)(0xF0 | (codePoint >> 18));
+        data[length++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+        data[length++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+        data[length++] = (byte)(0x80 | (codePoint & 0x3F));
+    }
+    //endregion
+    ExportBuffer(int capacity) {
+        if(capacity <= 0) {
+            throw new IndexOutOfBoundsException("capacity");
+        }
+
+        data = new byte[capacity];
+    }
+
+    //-------------------------------------------------------------------------
+    int length() {
+        return length;
+    }
+    void reset() {
+        length = 0;
+    }
+    void writeTo(OutputStream output) throws IOException {
+        output.write(data, 0, length);
+    }
+    void writeTo(ExportBuffer buffer) {
+        buffer.writeBytes(data, 0, length);
+    }
+    byte[] toByteArray() {
+        return Arrays.copyOf(data, length);
+    }
+    //-------------------------------------------------------------------------
+    void writeByte(int value) {
+        ensureCapacity(length + 1);
+        data[length++] = (byte)value;
+    }
+    void writeBytes(byte[] bytes, int offset, int count) {
+        ensureCapacity(length + count);
+        System.arraycopy(bytes, offset, data, length, count);
+        length += count;
+    }
+    void writeBytes(byte[] bytes) {
+        writeBytes(bytes, 0, bytes.length);
+    }
+    void writeDecimal(long value) {
+        if(value == Long.MIN_VALUE) {
+            writeUtf8(Long.toString(value));
+            return;
+        }
+
+        ensureCapacity(length + digits.length + 1);
+        if(value < 0) {
+            data[length++] = '-';
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte)('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (count > 0) {
+            data[length++] = digits[--count];
+        }
+    }
+    void writeVarLong(long value) {
+        //unsigned LEB128, the same varint as protobuf
+        ensureCapacity(length + 10);
+        while ((value & ~0x7FL) != 0) {
+            data[length++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte)value;
+    }
+    //-------------------------------------------------------------------------
+    void writeUtf8(CharSequence value) {
+        int count = value.length();
+        ensureCapacity(length + count * 3);
+        for(int i = 0; i < count; ++i) {
+            char c = value.charAt(i);
+            if(Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, value.charAt(++i)));
+            }
+            else {
+                writeUtf8(c);
+            }
+        }
+    }
+    void writeJsonString(CharSequence value) {
+        int count = value.length();
+        //the worst case is every char escaped with six bytes
+        ensureCapacity(length + count * 6 + 2);
+        data[length++] = '"';
+        for(int i = 0; i < count; ++i) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\') {
+                data[length++] = '\\';
+                data[length++] = (byte)c;
+            }
+            else if(c < 0x20) {
+                data[length++] = '\\';
+                data[length++] = 'u';
+                data[length++] = '0';
+                data[length++] = '0';
+                data[length++] = HEX_DIGITS[c >> 4];
+                data[length++] = HEX_DIGITS[c & 0xF];
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, value.charAt(++i)));
+            }
+            else {
+                writeUtf8(c);
+            }
+        }
+        data[length++] = '"';
+    }
+    void writeCsvString(CharSequence value) {
+        int count = value.length();
+        boolean quote = false;
+        for(int i = 0; i < count && !quote; ++i) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if(!quote) {
+            writeUtf8(value);
+            return;
+        }
+
+        ensureCapacity(length + count * 4 + 2);
+        data[length++] = '"';
+        for(int i = 0; i < count; ++i) {
+            char c = value.charAt(i);
+            if(c == '"') {
+                data[length++] = '"';
+                data[length++] = '"';
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, value.charAt(++i)));
+            }
+            else {
+                writeUtf8(c);
+            }
+        }
+        data[length++] = '"';
+    }
+    //-------------------------------------------------------------------------
+    static int getUtf8Length(CharSequence value) {
+        int count = value.length();
+        int utf8Length = 0;
+        for(int i = 0; i < count; ++i) {
+            char c = value.charAt(i);
+            if(c < 0x80) {
+                utf8Length += 1;
+            }
+            else if(c < 0x800) {
+                utf8Length += 2;
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 4;
+                ++i;
+            }
+            else {
+                utf8Length += 3;
+            }
+        }
+        return utf8Length;
+    }
+    //-------------------------------------------------------------------------
+}
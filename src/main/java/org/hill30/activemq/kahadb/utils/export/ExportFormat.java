@@ -0,0 +1,28 @@
+package org.hill30.activemq.kahadb.utils.export;
+
+public enum ExportFormat {
+    //one JSON object per line, absent fields are left out
+    NDJSON,
+    //a header line and one line per record, absent fields are empty
+    CSV,
+    //blocks of records stored column by column, see ColumnarExportWriter
+    COLUMNAR;
+    //-------------------------------------------------------------------------
+    public static ExportFormat parse(String name) {
+        if(name == null || name.isEmpty()) {
+            throw new NullPointerException("name");
+        }
+
+        for (ExportFormat format : values()) {
+            if(format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        //"binary" is what the columnar format is usually asked for
+        if("binary".equalsIgnoreCase(name)) {
+            return COLUMNAR;
+        }
+        throw new IllegalArgumentException("name");
+    }
+    //-------------------------------------------------------------------------
+}
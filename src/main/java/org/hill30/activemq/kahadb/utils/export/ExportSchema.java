@@ -0,0 +1,54 @@
+package org.hill30.activemq.kahadb.utils.export;
+
+import java.util.ArrayList;
+
+public final class ExportSchema {
+    //region private
+    private final ArrayList<String> names = new ArrayList<>();
+    private final ArrayList<ColumnType> types = new ArrayList<>();
+    //-------------------------------------------------------------------------
+    private void checkColumn(int column) {
+        if(column < 0 || column >= names.size()) {
+            throw new IndexOutOfBoundsException("column");
+        }
+    }
+    //endregion
+    //-------------------------------------------------------------------------
+    public int size() {
+        return names.size();
+    }
+    public String getName(int column) {
+        checkColumn(column);
+        return names.get(column);
+    }
+    public ColumnType getType(int column) {
+        checkColumn(column);
+        return types.get(column);
+    }
+    //-------------------------------------------------------------------------
+    public int addColumn(String name, ColumnType type) {
+        if(name == null || name.isEmpty()) {
+            throw new NullPointerException("name");
+        }
+        if(type == null) {
+            throw new NullPointerException("type");
+        }
+        if(names.contains(name)) {
+            throw new IllegalArgumentException("name");
+        }
+
+        names.add(name);
+        types.add(type);
+        return names.size() - 1;
+    }
+    //-------------------------------------------------------------------------
+    public enum ColumnType {
+        //a number
+        LONG,
+        //a text with few distinct values: command types, destinations, subscriptions
+        SYMBOL,
+        //a text with many distinct values: message and transaction ids
+        STRING
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,126 @@
+package org.hill30.activemq.kahadb.utils.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+public abstract class ExportWriter implements Closeable {
+    //region private
+    private final OutputStream output;
+    private final ExportSchema schema;
+    //-------------------------------------------------------------------------
+    //the values of the current record, they are only referenced until the record ends
+    private final long[] longValues;
+    private final CharSequence[] stringValues;
+    private final boolean[] present;
+    private long recordCount;
+    private boolean closed;
+    //-------------------------------------------------------------------------
+    private void checkColumn(int column, boolean string) {
+        if(closed) {
+            throw new IllegalStateException("closed");
+        }
+        if(column < 0 || column >= present.length) {
+            throw new IndexOutOfBoundsException("column");
+        }
+        if(string == (schema.getType(column) == ExportSchema.ColumnType.LONG)) {
+            throw new IllegalArgumentException("column");
+        }
+    }
+    //endregion
+    //-------------------------------------------------------------------------
+    protected static final int FLUSH_SIZE = 64 * 1024;
+    //-------------------------------------------------------------------------
+    protected ExportWriter(OutputStream output, ExportSchema schema) {
+        if(output == null) {
+            throw new NullPointerException("output");
+        }
+        if(schema == null) {
+            throw new NullPointerException("schema");
+        }
+
+        this.output = output;
+        this.schema = schema;
+        this.longValues = new long[schema.size()];
+        this.stringValues = new CharSequence[schema.size()];
+        this.present = new boolean[schema.size()];
+    }
+    //-------------------------------------------------------------------------
+    protected final OutputStream getOutput() {
+        return output;
+    }
+    protected final boolean isPresent(int column) {
+        return present[column];
+    }
+    protected final long getLong(int column) {
+        return longValues[column];
+    }
+    protected final CharSequence getString(int column) {
+        return stringValues[column];
+    }
+    //-------------------------------------------------------------------------
+    protected abstract void writeRecord() throws IOException;
+    protected abstract void finish() throws IOException;
+
+    //-------------------------------------------------------------------------
+    public final ExportSchema getSchema() {
+        return schema;
+    }
+    public final long getRecordCount() {
+        return recordCount;
+    }
+    //-------------------------------------------------------------------------
+    public final void setLong(int column, long value) {
+        checkColumn(column, false);
+
+        longValues[column] = value;
+        present[column] = true;
+    }
+    public final void setString(int column, CharSequence value) {
+        checkColumn(column, true);
+
+        stringValues[column] = value;
+        present[column] = value != null;
+    }
+    public final void endRecord() throws IOException {
+        if(closed) {
+            throw new IllegalStateException("closed");
+        }
+
+        writeRecord();
+        ++recordCount;
+
+        Arrays.fill(present, false);
+        Arrays.fill(stringValues, null);
+    }
+    //-------------------------------------------------------------------------
+    @Override
+    public final void close() throws IOException {
+        //the output stream belongs to the caller, it is only flushed
+        if(!closed) {
+            closed = true;
+            finish();
+            output.flush();
+        }
+    }
+    //-------------------------------------------------------------------------
+    public static ExportWriter create(ExportFormat format, OutputStream output, ExportSchema schema) {
+        if(format == null) {
+            throw new NullPointerException("format");
+        }
+
+        switch (format) {
+            case NDJSON: {
+                return new NdjsonExportWriter(output, schema);
+            }
+            case CSV: {
+                return new CsvExportWriter(output, schema);
+            }
+            default: {
+                return new ColumnarExportWriter(output, schema);
+            }
+        }
+    }
+    //-------------------------------------------------------------------------
+}
@@ -0,0 +1,63 @@
+package org.hill30.activemq.kahadb.utils.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+final class NdjsonExportWriter extends ExportWriter {
+    //region private
+    private final ExportBuffer buffer = new ExportBuffer(FLUSH_SIZE + 4096);
+    //the field names are encoded once: "name":
+    private final byte[][] fieldNames;
+    //endregion
+    NdjsonExportWriter(OutputStream output, ExportSchema schema) {
+        super(output, schema);
+
+        fieldNames = new byte[schema.size()][];
+        ExportBuffer nameBuffer = new ExportBuffer(64);
+        for(int column = 0; column < schema.size(); ++column) {
+            nameBuffer.reset();
+            nameBuffer.writeJsonString(schema.getName(column));
+            nameBuffer.writeByte(':');
+            fieldNames[column] = nameBuffer.toByteArray();
+        }
+    }
+
+    //-------------------------------------------------------------------------
+    @Override
+    protected void writeRecord() throws IOException {
+        ExportSchema schema = getSchema();
+        boolean first = true;
+
+        buffer.writeByte('{');
+        for(int column = 0; column < fieldNames.length; ++column) {
+            if(!isPresent(column)) {
+                continue;
+            }
+            if(!first) {
+                buffer.writeByte(',');
+            }
+            first = false;
+
+            buffer.writeBytes(fieldNames[column]);
+            if(schema.getType(column) == ExportSchema.ColumnType.LONG) {
+                buffer.writeDecimal(getLong(column));
+            }
+            else {
+                buffer.writeJsonString(getString(column));
+            }
+        }
+        buffer.writeByte('}');
+        buffer.writeByte('\n');
+
+        if(buffer.length() >= FLUSH_SIZE) {
+            buffer.writeTo(getOutput());
+            buffer.reset();
+        }
+    }
+    @Override
+    protected void finish() throws IOException {
+        buffer.writeTo(getOutput());
+        buffer.reset();
+    }
+    //-------------------------------------------------------------------------
+}
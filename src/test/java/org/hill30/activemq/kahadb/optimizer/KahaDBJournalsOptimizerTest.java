@@ -0,0 +1,191 @@
+package org.hill30.activemq.kahadb.optimizer;
+
+import org.hill30.activemq.kahadb.utils.KahaDBJournalScanner;
+
+import org.apache.activemq.protobuf.Buffer;
+import org.apache.activemq.protobuf.CodedOutputStream;
+import org.apache.activemq.store.kahadb.JournalCommand;
+import org.apache.activemq.store.kahadb.data.*;
+import org.apache.activemq.store.kahadb.disk.journal.DataFile;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.util.ByteSequence;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+import static org.junit.Assert.*;
+
+public class KahaDBJournalsOptimizerTest {
+    //region private
+    private static final int JOURNAL_SIZE = 1024 * 1024;
+    private static final int SMALL_JOURNAL_SIZE = 16 * 1024;
+    private static final int MESSAGE_SIZE = 1024;
+    private static final int MESSAGES_PER_PART = 40;
+    //-------------------------------------------------------------------------
+    private static final KahaDestination QUEUE = new KahaDestination().setType(KahaDestination.DestinationType.QUEUE).setName("test.queue");
+    //-------------------------------------------------------------------------
+    private static void write(File directory, JournalCommand<?>... commands) throws IOException {
+        write(directory, JOURNAL_SIZE, commands);
+    }
+    private static void write(File directory, int journalSize, JournalCommand<?>... commands) throws IOException {
+        Journal journal = createJournal(directory, journalSize);
+        try {
+            journal.start();
+            for(int i = 0; i < commands.length; ++i) {
+                JournalCommand<?> command = commands[i];
+                int commandSize = command.serializedSizeFramed();
+                byte[] data = new byte[commandSize + 1];
+                data[0] = (byte)command.type().getNumber();
+                command.writeFramed(new CodedOutputStream(new Buffer(data, 1, commandSize)));
+                journal.write(new ByteSequence(data), i == commands.length - 1);
+            }
+        }
+        finally {
+            journal.close();
+        }
+    }
+    private static List<String> read(File directory) throws IOException {
+        List<String> records = new ArrayList<>();
+        Journal journal = createJournal(directory, JOURNAL_SIZE);
+        try {
+            journal.start();
+            KahaDBJournalScanner scanner = new KahaDBJournalScanner(journal);
+            while (scanner.next()) {
+                JournalCommand<?> command = readCommand(scanner.getSequence());
+                String messageId = getCommandMessageId(command);
+                records.add(messageId == null ? command.type().name() : command.type().name() + " " + messageId);
+            }
+        }
+        finally {
+            journal.close();
+        }
+        return records;
+    }
+    private static Map<Integer, byte[]> readDataFiles(File directory) throws IOException {
+        Map<Integer, byte[]> dataFiles = new HashMap<>();
+        Journal journal = createJournal(directory, JOURNAL_SIZE);
+        try {
+            journal.start();
+            for (DataFile dataFile : journal.getFileMap().values()) {
+                dataFiles.put(dataFile.getDataFileId(), Files.readAllBytes(dataFile.getFile().toPath()));
+            }
+        }
+        finally {
+            journal.close();
+        }
+        return dataFiles;
+    }
+    private static Set<Integer> getDataFileIds(File directory, String messageIdPrefix) throws IOException {
+        Set<Integer> dataFileIds = new TreeSet<>();
+        Journal journal = createJournal(directory, JOURNAL_SIZE);
+        try {
+            journal.start();
+            KahaDBJournalScanner scanner = new KahaDBJournalScanner(journal);
+            while (scanner.next()) {
+                JournalCommand<?> command = readCommand(scanner.getSequence());
+                if(command.type() == KahaEntryType.KAHA_ADD_MESSAGE_COMMAND && getCommandMessageId(command).startsWith(messageIdPrefix)) {
+                    dataFileIds.add(scanner.getLocation().getDataFileId());
+                }
+            }
+        }
+        finally {
+            journal.close();
+        }
+        return dataFileIds;
+    }
+    private static KahaAddMessageCommand add(String messageId) {
+        return add(messageId, 16);
+    }
+    private static KahaAddMessageCommand add(String messageId, int messageSize) {
+        return new KahaAddMessageCommand().setDestination(QUEUE).setMessageId(messageId).setMessage(new Buffer(new byte[messageSize]));
+    }
+    //a record which is never live and leaves no room for another one in its data file, so the next records start a data file
+    private static KahaTraceCommand padding() {
+        return new KahaTraceCommand().setMessage(new String(new char[SMALL_JOURNAL_SIZE - MESSAGE_SIZE / 2]).replace('\0', ' '));
+    }
+    private static KahaRemoveMessageCommand remove(String messageId) {
+        return new KahaRemoveMessageCommand().setDestination(QUEUE).setMessageId(messageId);
+    }
+    //endregion
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    //-------------------------------------------------------------------------
+    @Test
+    public void deltaCatchUpDropsTheRecordsOfSourceDataFiles() throws IOException {
+        File directory = temporaryFolder.newFolder("journals");
+        write(directory, add("ID:test-1:1:1:1:1"), add("ID:test-1:1:1:1:2"));
+
+        KahaDBJournalsOptimizer snapshotOptimizer = new KahaDBJournalsOptimizer();
+        snapshotOptimizer.setSnapshot(true);
+        snapshotOptimizer.optimaze(directory.getPath(), false);
+        assertTrue(JournalsSnapshot.getFile(new File(directory.getPath() + "_temp")).isFile());
+
+        //the broker keeps writing, its ack file maps refer to the data file ids of the source journals
+        write(directory,
+                add("ID:test-1:1:1:1:3"),
+                new KahaAckMessageFileMapCommand().setAckMessageFileMap(new Buffer(new byte[] { 1, 2, 3 })),
+                new KahaProducerAuditCommand().setAudit(new Buffer(new byte[] { 4, 5, 6 })),
+                remove("ID:test-1:1:1:1:1"));
+
+        KahaDBJournalsOptimizer deltaOptimizer = new KahaDBJournalsOptimizer();
+        deltaOptimizer.setDeltaSnapshotDirPath(directory.getPath());
+        deltaOptimizer.optimaze(directory.getPath(), false);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("KAHA_ADD_MESSAGE_COMMAND ID:test-1:1:1:1:1");
+        expected.add("KAHA_ADD_MESSAGE_COMMAND ID:test-1:1:1:1:2");
+        expected.add("KAHA_ADD_MESSAGE_COMMAND ID:test-1:1:1:1:3");
+        expected.add("KAHA_REMOVE_MESSAGE_COMMAND ID:test-1:1:1:1:1");
+        assertEquals(expected, read(directory));
+    }
+    @Test
+    public void selectiveCompactionKeepsTheLiveRecordsInPlace() throws IOException {
+        //the messages of the first and the third part are removed but their first ones, the second part stays live;
+        //every part is followed by a padding, so it starts a data file
+        File directory = temporaryFolder.newFolder("journals");
+        List<String> expected = new ArrayList<>();
+        List<JournalCommand<?>> commands = new ArrayList<>();
+        List<JournalCommand<?>> removes = new ArrayList<>();
+        for (String part : new String[] { "ID:test-a:1:1:1:", "ID:test-b:1:1:1:", "ID:test-c:1:1:1:" }) {
+            for(int i = 1; i <= MESSAGES_PER_PART; ++i) {
+                commands.add(add(part + i, MESSAGE_SIZE));
+                if(i == 1 || part.startsWith("ID:test-b")) {
+                    expected.add("KAHA_ADD_MESSAGE_COMMAND " + part + i);
+                }
+                else {
+                    removes.add(remove(part + i));
+                }
+            }
+            commands.add(padding());
+        }
+        commands.addAll(removes);
+        write(directory, SMALL_JOURNAL_SIZE, commands.toArray(new JournalCommand<?>[0]));
+
+        //the data files of the live part are between the compacted ones
+        Set<Integer> liveDataFileIds = getDataFileIds(directory, "ID:test-b");
+        Map<Integer, byte[]> dataFiles = readDataFiles(directory);
+        assertTrue(getDataFileIds(directory, "ID:test-a").stream().allMatch(dataFileId -> dataFileId < Collections.min(liveDataFileIds)));
+        assertTrue(getDataFileIds(directory, "ID:test-c").stream().allMatch(dataFileId -> dataFileId > Collections.max(liveDataFileIds)));
+
+        KahaDBJournalsOptimizer optimizer = new KahaDBJournalsOptimizer();
+        optimizer.setSelectiveLiveRatio(50);
+        optimizer.optimaze(directory.getPath(), false);
+
+        //the records are replayed in their journal order, the live part is not rewritten
+        assertEquals(expected, read(directory));
+        assertEquals(liveDataFileIds, getDataFileIds(directory, "ID:test-b"));
+        Map<Integer, byte[]> compactedDataFiles = readDataFiles(directory);
+        for (int dataFileId : liveDataFileIds) {
+            assertArrayEquals(dataFiles.get(dataFileId), compactedDataFiles.get(dataFileId));
+        }
+        assertTrue(compactedDataFiles.keySet().stream().allMatch(dataFiles::containsKey));
+    }
+    //-------------------------------------------------------------------------
+}
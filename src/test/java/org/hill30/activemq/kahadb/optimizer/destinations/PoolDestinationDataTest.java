@@ -0,0 +1,256 @@
+package org.hill30.activemq.kahadb.optimizer.destinations;
+
+import org.hill30.activemq.kahadb.generator.JournalsGeneratorProfile;
+import org.hill30.activemq.kahadb.generator.SyntheticJournalsWriter;
+import org.hill30.activemq.kahadb.utils.KahaDBJournalScanner;
+import org.hill30.activemq.kahadb.utils.KahaDBTransactionKey;
+
+import org.apache.activemq.protobuf.Buffer;
+import org.apache.activemq.store.kahadb.JournalCommand;
+import org.apache.activemq.store.kahadb.data.*;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.hill30.activemq.kahadb.utils.KahaDBUtils.*;
+import static org.junit.Assert.*;
+
+public class PoolDestinationDataTest {
+    //region private
+    private static final int JOURNAL_SIZE = 32 * 1024 * 1024;
+    private static final int COMMITTED_TRANSACTIONS = 100000;
+    //-------------------------------------------------------------------------
+    private static final KahaDestination QUEUE = new KahaDestination().setType(KahaDestination.DestinationType.QUEUE).setName("test.queue");
+    private static final KahaDestination TOPIC = new KahaDestination().setType(KahaDestination.DestinationType.TOPIC).setName("test.topic");
+    private static final String SUBSCRIPTION_KEY = "client-0:sub-0";
+    //-------------------------------------------------------------------------
+    private int offset;
+    //-------------------------------------------------------------------------
+    private Location nextLocation() {
+        return new Location(1, offset++);
+    }
+    private Location add(PoolDestinationData poolDestinationData, KahaDestination destination, String messageId, KahaTransactionInfo transactionInfo) {
+        KahaAddMessageCommand command = new KahaAddMessageCommand().setDestination(destination).setMessageId(messageId).setMessage(new Buffer(new byte[0]));
+        if(transactionInfo != null) {
+            command.setTransactionInfo(transactionInfo);
+        }
+        return analysis(poolDestinationData, command);
+    }
+    private Location ack(PoolDestinationData poolDestinationData, KahaDestination destination, String messageId, KahaTransactionInfo transactionInfo) {
+        KahaRemoveMessageCommand command = new KahaRemoveMessageCommand().setDestination(destination).setMessageId(messageId);
+        if(isDestinationTopic(destination)) {
+            command.setSubscriptionKey(SUBSCRIPTION_KEY);
+        }
+        if(transactionInfo != null) {
+            command.setTransactionInfo(transactionInfo);
+        }
+        return analysis(poolDestinationData, command);
+    }
+    private Location commit(PoolDestinationData poolDestinationData, KahaTransactionInfo transactionInfo) {
+        return analysis(poolDestinationData, new KahaCommitCommand().setTransactionInfo(transactionInfo));
+    }
+    private Location analysis(PoolDestinationData poolDestinationData, JournalCommand<?> command) {
+        Location location = nextLocation();
+        poolDestinationData.commandAnalysis(command, location);
+        return location;
+    }
+    //-------------------------------------------------------------------------
+    private static KahaTransactionInfo localTransaction(long transactionId) {
+        return new KahaTransactionInfo().setLocalTransactionId(new KahaLocalTransactionId().setConnectionId("ID:test-1").setTransactionId(transactionId));
+    }
+    private static String toString(Location location) {
+        return location.getDataFileId() + ":" + location.getOffset();
+    }
+    private static List<String> toStrings(Location... locations) {
+        List<String> strings = new ArrayList<>();
+        for (Location location : locations) {
+            strings.add(toString(location));
+        }
+        return strings;
+    }
+    //the commit record then the operations of every committed transaction, by transaction id
+    private static Map<String, List<String>> getCommittedTransactions(PoolDestinationData poolDestinationData) {
+        Map<String, List<String>> transactions = new TreeMap<>();
+        poolDestinationData.writeLocationGroups((group, location) -> {
+            if(group.startsWith("TX:") || group.startsWith("XID:")) {
+                transactions.computeIfAbsent(group, key -> new ArrayList<>()).add(toString(location));
+            }
+        });
+        return transactions;
+    }
+    //endregion
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    //-------------------------------------------------------------------------
+    @Test
+    public void acksRemoveTheOperationsOfCommittedTransactions() throws IOException {
+        //two messages per transaction, some of them are never acked, so transactions keep none, one or both of them
+        JournalsGeneratorProfile profile = new JournalsGeneratorProfile();
+        profile.setMessages(2 * COMMITTED_TRANSACTIONS);
+        profile.setTransactionRatio(100);
+        profile.setTransactionSize(2);
+        profile.setRollbackRatio(0);
+        profile.setPendingRatio(20);
+        profile.setPayloadSize(16);
+
+        File directory = temporaryFolder.newFolder("journals");
+        SyntheticJournalsWriter writer = new SyntheticJournalsWriter(profile);
+        writer.write(directory, JOURNAL_SIZE);
+        assertEquals(COMMITTED_TRANSACTIONS, writer.getCommittedCount());
+
+        //the expected state is found from the journal records: a committed operation stays while its message is not acked
+        PoolDestinationData poolDestinationData = new PoolDestinationData();
+        Map<String, Location> commitLocations = new HashMap<>();
+        Map<String, List<Object[]>> transactionMessages = new HashMap<>();
+        Set<String> ackedMessageIds = new HashSet<>();
+
+        Journal journal = createJournal(directory, JOURNAL_SIZE);
+        try {
+            journal.start();
+            KahaDBJournalScanner scanner = new KahaDBJournalScanner(journal);
+            while (scanner.next()) {
+                Location location = scanner.getLocation();
+                poolDestinationData.sequenceAnalysis(scanner.getSequence(), location);
+
+                JournalCommand<?> command = readCommand(scanner.getSequence());
+                if(command instanceof KahaAddMessageCommand) {
+                    KahaAddMessageCommand addCommand = (KahaAddMessageCommand)command;
+                    String transactionId = new KahaDBTransactionKey(addCommand.getTransactionInfo()).toString();
+                    transactionMessages.computeIfAbsent(transactionId, key -> new ArrayList<>()).add(new Object[] { addCommand.getMessageId(), location });
+                }
+                else if(command instanceof KahaRemoveMessageCommand) {
+                    ackedMessageIds.add(((KahaRemoveMessageCommand)command).getMessageId());
+                }
+                else if(command instanceof KahaCommitCommand) {
+                    commitLocations.put(new KahaDBTransactionKey(((KahaCommitCommand)command).getTransactionInfo()).toString(), location);
+                }
+            }
+        }
+        finally {
+            journal.close();
+        }
+        assertEquals(COMMITTED_TRANSACTIONS, commitLocations.size());
+
+        Map<String, List<String>> expected = new TreeMap<>();
+        for (Map.Entry<String, Location> commitLocation : commitLocations.entrySet()) {
+            List<String> locations = new ArrayList<>();
+            for (Object[] message : transactionMessages.get(commitLocation.getKey())) {
+                if(!ackedMessageIds.contains((String)message[0])) {
+                    locations.add(toString((Location)message[1]));
+                }
+            }
+            if(!locations.isEmpty()) {
+                locations.add(0, toString(commitLocation.getValue()));
+                expected.put(commitLocation.getKey(), locations);
+            }
+        }
+
+        assertTrue(expected.size() > 0);
+        assertTrue(expected.size() < COMMITTED_TRANSACTIONS);
+        assertEquals(expected.size(), poolDestinationData.getCommittedTransactionCount());
+        assertEquals(expected, getCommittedTransactions(poolDestinationData));
+    }
+    @Test
+    public void ackOfATopicMessageRemovesItsCommittedOperation() {
+        PoolDestinationData poolDestinationData = new PoolDestinationData();
+        KahaTransactionInfo transaction = localTransaction(1);
+        analysis(poolDestinationData, new KahaSubscriptionCommand().setDestination(TOPIC).setSubscriptionKey(SUBSCRIPTION_KEY).setRetroactive(false).setSubscriptionInfo(new Buffer(new byte[0])));
+        add(poolDestinationData, TOPIC, "ID:test-1:1:1:1:1", transaction);
+        Location add = add(poolDestinationData, TOPIC, "ID:test-1:1:1:1:2", transaction);
+        Location commit = commit(poolDestinationData, transaction);
+
+        ack(poolDestinationData, TOPIC, "ID:test-1:1:1:1:1", null);
+        assertEquals(Collections.singletonMap(new KahaDBTransactionKey(transaction).toString(), toStrings(commit, add)), getCommittedTransactions(poolDestinationData));
+
+        ack(poolDestinationData, TOPIC, "ID:test-1:1:1:1:2", null);
+        assertEquals(0, poolDestinationData.getCommittedTransactionCount());
+    }
+    @Test
+    public void ackInTheCommittingTransactionRemovesItsOwnOperations() {
+        PoolDestinationData poolDestinationData = new PoolDestinationData();
+        KahaTransactionInfo transaction = localTransaction(1);
+        add(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", transaction);
+        ack(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", transaction);
+        commit(poolDestinationData, transaction);
+
+        assertEquals(0, poolDestinationData.getCommittedTransactionCount());
+        assertEquals(0, poolDestinationData.getQueueCount());
+    }
+    @Test
+    public void recommittedTransactionKeepsItsNewestOperations() {
+        //a transaction id committed again replaces its previous entry, the acks of the previous messages leave it
+        PoolDestinationData poolDestinationData = new PoolDestinationData();
+        KahaTransactionInfo transaction = localTransaction(1);
+        String transactionId = new KahaDBTransactionKey(transaction).toString();
+        add(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", transaction);
+        commit(poolDestinationData, transaction);
+        Location add = add(poolDestinationData, QUEUE, "ID:test-1:1:1:1:2", transaction);
+        Location commit = commit(poolDestinationData, transaction);
+        assertEquals(Collections.singletonMap(transactionId, toStrings(commit, add)), getCommittedTransactions(poolDestinationData));
+
+        ack(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", null);
+        assertEquals(Collections.singletonMap(transactionId, toStrings(commit, add)), getCommittedTransactions(poolDestinationData));
+
+        ack(poolDestinationData, QUEUE, "ID:test-1:1:1:1:2", null);
+        assertEquals(0, poolDestinationData.getCommittedTransactionCount());
+    }
+    @Test
+    public void recommittedMessageIsRemovedFromBothEntries() {
+        //both entries of the transaction id index the message, one ack removes it from the newest one
+        PoolDestinationData poolDestinationData = new PoolDestinationData();
+        KahaTransactionInfo transaction = localTransaction(1);
+        add(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", transaction);
+        commit(poolDestinationData, transaction);
+        add(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", transaction);
+        commit(poolDestinationData, transaction);
+        assertEquals(1, poolDestinationData.getCommittedTransactionCount());
+
+        ack(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", null);
+        assertEquals(0, poolDestinationData.getCommittedTransactionCount());
+    }
+    @Test
+    public void resentMessageIsIndexedForItsNewTransaction() {
+        //the index entry of an acked message is dropped, a later transaction sending the same id is indexed again
+        PoolDestinationData poolDestinationData = new PoolDestinationData();
+        KahaTransactionInfo firstTransaction = localTransaction(1);
+        KahaTransactionInfo secondTransaction = localTransaction(2);
+        add(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", firstTransaction);
+        commit(poolDestinationData, firstTransaction);
+        ack(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", null);
+        assertEquals(0, poolDestinationData.getCommittedTransactionCount());
+
+        Location add = add(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", secondTransaction);
+        Location commit = commit(poolDestinationData, secondTransaction);
+        ack(poolDestinationData, QUEUE, "ID:test-1:1:1:1:2", null);
+        assertEquals(Collections.singletonMap(new KahaDBTransactionKey(secondTransaction).toString(), toStrings(commit, add)), getCommittedTransactions(poolDestinationData));
+
+        ack(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", null);
+        assertEquals(0, poolDestinationData.getCommittedTransactionCount());
+    }
+    @Test
+    public void removedCommittedOperationIsNotIndexed() {
+        //once an operation is removed with its record, an ack of its message leaves the transaction
+        PoolDestinationData poolDestinationData = new PoolDestinationData();
+        KahaTransactionInfo transaction = localTransaction(1);
+        Location firstAdd = add(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", transaction);
+        Location secondAdd = add(poolDestinationData, QUEUE, "ID:test-1:1:1:1:2", transaction);
+        Location commit = commit(poolDestinationData, transaction);
+
+        poolDestinationData.removeCommittedOperations(location -> toString(location).equals(toString(firstAdd)));
+        assertEquals(Collections.singletonMap(new KahaDBTransactionKey(transaction).toString(), toStrings(commit, secondAdd)), getCommittedTransactions(poolDestinationData));
+
+        ack(poolDestinationData, QUEUE, "ID:test-1:1:1:1:1", null);
+        assertEquals(1, poolDestinationData.getCommittedTransactionCount());
+
+        ack(poolDestinationData, QUEUE, "ID:test-1:1:1:1:2", null);
+        assertEquals(0, poolDestinationData.getCommittedTransactionCount());
+    }
+    //-------------------------------------------------------------------------
+}